@@ -7,6 +7,7 @@ import android.text.TextUtils;
 import android.util.DisplayMetrics;
 
 import com.j256.simplezip.ZipFileInput;
+import com.j256.simplezip.format.ZipCentralDirectoryFileEntry;
 import com.j256.simplezip.format.ZipFileHeader;
 import com.reandroid.archive.ArchiveFile;
 import com.reandroid.archive.InputSource;
@@ -37,12 +38,20 @@ public class DeviceSpecsUtil {
     public List<String> getListOfSplits(Uri splitAPKUri) throws IOException {
         List<String> splits = new ArrayList<>();
 
-        try (InputStream is = FileUtils.getInputStream(splitAPKUri, context);
+        try (InputStream is = FileUtils.getSeekableInputStream(splitAPKUri, context);
                 ZipFileInput zis = new ZipFileInput(is)) {
-            ZipFileHeader header;
-            while ((header = zis.readFileHeader()) != null) {
-                final String name = header.getFileName();
-                if (name.endsWith(".apk")) splits.add(name);
+            if (zis.isSeekable()) {
+                // Only the central directory is read, not the data of the splits
+                for (ZipCentralDirectoryFileEntry entry : zis.readCentralDirectoryEntries()) {
+                    final String name = entry.getFileName();
+                    if (name.endsWith(".apk")) splits.add(name);
+                }
+            } else {
+                ZipFileHeader header;
+                while ((header = zis.readFileHeader()) != null) {
+                    final String name = header.getFileName();
+                    if (name.endsWith(".apk")) splits.add(name);
+                }
             }
         }
 
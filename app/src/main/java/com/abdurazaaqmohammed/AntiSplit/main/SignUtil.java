@@ -7,6 +7,7 @@ import android.os.Build;
 import com.aefyr.pseudoapksigner.IOUtils;
 import com.aefyr.pseudoapksigner.PseudoApkSigner;
 import com.android.apksig.ApkSigner;
+import com.android.apksig.DefaultApkSignerEngine;
 import com.android.apksig.apk.ApkFormatException;
 import com.reandroid.apkeditor.merge.LogUtil;
 import com.starry.FileUtils;
@@ -52,6 +53,27 @@ public class SignUtil {
                 .setV3SigningEnabled(v3).build().sign();
     }
 
+    /**
+     * Signer engine with the debug key, signing the same way as {@link #signDebugKey(Context, File, File)}.
+     * The caller closes the engine.
+     */
+    public static DefaultApkSignerEngine createDebugKeySignerEngine(Context c, int minSdkVersion) throws IOException, UnrecoverableEntryException, CertificateException, KeyStoreException, NoSuchAlgorithmException, InvalidKeyException {
+        char[] pw = "android".toCharArray();
+        KeyStore keystore = KeyStore.getInstance("BKS");
+        try (InputStream key = c.getAssets().open("debug23.keystore")) {
+            keystore.load(key, pw);
+        }
+        String alias = keystore.aliases().nextElement();
+
+        return new DefaultApkSignerEngine.Builder(Collections.singletonList(new DefaultApkSignerEngine.SignerConfig.Builder("CERT",
+                ((KeyStore.PrivateKeyEntry) keystore.getEntry(alias, new KeyStore.PasswordProtection(pw))).getPrivateKey(),
+                Collections.singletonList((X509Certificate) keystore.getCertificate(alias))).build()), minSdkVersion)
+                .setCreatedBy("Android Gradle 8.0.2")
+                .setV1SigningEnabled(true)
+                .setV2SigningEnabled(true)
+                .setV3SigningEnabled(true).build();
+    }
+
     public static void signDebugKey(Context c, File inputApk, File output, boolean v1, boolean v2, boolean v3) throws IOException, ApkFormatException, UnrecoverableEntryException, CertificateException, KeyStoreException, NoSuchAlgorithmException, SignatureException, InvalidKeyException {
         signApk(c.getAssets().open("debug23.keystore"), "android", inputApk, output, v1, v2, v3);
     }
@@ -28,6 +28,7 @@ import com.android.apksig.apk.ApkUtils;
 import com.android.apksig.apk.MinSdkVersionException;
 import com.android.apksig.internal.apk.v3.V3SchemeConstants;
 import com.android.apksig.internal.util.ByteBufferDataSource;
+import com.android.apksig.internal.util.Pair;
 import com.android.apksig.internal.zip.CentralDirectoryRecord;
 import com.android.apksig.internal.zip.EocdRecord;
 import com.android.apksig.internal.zip.LocalFileRecord;
@@ -37,6 +38,7 @@ import com.android.apksig.util.DataSinks;
 import com.android.apksig.util.DataSource;
 import com.android.apksig.util.DataSources;
 import com.android.apksig.util.ReadableDataSink;
+import com.android.apksig.util.RunnablesExecutor;
 import com.android.apksig.zip.ZipFormatException;
 
 import java.io.Closeable;
@@ -46,6 +48,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.SignatureException;
@@ -58,6 +61,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * APK signer.
@@ -108,6 +113,7 @@ public class ApkSigner {
     private final boolean mDebuggableApkPermitted;
     private final boolean mOtherSignersSignaturesPreserved;
     private final String mCreatedBy;
+    private final RunnablesExecutor mRunnablesExecutor;
 
     private final ApkSignerEngine mSignerEngine;
 
@@ -140,6 +146,7 @@ public class ApkSigner {
             boolean debuggableApkPermitted,
             boolean otherSignersSignaturesPreserved,
             String createdBy,
+            RunnablesExecutor runnablesExecutor,
             ApkSignerEngine signerEngine,
             File inputApkFile,
             DataSource inputApkDataSource,
@@ -166,6 +173,7 @@ public class ApkSigner {
         mDebuggableApkPermitted = debuggableApkPermitted;
         mOtherSignersSignaturesPreserved = otherSignersSignaturesPreserved;
         mCreatedBy = createdBy;
+        mRunnablesExecutor = runnablesExecutor;
 
         mSignerEngine = signerEngine;
 
@@ -331,7 +339,9 @@ public class ApkSigner {
                 signerEngineBuilder.setSourceStampSigningCertificateLineage(
                         mSourceStampSigningCertificateLineage);
             }
-            signerEngine = signerEngineBuilder.build();
+            DefaultApkSignerEngine defaultSignerEngine = signerEngineBuilder.build();
+            defaultSignerEngine.setExecutor(mRunnablesExecutor);
+            signerEngine = defaultSignerEngine;
         }
 
         // Step 4. Provide the signer engine with the input APK's APK Signing Block (if any)
@@ -355,6 +365,8 @@ public class ApkSigner {
         byte[] sourceStampCertificateDigest = null;
         Map<String, CentralDirectoryRecord> outputCdRecordsByName =
                 new HashMap<>(inputCdRecords.size());
+        List<Pair<LocalFileRecord, ApkSignerEngine.InspectJarEntryRequest>>
+                outputInspectEntryRequests = new ArrayList<>();
         for (final CentralDirectoryRecord inputCdRecord : inputCdRecordsSortedByLfhOffset) {
             String entryName = inputCdRecord.getName();
             if (Hints.PIN_BYTE_RANGE_ZIP_ENTRY_NAME.equals(entryName)) {
@@ -428,8 +440,9 @@ public class ApkSigner {
 
                 inspectEntryRequest = signerEngine.outputJarEntry(entryName);
                 if (inspectEntryRequest != null) {
-                    fulfillInspectInputJarEntryRequest(
-                            inputApkLfhSection, inputLocalFileRecord, inspectEntryRequest);
+                    // Fulfilled in parallel once all entries are output, see below
+                    outputInspectEntryRequests.add(
+                            Pair.of(inputLocalFileRecord, inspectEntryRequest));
                 }
 
                 // Output entry's Local File Header + data
@@ -486,6 +499,10 @@ public class ApkSigner {
             outputOffset += chunkSize;
             inputOffset = inputLfhSectionSize;
         }
+        // Only entries whose digests the engine does not know yet are inspected here. They are
+        // uncompressed and digested in parallel, independently of each other.
+        fulfillInspectInputJarEntryRequests(
+                inputApkLfhSection, outputInspectEntryRequests, mRunnablesExecutor);
 
         // Step 6. Sort output APK's Central Directory records in the order in which they should
         // appear in the output
@@ -716,6 +733,13 @@ public class ApkSigner {
             LocalFileRecord localFileRecord,
             ApkSignerEngine.InspectJarEntryRequest inspectEntryRequest)
             throws IOException, ApkFormatException {
+        if ((inspectEntryRequest instanceof ApkSignerEngine.StoredDataInspectJarEntryRequest)
+                && (localFileRecord.isDataCompressed())
+                && (((ApkSignerEngine.StoredDataInspectJarEntryRequest) inspectEntryRequest)
+                        .offerStoredDataDigest(getStoredDataDigest(lfhSection, localFileRecord)))) {
+            // Hashing the compressed data is cheaper than inflating it
+            return;
+        }
         try {
             localFileRecord.outputUncompressedData(lfhSection, inspectEntryRequest.getDataSink());
         } catch (ZipFormatException e) {
@@ -724,6 +748,62 @@ public class ApkSigner {
         inspectEntryRequest.done();
     }
 
+    /**
+     * Returns the SHA-256 digest of the record's uncompressed size and stored data, as expected by
+     * {@link ApkSignerEngine.StoredDataInspectJarEntryRequest#offerStoredDataDigest(byte[])}.
+     */
+    static byte[] getStoredDataDigest(
+            DataSource lfhSection, LocalFileRecord localFileRecord) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 MessageDigest not available", e);
+        }
+        ByteBuffer uncompressedSize = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        uncompressedSize.putLong(localFileRecord.getUncompressedDataSize());
+        md.update(uncompressedSize.array());
+        localFileRecord.outputStoredData(lfhSection, DataSinks.asDataSink(md));
+        return md.digest();
+    }
+
+    private static void fulfillInspectInputJarEntryRequests(
+            DataSource lfhSection,
+            List<Pair<LocalFileRecord, ApkSignerEngine.InspectJarEntryRequest>> requests,
+            RunnablesExecutor executor)
+            throws IOException, ApkFormatException {
+        if (requests.isEmpty()) {
+            return;
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        executor.execute(
+                () ->
+                        () -> {
+                            while (failure.get() == null) {
+                                int index = nextIndex.getAndIncrement();
+                                if (index >= requests.size()) {
+                                    return;
+                                }
+                                Pair<LocalFileRecord, ApkSignerEngine.InspectJarEntryRequest>
+                                        request = requests.get(index);
+                                try {
+                                    fulfillInspectInputJarEntryRequest(
+                                            lfhSection, request.getFirst(), request.getSecond());
+                                } catch (IOException | ApkFormatException e) {
+                                    failure.compareAndSet(null, e);
+                                }
+                            }
+                        });
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e != null) {
+            throw (ApkFormatException) e;
+        }
+    }
+
     private static class OutputSizeAndDataOffset {
         public long outputBytes;
         public long dataOffsetBytes;
@@ -1138,6 +1218,7 @@ public class ApkSigner {
         private boolean mDebuggableApkPermitted = true;
         private boolean mOtherSignersSignaturesPreserved;
         private String mCreatedBy;
+        private RunnablesExecutor mRunnablesExecutor = RunnablesExecutor.MULTI_THREADED;
         private Integer mMinSdkVersion;
         private int mRotationMinSdkVersion = V3SchemeConstants.DEFAULT_ROTATION_MIN_SDK_VERSION;
         private boolean mRotationTargetsDevRelease = false;
@@ -1593,6 +1674,26 @@ public class ApkSigner {
             return this;
         }
 
+        /**
+         * Sets the executor used to compute the 1 MB chunk digests of APK Signature Scheme v2
+         * and v3 signatures. By default the digests are computed on all available cores, use
+         * {@link RunnablesExecutor#SINGLE_THREADED} to compute them on the calling thread.
+         *
+         * <p><em>Note:</em> This method may only be invoked when this builder is not initialized
+         * with an {@link ApkSignerEngine}.
+         *
+         * @throws IllegalStateException if this builder was initialized with an {@link
+         *     ApkSignerEngine}
+         */
+        public Builder setRunnablesExecutor(RunnablesExecutor executor) {
+            checkInitializedWithoutEngine();
+            if (executor == null) {
+                throw new NullPointerException();
+            }
+            mRunnablesExecutor = executor;
+            return this;
+        }
+
         private void checkInitializedWithoutEngine() {
             if (mSignerEngine != null) {
                 throw new IllegalStateException(
@@ -1665,6 +1766,7 @@ public class ApkSigner {
                     mDebuggableApkPermitted,
                     mOtherSignersSignaturesPreserved,
                     mCreatedBy,
+                    mRunnablesExecutor,
                     mSignerEngine,
                     mInputApkFile,
                     mInputApkDataSource,
@@ -436,6 +436,24 @@ public interface ApkSignerEngine extends Closeable {
         String getEntryName();
     }
 
+    /**
+     * Request to inspect a JAR entry which may also be fulfilled from a digest of the entry's stored
+     * (possibly compressed) data instead of its uncompressed data, for example by an engine which
+     * remembers the entries it has already signed.
+     */
+    interface StoredDataInspectJarEntryRequest extends InspectJarEntryRequest {
+
+        /**
+         * Offers the SHA-256 digest of the entry's uncompressed size (8 bytes, little-endian)
+         * followed by the entry's Deflate-compressed data.
+         *
+         * @return {@code true} if this request is done and the entry's uncompressed data need not
+         *         be provided, {@code false} if it must still be provided via
+         *         {@link #getDataSink()}
+         */
+        boolean offerStoredDataDigest(byte[] storedDataDigest);
+    }
+
     /**
      * Request to add JAR signature (aka v1 signature) to the output APK.
      *
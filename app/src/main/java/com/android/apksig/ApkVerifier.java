@@ -100,18 +100,21 @@ public class ApkVerifier {
 
     private final Integer mMinSdkVersion;
     private final int mMaxSdkVersion;
+    private final RunnablesExecutor mExecutor;
 
     private ApkVerifier(
             File apkFile,
             DataSource apkDataSource,
             File v4SignatureFile,
             Integer minSdkVersion,
-            int maxSdkVersion) {
+            int maxSdkVersion,
+            RunnablesExecutor executor) {
         mApkFile = apkFile;
         mApkDataSource = apkDataSource;
         mV4SignatureFile = v4SignatureFile;
         mMinSdkVersion = minSdkVersion;
         mMaxSdkVersion = maxSdkVersion;
+        mExecutor = executor;
     }
 
     /**
@@ -201,7 +204,7 @@ public class ApkVerifier {
         // verification. If the signature is found but does not verify, the APK is rejected.
         Set<Integer> foundApkSigSchemeIds = new HashSet<>(2);
         if (maxSdkVersion >= AndroidSdkVersion.N) {
-            RunnablesExecutor executor = RunnablesExecutor.SINGLE_THREADED;
+            RunnablesExecutor executor = mExecutor;
             // Android T and newer attempts to verify APKs using APK Signature Scheme V3.1. v3.0
             // also includes stripping protection for the minimum SDK version on which the rotated
             // signing key should be used.
@@ -337,7 +340,8 @@ public class ApkVerifier {
                             supportedSchemeNames,
                             foundApkSigSchemeIds,
                             minSdkVersion,
-                            maxSdkVersion);
+                            maxSdkVersion,
+                            mExecutor);
             result.mergeFrom(v1Result);
             signatureSchemeApkContentDigests.put(
                     ApkSigningBlockUtils.VERSION_JAR_SIGNATURE_SCHEME,
@@ -3158,6 +3162,7 @@ public class ApkVerifier {
 
         private Integer mMinSdkVersion;
         private int mMaxSdkVersion = Integer.MAX_VALUE;
+        private RunnablesExecutor mExecutor = RunnablesExecutor.SINGLE_THREADED;
 
         /**
          * Constructs a new {@code Builder} for verifying the provided APK file.
@@ -3220,6 +3225,22 @@ public class ApkVerifier {
             return this;
         }
 
+        /**
+         * Sets the executor used to verify APK contents. The chunked digests of APK Signature
+         * Schemes v2 and v3 and the digests of JAR entries are then computed on the executor's
+         * threads. By default everything is verified on the calling thread.
+         *
+         * <p>The verification result does not depend on the executor: issues are reported in the
+         * same order as with {@link RunnablesExecutor#SINGLE_THREADED}.
+         */
+        public Builder setRunnablesExecutor(RunnablesExecutor executor) {
+            if (executor == null) {
+                throw new NullPointerException("executor == null");
+            }
+            mExecutor = executor;
+            return this;
+        }
+
         /**
          * Returns an {@link ApkVerifier} initialized according to the configuration of this
          * builder.
@@ -3230,7 +3251,8 @@ public class ApkVerifier {
                     mApkDataSource,
                     mV4SignatureFile,
                     mMinSdkVersion,
-                    mMaxSdkVersion);
+                    mMaxSdkVersion,
+                    mExecutor);
         }
     }
 
@@ -27,7 +27,9 @@ import static com.android.apksig.internal.apk.v3.V3SchemeConstants.MIN_SDK_WITH_
 
 import android.text.TextUtils;
 
+import com.aefyr.pseudoapksigner.Base64;
 import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.apk.ApkSigningBlockNotFoundException;
 import com.android.apksig.apk.ApkUtils;
 import com.android.apksig.internal.apk.ApkSigningBlockUtils;
 import com.android.apksig.internal.apk.ContentDigestAlgorithm;
@@ -38,6 +40,7 @@ import com.android.apksig.internal.apk.v1.V1SchemeConstants;
 import com.android.apksig.internal.apk.v1.V1SchemeSigner;
 import com.android.apksig.internal.apk.v1.V1SchemeVerifier;
 import com.android.apksig.internal.apk.v2.V2SchemeSigner;
+import com.android.apksig.internal.apk.v2.V2SchemeVerifier;
 import com.android.apksig.internal.apk.v3.V3SchemeConstants;
 import com.android.apksig.internal.apk.v3.V3SchemeSigner;
 import com.android.apksig.internal.apk.v4.V4SchemeSigner;
@@ -46,10 +49,14 @@ import com.android.apksig.internal.jar.ManifestParser;
 import com.android.apksig.internal.util.AndroidSdkVersion;
 import com.android.apksig.internal.util.Pair;
 import com.android.apksig.internal.util.TeeDataSink;
+import com.android.apksig.internal.zip.CentralDirectoryRecord;
+import com.android.apksig.internal.zip.LocalFileRecord;
+import com.android.apksig.internal.zip.ZipUtils;
 import com.android.apksig.util.DataSink;
 import com.android.apksig.util.DataSinks;
 import com.android.apksig.util.DataSource;
 import com.android.apksig.util.RunnablesExecutor;
+import com.android.apksig.zip.ZipFormatException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -133,6 +140,23 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
     /** Digests of output JAR entries. */
     private final Map<String, byte[]> mOutputJarEntryDigests = new HashMap<>();
 
+    /**
+     * Names of output JAR entries whose digests were taken from the MANIFEST.MF passed to
+     * {@link #initWith(byte[], Set)}. These entries are not inspected when output.
+     */
+    private final Set<String> mTrustedOutputJarEntryNames = new HashSet<>();
+
+    /** Cache of JAR entry digests shared across signing runs or {@code null} if not used. */
+    private JarEntryDigestCache mJarEntryDigestCache;
+
+    /**
+     * Output JAR entries whose digests were not computed from their data, mapped to the digest of
+     * the stored data their digest was cached for, or to {@code null} if their digest was taken
+     * from the MANIFEST.MF passed to {@link #initWith(byte[], Set)}. These entries are checked
+     * against the output APK by {@link #verifyOutputApk(DataSource)}.
+     */
+    private final Map<String, byte[]> mUnreadOutputJarEntries = new HashMap<>();
+
     /** Data of JAR entries emitted by this engine as v1 signature. */
     private final Map<String, byte[]> mEmittedSignatureJarEntryData = new HashMap<>();
 
@@ -172,6 +196,16 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
 
     private RunnablesExecutor mExecutor = RunnablesExecutor.MULTI_THREADED;
 
+    /**
+     * APK Signature Scheme v2 content digests of the output APK together with the offset of the
+     * APK Signing Block and the ZIP Central Directory they were computed over, kept so that the
+     * output APK can be verified without hashing it again.
+     */
+    private Map<ContentDigestAlgorithm, byte[]> mOutputV2ContentDigests;
+    private long mOutputApkSigningBlockOffset;
+    private byte[] mOutputApkSigningBlock;
+    private byte[] mOutputCentralDirectory;
+
     /**
      * A Set of block IDs to be discarded when requesting to preserve the original signatures.
      */
@@ -610,7 +644,8 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         for (Map.Entry<String, ManifestParser.Section> entry : sections.getSecond().entrySet()) {
             String entryName = entry.getKey();
             if (V1SchemeSigner.isJarEntryDigestNeededInManifest(entry.getKey())
-                    && isDebuggable(entryName)) {
+                    && isDebuggable(entryName)
+                    && entryNames.contains(entryName)) {
 
                 V1SchemeVerifier.NamedDigest extractedDigest = null;
                 Collection<V1SchemeVerifier.NamedDigest> digestsToVerify =
@@ -624,6 +659,7 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                 }
                 if (extractedDigest != null) {
                     mOutputJarEntryDigests.put(entryName, extractedDigest.digest);
+                    mTrustedOutputJarEntryNames.add(entryName);
                 }
             }
         }
@@ -635,6 +671,14 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         mExecutor = executor;
     }
 
+    /**
+     * Sets the cache used to look up v1 digests of output JAR entries by the digest of their stored
+     * data, and to store the digests computed by this engine.
+     */
+    public void setJarEntryDigestCache(JarEntryDigestCache jarEntryDigestCache) {
+        mJarEntryDigestCache = jarEntryDigestCache;
+    }
+
     @Override
     public void inputApkSigningBlock(DataSource apkSigningBlock) {
         checkNotClosed();
@@ -780,6 +824,17 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         }
         // v1 signing is enabled
 
+        if (V1SchemeSigner.isJarEntryDigestNeededInManifest(entryName)
+                && mTrustedOutputJarEntryNames.remove(entryName)
+                && isDebuggable(entryName)) {
+            // The entry was not modified since the MANIFEST.MF passed to initWith was generated,
+            // its digest from there is used as is without reading the entry's data.
+            invalidateV1Signature();
+            mOutputJarEntryDigestRequests.remove(entryName);
+            mUnreadOutputJarEntries.put(entryName, null);
+            return null;
+        }
+
         if (V1SchemeSigner.isJarEntryDigestNeededInManifest(entryName)) {
             // This entry is covered by v1 signature. We thus need to inspect the entry's data to
             // compute its digest(s) for v1 signature.
@@ -794,6 +849,7 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                             V1SchemeSigner.getJcaMessageDigestAlgorithm(mV1ContentDigestAlgorithm));
             mOutputJarEntryDigestRequests.put(entryName, dataDigestRequest);
             mOutputJarEntryDigests.remove(entryName);
+            mUnreadOutputJarEntries.remove(entryName);
 
             if ((!mDebuggableApkPermitted)
                     && (ApkUtils.ANDROID_MANIFEST_ZIP_ENTRY_NAME.equals(entryName))) {
@@ -804,6 +860,9 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                         entryName, mOutputAndroidManifestEntryDataRequest, dataDigestRequest);
             }
 
+            if (mJarEntryDigestCache != null) {
+                return new CachingJarEntryDataDigestRequest(dataDigestRequest, mJarEntryDigestCache);
+            }
             return dataDigestRequest;
         }
 
@@ -853,6 +912,8 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
             invalidateV1Signature();
             mOutputJarEntryDigests.remove(entryName);
             mOutputJarEntryDigestRequests.remove(entryName);
+            mUnreadOutputJarEntries.remove(entryName);
+            mTrustedOutputJarEntryNames.remove(entryName);
             mOutputSignatureJarEntryDataRequests.remove(entryName);
             return;
         }
@@ -887,7 +948,12 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                 throw new IllegalStateException(
                         "Still waiting to inspect output APK's " + entryName);
             }
-            mOutputJarEntryDigests.put(entryName, digestRequest.getDigest());
+            byte[] digest = digestRequest.getDigest();
+            mOutputJarEntryDigests.put(entryName, digest);
+            byte[] cachedStoredDataDigest = digestRequest.getCachedStoredDataDigest();
+            if (cachedStoredDataDigest != null) {
+                mUnreadOutputJarEntries.put(entryName, cachedStoredDataDigest);
+            }
         }
         if (isEligibleForSourceStamp()) {
             MessageDigest messageDigest =
@@ -1069,6 +1135,9 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                             mV3SigningEnabled,
                             mOtherSignersSignaturesPreserved ? mPreservedV2Signers : null);
             signingSchemeBlocks.add(v2SigningSchemeBlockAndDigests.signingSchemeBlock);
+            mOutputV2ContentDigests = v2SigningSchemeBlockAndDigests.digestInfo;
+            mOutputApkSigningBlockOffset = beforeCentralDir.size();
+            mOutputCentralDirectory = toByteArray(zipCentralDirectory);
         }
         if (mV3SigningEnabled) {
             invalidateV3Signature();
@@ -1145,6 +1214,7 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
 
         // create APK Signing Block with v2 and/or v3 and/or SourceStamp blocks
         byte[] apkSigningBlock = ApkSigningBlockUtils.generateApkSigningBlock(signingSchemeBlocks);
+        mOutputApkSigningBlock = apkSigningBlock;
 
         mAddSigningBlockRequest =
                 new OutputApkSigningBlockRequestImpl(apkSigningBlock, padSizeBeforeApkSigningBlock);
@@ -1158,6 +1228,146 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         checkSigningBlockDoneIfEnabled();
     }
 
+    /**
+     * Verifies the APK Signature Scheme v2 signature of the signed output APK without hashing its
+     * contents again. The APK Signing Block and the ZIP Central Directory of the output must be
+     * the ones this engine generated and digested. The signatures over the signed data are then
+     * verified as usual, and the signed content digests are compared with the digests computed
+     * while signing. The v1 digests of entries which were not read while signing, because they
+     * came from the digest cache or {@link #initWith(byte[], Set)}, are checked against the output
+     * too, see {@link #verifyUnreadOutputJarEntries}.
+     *
+     * <p>Must be invoked after the output APK is complete and before {@link #close()}.
+     *
+     * @throws ApkFormatException if the layout of the output APK differs from what was signed
+     * @throws IllegalStateException if no APK Signature Scheme v2 signature was generated
+     */
+    public ApkSigningBlockUtils.Result verifyOutputApk(DataSource outputApk)
+            throws IOException, ApkFormatException, NoSuchAlgorithmException,
+            ApkSigningBlockUtils.SignatureNotFoundException {
+        checkNotClosed();
+        if (mOutputV2ContentDigests == null || mOutputApkSigningBlock == null) {
+            throw new IllegalStateException("APK Signature Scheme v2 signature not generated");
+        }
+        ApkUtils.ZipSections zipSections;
+        ApkUtils.ApkSigningBlock apkSigningBlock;
+        try {
+            zipSections = ApkUtils.findZipSections(outputApk);
+        } catch (ZipFormatException e) {
+            throw new ApkFormatException("Malformed output APK", e);
+        }
+        try {
+            apkSigningBlock = ApkUtils.findApkSigningBlock(outputApk, zipSections);
+        } catch (ApkSigningBlockNotFoundException e) {
+            throw new ApkFormatException("APK Signing Block not found in output APK", e);
+        }
+        if (apkSigningBlock.getStartOffset() != mOutputApkSigningBlockOffset) {
+            throw new ApkFormatException(
+                    "APK Signing Block at offset " + apkSigningBlock.getStartOffset()
+                            + " instead of " + mOutputApkSigningBlockOffset);
+        }
+        if (!Arrays.equals(
+                toByteArray(apkSigningBlock.getContents()), mOutputApkSigningBlock)) {
+            throw new ApkFormatException("APK Signing Block differs from the generated one");
+        }
+        DataSource centralDir =
+                outputApk.slice(
+                        zipSections.getZipCentralDirectoryOffset(),
+                        zipSections.getZipCentralDirectorySizeBytes());
+        if (!Arrays.equals(toByteArray(centralDir), mOutputCentralDirectory)) {
+            throw new ApkFormatException("ZIP Central Directory differs from the signed one");
+        }
+
+        Map<Integer, String> supportedApkSigSchemeNames = new HashMap<>(2);
+        Set<Integer> foundApkSigSchemeIds = new HashSet<>(2);
+        supportedApkSigSchemeNames.put(VERSION_APK_SIGNATURE_SCHEME_V2, "APK Signature Scheme v2");
+        foundApkSigSchemeIds.add(VERSION_APK_SIGNATURE_SCHEME_V2);
+        if (mV3SigningEnabled) {
+            supportedApkSigSchemeNames.put(
+                    VERSION_APK_SIGNATURE_SCHEME_V3, "APK Signature Scheme v3");
+            foundApkSigSchemeIds.add(VERSION_APK_SIGNATURE_SCHEME_V3);
+        }
+        ApkSigningBlockUtils.Result result =
+                V2SchemeVerifier.verifyWithContentDigests(
+                        outputApk,
+                        zipSections,
+                        mOutputV2ContentDigests,
+                        supportedApkSigSchemeNames,
+                        foundApkSigSchemeIds,
+                        Math.max(mMinSdkVersion, AndroidSdkVersion.N),
+                        Integer.MAX_VALUE);
+        verifyUnreadOutputJarEntries(outputApk, zipSections, result);
+        return result;
+    }
+
+    /**
+     * Checks the output JAR entries whose v1 digests were not computed from their data. An entry
+     * whose stored data still has the digest its v1 digest was cached for is fine as is, any other
+     * entry is inflated and its digest compared with the one in the output MANIFEST.MF.
+     */
+    private void verifyUnreadOutputJarEntries(
+            DataSource outputApk,
+            ApkUtils.ZipSections zipSections,
+            ApkSigningBlockUtils.Result result)
+            throws IOException, ApkFormatException, NoSuchAlgorithmException {
+        if (mUnreadOutputJarEntries.isEmpty()) {
+            return;
+        }
+        String jcaDigestAlgorithm =
+                V1SchemeSigner.getJcaMessageDigestAlgorithm(mV1ContentDigestAlgorithm);
+        DataSource lfhSection = outputApk.slice(0, mOutputApkSigningBlockOffset);
+        for (CentralDirectoryRecord cdRecord :
+                ZipUtils.parseZipCentralDirectory(outputApk, zipSections)) {
+            String entryName = cdRecord.getName();
+            if (!mUnreadOutputJarEntries.containsKey(entryName)) {
+                continue;
+            }
+            LocalFileRecord localFileRecord;
+            try {
+                localFileRecord =
+                        LocalFileRecord.getRecord(lfhSection, cdRecord, lfhSection.size());
+            } catch (ZipFormatException e) {
+                throw new ApkFormatException("Malformed ZIP entry: " + entryName, e);
+            }
+            byte[] storedDataDigest = mUnreadOutputJarEntries.get(entryName);
+            if ((storedDataDigest != null)
+                    && (Arrays.equals(
+                            ApkSigner.getStoredDataDigest(lfhSection, localFileRecord),
+                            storedDataDigest))) {
+                continue;
+            }
+            MessageDigest md = MessageDigest.getInstance(jcaDigestAlgorithm);
+            try {
+                localFileRecord.outputUncompressedData(lfhSection, DataSinks.asDataSink(md));
+            } catch (ZipFormatException e) {
+                throw new ApkFormatException("Malformed ZIP entry: " + entryName, e);
+            }
+            byte[] actual = md.digest();
+            byte[] expected = mOutputJarEntryDigests.get(entryName);
+            if (!Arrays.equals(actual, expected)) {
+                result.addError(
+                        ApkVerifier.Issue.JAR_SIG_ZIP_ENTRY_DIGEST_DID_NOT_VERIFY,
+                        entryName,
+                        jcaDigestAlgorithm,
+                        V1SchemeConstants.MANIFEST_ENTRY_NAME,
+                        Base64.encodeToString(actual, Base64.NO_WRAP),
+                        Base64.encodeToString(expected, Base64.NO_WRAP));
+                result.verified = false;
+            }
+        }
+    }
+
+    private static byte[] toByteArray(DataSource dataSource) throws IOException {
+        long size = dataSource.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Data too large: " + size + " bytes");
+        }
+        ByteBuffer buffer = dataSource.getByteBuffer(0, (int) size);
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
     @Override
     public void signV4(DataSource dataSource, File outputFile, boolean ignoreFailures)
             throws SignatureException {
@@ -1224,8 +1434,13 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         mDebuggable = null;
         mOutputJarEntryDigestRequests.clear();
         mOutputJarEntryDigests.clear();
+        mTrustedOutputJarEntryNames.clear();
+        mUnreadOutputJarEntries.clear();
         mEmittedSignatureJarEntryData.clear();
         mOutputSignatureJarEntryDataRequests.clear();
+        mOutputV2ContentDigests = null;
+        mOutputApkSigningBlock = null;
+        mOutputCentralDirectory = null;
 
         mAddSigningBlockRequest = null;
     }
@@ -1241,6 +1456,9 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         if (mV2SigningEnabled) {
             mV2SignaturePending = true;
             mAddSigningBlockRequest = null;
+            mOutputV2ContentDigests = null;
+            mOutputApkSigningBlock = null;
+            mOutputCentralDirectory = null;
         }
     }
 
@@ -1495,6 +1713,23 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         }
     }
 
+    /**
+     * Cache of v1 JAR entry digests keyed by the SHA-256 digest of the entry's stored data as
+     * offered to {@link StoredDataInspectJarEntryRequest#offerStoredDataDigest(byte[])}. The key
+     * covers the entry's compressed data itself, so a cached digest is only returned for exactly the
+     * same data. Implementations must be thread-safe because entries are inspected in parallel.
+     */
+    public interface JarEntryDigestCache {
+        /**
+         * Returns the digest of the uncompressed data of the entry with the provided stored data
+         * digest or {@code null} if not known.
+         */
+        byte[] get(byte[] storedDataDigest, String jcaDigestAlgorithm);
+
+        /** Stores the digest computed for the entry's uncompressed data. */
+        void put(byte[] storedDataDigest, String jcaDigestAlgorithm, byte[] digest);
+    }
+
     /** JAR entry inspection request which obtains the digest of the entry's uncompressed data. */
     private static class GetJarEntryDataDigestRequest implements InspectJarEntryRequest {
         private final String mEntryName;
@@ -1505,6 +1740,7 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
         private DataSink mDataSink;
         private MessageDigest mMessageDigest;
         private byte[] mDigest;
+        private byte[] mCachedStoredDataDigest;
 
         private GetJarEntryDataDigestRequest(String entryName, String jcaDigestAlgorithm) {
             mEntryName = entryName;
@@ -1560,6 +1796,21 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
             }
         }
 
+        /**
+         * Completes this request with a digest cached for the entry's stored data, without seeing
+         * the entry's data.
+         */
+        private void setCachedDigest(byte[] digest, byte[] storedDataDigest) {
+            synchronized (mLock) {
+                checkNotDone();
+                mDone = true;
+                mDigest = digest.clone();
+                mCachedStoredDataDigest = storedDataDigest.clone();
+                mMessageDigest = null;
+                mDataSink = null;
+            }
+        }
+
         private void checkNotDone() throws IllegalStateException {
             synchronized (mLock) {
                 if (mDone) {
@@ -1576,6 +1827,69 @@ public class DefaultApkSignerEngine implements ApkSignerEngine {
                 return mDigest.clone();
             }
         }
+
+        /**
+         * Returns the digest of the stored data the digest was cached for or {@code null} if the
+         * digest was computed from the entry's data.
+         */
+        private byte[] getCachedStoredDataDigest() {
+            synchronized (mLock) {
+                return mCachedStoredDataDigest;
+            }
+        }
+    }
+
+    /**
+     * JAR entry digest request which may be satisfied from a {@link JarEntryDigestCache} and stores
+     * the digest computed by the wrapped request there.
+     */
+    private static class CachingJarEntryDataDigestRequest
+            implements StoredDataInspectJarEntryRequest {
+        private final GetJarEntryDataDigestRequest mRequest;
+        private final JarEntryDigestCache mDigestCache;
+
+        private volatile byte[] mStoredDataDigest;
+
+        private CachingJarEntryDataDigestRequest(
+                GetJarEntryDataDigestRequest request, JarEntryDigestCache digestCache) {
+            mRequest = request;
+            mDigestCache = digestCache;
+        }
+
+        @Override
+        public String getEntryName() {
+            return mRequest.getEntryName();
+        }
+
+        @Override
+        public DataSink getDataSink() {
+            return mRequest.getDataSink();
+        }
+
+        @Override
+        public boolean offerStoredDataDigest(byte[] storedDataDigest) {
+            byte[] digest = mDigestCache.get(storedDataDigest, mRequest.mJcaDigestAlgorithm);
+            if (digest == null) {
+                mStoredDataDigest = storedDataDigest.clone();
+                return false;
+            }
+            mRequest.setCachedDigest(digest, storedDataDigest);
+            return true;
+        }
+
+        @Override
+        public void done() {
+            if (mRequest.isDone()) {
+                return;
+            }
+            mRequest.done();
+            byte[] storedDataDigest = mStoredDataDigest;
+            if (storedDataDigest != null) {
+                mStoredDataDigest = null;
+                mDigestCache.put(
+                        storedDataDigest, mRequest.mJcaDigestAlgorithm, mRequest.getDigest());
+            }
+        }
     }
 
     /** JAR entry inspection request which transparently satisfies multiple such requests. */
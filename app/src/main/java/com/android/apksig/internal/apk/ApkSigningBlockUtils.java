@@ -189,6 +189,18 @@ public class ApkSigningBlockUtils {
                             + ", computed: " + actualContentDigests.keySet());
         }
 
+        verifyContentDigests(contentDigestAlgorithms, actualContentDigests, result);
+    }
+
+    /**
+     * Compares the content digests signed by each signer in the provided {@code result} against
+     * {@code actualContentDigests}, the digests of the APK for each algorithm in
+     * {@code contentDigestAlgorithms}. Mismatches are added as errors to the signer.
+     */
+    public static void verifyContentDigests(
+            Set<ContentDigestAlgorithm> contentDigestAlgorithms,
+            Map<ContentDigestAlgorithm, byte[]> actualContentDigests,
+            Result result) {
         // Compare digests computed over the rest of APK against the corresponding expected digests
         // in signer blocks.
         for (Result.SignerInfo signerInfo : result.signers) {
@@ -470,11 +482,13 @@ public class ApkSigningBlockUtils {
         public void run() {
             byte[] chunkContentPrefix = new byte[5];
             chunkContentPrefix[0] = (byte) 0xa5;
+            // Every chunk of this worker is read into the same buffer.
+            ByteBuffer buffer = ByteBuffer.allocate((int) CONTENT_DIGESTED_CHUNK_MAX_SIZE_BYTES);
 
             try {
-                for (ChunkSupplier.Chunk chunk = dataSupplier.get();
+                for (ChunkSupplier.Chunk chunk = dataSupplier.get(buffer);
                      chunk != null;
-                     chunk = dataSupplier.get()) {
+                     chunk = dataSupplier.get(buffer)) {
                     int size = chunk.size;
                     if (size > CONTENT_DIGESTED_CHUNK_MAX_SIZE_BYTES) {
                         throw new RuntimeException("Chunk size greater than expected: " + size);
@@ -547,6 +561,15 @@ public class ApkSigningBlockUtils {
          */
         @Override
         public ChunkSupplier.Chunk get() {
+            return get(ByteBuffer.allocate((int) CONTENT_DIGESTED_CHUNK_MAX_SIZE_BYTES));
+        }
+
+        /**
+         * Reads the next chunk into {@code buffer}, which must be able to hold a full chunk. The
+         * returned chunk shares the buffer, so it is only valid until the next call with the same
+         * buffer.
+         */
+        public ChunkSupplier.Chunk get(ByteBuffer buffer) {
             int index = nextIndex.getAndIncrement();
             if (index < 0 || index >= totalChunkCount) {
                 return null;
@@ -567,7 +590,8 @@ public class ApkSigningBlockUtils {
                     CONTENT_DIGESTED_CHUNK_MAX_SIZE_BYTES);
 
             final int size = (int)remainingSize;
-            final ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.clear();
+            buffer.limit(size);
             try {
                 dataSources[dataSourceIndex].copyTo(
                         dataSourceChunkOffset * CONTENT_DIGESTED_CHUNK_MAX_SIZE_BYTES, size,
@@ -55,6 +55,7 @@ import com.android.apksig.internal.zip.LocalFileRecord;
 import com.android.apksig.internal.zip.ZipUtils;
 import com.android.apksig.util.DataSinks;
 import com.android.apksig.util.DataSource;
+import com.android.apksig.util.RunnablesExecutor;
 import com.android.apksig.zip.ZipFormatException;
 
 import java.io.IOException;
@@ -82,7 +83,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
+import java.util.zip.Inflater;
 
 /**
  * APK verifier which uses JAR signing (aka v1 signing scheme).
@@ -115,6 +118,36 @@ public abstract class V1SchemeVerifier {
             Set<Integer> foundApkSigSchemeIds,
             int minSdkVersion,
             int maxSdkVersion) throws IOException, ApkFormatException, NoSuchAlgorithmException {
+        return verify(
+                apk,
+                apkSections,
+                supportedApkSigSchemeNames,
+                foundApkSigSchemeIds,
+                minSdkVersion,
+                maxSdkVersion,
+                RunnablesExecutor.SINGLE_THREADED);
+    }
+
+    /**
+     * Verifies the provided APK's JAR signatures like
+     * {@link #verify(DataSource, ApkUtils.ZipSections, Map, Set, int, int)}, digesting the data of
+     * JAR entries on the provided executor. {@code apk} must support concurrent reads. The result
+     * is the same for every executor.
+     *
+     * @throws ApkFormatException if the APK is malformed
+     * @throws IOException if an I/O error occurs when reading the APK
+     * @throws NoSuchAlgorithmException if the APK's JAR signatures cannot be verified because a
+     *         required cryptographic algorithm implementation is missing
+     */
+    public static Result verify(
+            DataSource apk,
+            ApkUtils.ZipSections apkSections,
+            Map<Integer, String> supportedApkSigSchemeNames,
+            Set<Integer> foundApkSigSchemeIds,
+            int minSdkVersion,
+            int maxSdkVersion,
+            RunnablesExecutor executor)
+            throws IOException, ApkFormatException, NoSuchAlgorithmException {
         if (minSdkVersion > maxSdkVersion) {
             throw new IllegalArgumentException(
                     "minSdkVersion (" + minSdkVersion + ") > maxSdkVersion (" + maxSdkVersion
@@ -140,6 +173,7 @@ public abstract class V1SchemeVerifier {
                 foundApkSigSchemeIds,
                 minSdkVersion,
                 maxSdkVersion,
+                executor,
                 result);
 
         return result;
@@ -225,6 +259,7 @@ public abstract class V1SchemeVerifier {
                 Set<Integer> foundApkSigSchemeIds,
                 int minSdkVersion,
                 int maxSdkVersion,
+                RunnablesExecutor executor,
                 Result result) throws ApkFormatException, IOException, NoSuchAlgorithmException {
 
             // Find JAR manifest and signature block files.
@@ -376,6 +411,7 @@ public abstract class V1SchemeVerifier {
                             signers,
                             minSdkVersion,
                             maxSdkVersion,
+                            executor,
                             result);
             if (result.containsErrors()) {
                 return;
@@ -1290,6 +1326,7 @@ public abstract class V1SchemeVerifier {
             List<Signer> signers,
             int minSdkVersion,
             int maxSdkVersion,
+            RunnablesExecutor executor,
             Result result) throws ApkFormatException, IOException, NoSuchAlgorithmException {
         // Iterate over APK contents as sequentially as possible to improve performance.
         List<CentralDirectoryRecord> cdRecordsSortedByLocalFileHeaderOffset =
@@ -1297,6 +1334,11 @@ public abstract class V1SchemeVerifier {
         Collections.sort(
                 cdRecordsSortedByLocalFileHeaderOffset,
                 CentralDirectoryRecord.BY_LOCAL_FILE_HEADER_OFFSET_COMPARATOR);
+        // Entries are checked in this order, but the data of entries is digested on the
+        // executor. Issues and failures are reported in entry order once all entries have been
+        // digested, so that the result is the same as when digesting on the calling thread.
+        List<JarEntryCheck> checks = new ArrayList<>(cdRecordsSortedByLocalFileHeaderOffset.size());
+        List<JarEntryCheck> digestChecks = new ArrayList<>(checks.size());
         List<Signer> firstSignedEntrySigners = null;
         String firstSignedEntryName = null;
         for (CentralDirectoryRecord cdRecord : cdRecordsSortedByLocalFileHeaderOffset) {
@@ -1307,7 +1349,9 @@ public abstract class V1SchemeVerifier {
 
             ManifestParser.Section manifestSection = entryNameToManifestSection.get(entryName);
             if (manifestSection == null) {
-                result.addError(Issue.JAR_SIG_NO_ZIP_ENTRY_DIGEST_IN_MANIFEST, entryName);
+                checks.add(
+                        new JarEntryCheck(
+                                Issue.JAR_SIG_NO_ZIP_ENTRY_DIGEST_IN_MANIFEST, entryName));
                 continue;
             }
 
@@ -1318,19 +1362,20 @@ public abstract class V1SchemeVerifier {
                 }
             }
             if (entrySigners.isEmpty()) {
-                result.addError(Issue.JAR_SIG_ZIP_ENTRY_NOT_SIGNED, entryName);
+                checks.add(new JarEntryCheck(Issue.JAR_SIG_ZIP_ENTRY_NOT_SIGNED, entryName));
                 continue;
             }
             if (firstSignedEntrySigners == null) {
                 firstSignedEntrySigners = entrySigners;
                 firstSignedEntryName = entryName;
             } else if (!entrySigners.equals(firstSignedEntrySigners)) {
-                result.addError(
-                        Issue.JAR_SIG_ZIP_ENTRY_SIGNERS_MISMATCH,
-                        firstSignedEntryName,
-                        getSignerNames(firstSignedEntrySigners),
-                        entryName,
-                        getSignerNames(entrySigners));
+                checks.add(
+                        new JarEntryCheck(
+                                Issue.JAR_SIG_ZIP_ENTRY_SIGNERS_MISMATCH,
+                                firstSignedEntryName,
+                                getSignerNames(firstSignedEntrySigners),
+                                entryName,
+                                getSignerNames(entrySigners)));
                 continue;
             }
 
@@ -1339,30 +1384,144 @@ public abstract class V1SchemeVerifier {
                             getDigestsToVerify(
                                     manifestSection, "-Digest", minSdkVersion, maxSdkVersion));
             if (expectedDigests.isEmpty()) {
-                result.addError(Issue.JAR_SIG_NO_ZIP_ENTRY_DIGEST_IN_MANIFEST, entryName);
+                checks.add(
+                        new JarEntryCheck(
+                                Issue.JAR_SIG_NO_ZIP_ENTRY_DIGEST_IN_MANIFEST, entryName));
                 continue;
             }
 
-            MessageDigest[] mds = new MessageDigest[expectedDigests.size()];
-            for (int i = 0; i < expectedDigests.size(); i++) {
-                mds[i] = getMessageDigest(expectedDigests.get(i).jcaDigestAlgorithm);
-            }
+            JarEntryCheck check = new JarEntryCheck(cdRecord, expectedDigests);
+            checks.add(check);
+            digestChecks.add(check);
+        }
+
+        digestJarEntries(apk, cdOffsetInApk, digestChecks, executor);
+
+        for (JarEntryCheck check : checks) {
+            check.reportTo(result);
+        }
+
+        if (firstSignedEntrySigners == null) {
+            result.addError(Issue.JAR_SIG_NO_SIGNED_ZIP_ENTRIES);
+            return Collections.emptySet();
+        } else {
+            return new HashSet<>(firstSignedEntrySigners);
+        }
+    }
 
+    /**
+     * Computes the actual digests of the provided JAR entries on the provided executor. Workers
+     * take the next entry from a shared index and keep their own {@link Inflater} and
+     * {@link MessageDigest} instances. The outcome of each entry is stored in its check.
+     */
+    private static void digestJarEntries(
+            DataSource apk,
+            long cdOffsetInApk,
+            List<JarEntryCheck> checks,
+            RunnablesExecutor executor) {
+        if (checks.isEmpty()) {
+            return;
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        executor.execute(
+                () ->
+                        () -> {
+                            Map<String, MessageDigest> mdsByAlgorithm = new HashMap<>(2);
+                            Inflater inflater = new Inflater(true);
+                            try {
+                                int index;
+                                while ((index = nextIndex.getAndIncrement()) < checks.size()) {
+                                    checks.get(index)
+                                            .digest(apk, cdOffsetInApk, mdsByAlgorithm, inflater);
+                                }
+                            } finally {
+                                inflater.end();
+                            }
+                        });
+    }
+
+    /**
+     * Verification of a single JAR entry against JAR manifest. Either holds an issue found without
+     * reading the entry, or the expected digests and, once digested, the outcome of reading it.
+     */
+    private static class JarEntryCheck {
+        private final Issue mIssue;
+        private final Object[] mIssueParams;
+        private final CentralDirectoryRecord mCdRecord;
+        private final List<NamedDigest> mExpectedDigests;
+        private byte[][] mActualDigests;
+        private Exception mFailure;
+
+        private JarEntryCheck(Issue issue, Object... params) {
+            mIssue = issue;
+            mIssueParams = params;
+            mCdRecord = null;
+            mExpectedDigests = null;
+        }
+
+        private JarEntryCheck(CentralDirectoryRecord cdRecord, List<NamedDigest> expectedDigests) {
+            mIssue = null;
+            mIssueParams = null;
+            mCdRecord = cdRecord;
+            mExpectedDigests = expectedDigests;
+        }
+
+        private void digest(
+                DataSource apk,
+                long cdOffsetInApk,
+                Map<String, MessageDigest> mdsByAlgorithm,
+                Inflater inflater) {
             try {
+                MessageDigest[] mds = new MessageDigest[mExpectedDigests.size()];
+                for (int i = 0; i < mds.length; i++) {
+                    String algorithm = mExpectedDigests.get(i).jcaDigestAlgorithm;
+                    MessageDigest md = mdsByAlgorithm.get(algorithm);
+                    if (md == null) {
+                        md = getMessageDigest(algorithm);
+                        mdsByAlgorithm.put(algorithm, md);
+                    } else if (Arrays.asList(mds).subList(0, i).contains(md)) {
+                        // Same algorithm listed twice for this entry
+                        md = getMessageDigest(algorithm);
+                    }
+                    md.reset();
+                    mds[i] = md;
+                }
                 LocalFileRecord.outputUncompressedData(
                         apk,
-                        cdRecord,
+                        mCdRecord,
                         cdOffsetInApk,
-                        DataSinks.asDataSink(mds));
-            } catch (ZipFormatException e) {
-                throw new ApkFormatException("Malformed ZIP entry: " + entryName, e);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read entry: " + entryName, e);
+                        DataSinks.asDataSink(mds),
+                        inflater);
+                byte[][] actualDigests = new byte[mds.length][];
+                for (int i = 0; i < mds.length; i++) {
+                    actualDigests[i] = mds[i].digest();
+                }
+                mActualDigests = actualDigests;
+            } catch (Exception e) {
+                mFailure = e;
+            }
+        }
+
+        private void reportTo(Result result)
+                throws ApkFormatException, NoSuchAlgorithmException {
+            if (mIssue != null) {
+                result.addError(mIssue, mIssueParams);
+                return;
+            }
+            String entryName = mCdRecord.getName();
+            if (mFailure instanceof ZipFormatException) {
+                throw new ApkFormatException("Malformed ZIP entry: " + entryName, mFailure);
+            } else if (mFailure instanceof IOException) {
+                throw new RuntimeException("Failed to read entry: " + entryName, mFailure);
+            } else if (mFailure instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) mFailure;
+            } else if (mFailure instanceof RuntimeException) {
+                throw (RuntimeException) mFailure;
             }
 
-            for (int i = 0; i < expectedDigests.size(); i++) {
-                NamedDigest expectedDigest = expectedDigests.get(i);
-                byte[] actualDigest = mds[i].digest();
+            for (int i = 0; i < mExpectedDigests.size(); i++) {
+                NamedDigest expectedDigest = mExpectedDigests.get(i);
+                byte[] actualDigest = mActualDigests[i];
                 if (!Arrays.equals(expectedDigest.digest, actualDigest)) {
                     result.addError(
                             Issue.JAR_SIG_ZIP_ENTRY_DIGEST_DID_NOT_VERIFY,
@@ -1374,13 +1533,6 @@ public abstract class V1SchemeVerifier {
                 }
             }
         }
-
-        if (firstSignedEntrySigners == null) {
-            result.addError(Issue.JAR_SIG_NO_SIGNED_ZIP_ENTRIES);
-            return Collections.emptySet();
-        } else {
-            return new HashSet<>(firstSignedEntrySigners);
-        }
     }
 
     private static List<String> getSignerNames(List<Signer> signers) {
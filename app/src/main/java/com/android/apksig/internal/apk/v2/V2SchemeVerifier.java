@@ -120,6 +120,49 @@ public abstract class V2SchemeVerifier {
         return result;
     }
 
+    /**
+     * Verifies the provided APK's v2 signatures like {@link #verify(RunnablesExecutor, DataSource,
+     * ApkUtils.ZipSections, Map, Set, int, int)}, except that the content digests signed by each
+     * signer are compared against {@code contentDigests} instead of digests computed over the APK.
+     *
+     * <p>Only use this for an APK whose content digests are already known to match its contents,
+     * e.g. because they were computed while the APK was being written.
+     */
+    public static ApkSigningBlockUtils.Result verifyWithContentDigests(
+            DataSource apk,
+            ApkUtils.ZipSections zipSections,
+            Map<ContentDigestAlgorithm, byte[]> contentDigests,
+            Map<Integer, String> supportedApkSigSchemeNames,
+            Set<Integer> foundSigSchemeIds,
+            int minSdkVersion,
+            int maxSdkVersion)
+            throws IOException, NoSuchAlgorithmException,
+            ApkSigningBlockUtils.SignatureNotFoundException {
+        ApkSigningBlockUtils.Result result = new ApkSigningBlockUtils.Result(
+                ApkSigningBlockUtils.VERSION_APK_SIGNATURE_SCHEME_V2);
+        SignatureInfo signatureInfo =
+                ApkSigningBlockUtils.findSignature(apk, zipSections,
+                        V2SchemeConstants.APK_SIGNATURE_SCHEME_V2_BLOCK_ID , result);
+
+        Set<ContentDigestAlgorithm> contentDigestsToVerify = new HashSet<>(1);
+        parseSigners(
+                signatureInfo.signatureBlock,
+                contentDigestsToVerify,
+                supportedApkSigSchemeNames,
+                foundSigSchemeIds,
+                minSdkVersion,
+                maxSdkVersion,
+                result);
+        if (result.containsErrors()) {
+            return result;
+        }
+        ApkSigningBlockUtils.verifyContentDigests(contentDigestsToVerify, contentDigests, result);
+        if (!result.containsErrors()) {
+            result.verified = true;
+        }
+        return result;
+    }
+
     /**
      * Verifies the provided APK's v2 signatures and outputs the results into the provided
      * {@code result}. APK is considered verified only if there are no errors reported in the
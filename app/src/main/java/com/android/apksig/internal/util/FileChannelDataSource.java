@@ -105,15 +105,16 @@ public class FileChannelDataSource implements DataSource {
             int chunkSize = (int) Math.min(remaining, buf.capacity());
             int chunkRemaining = chunkSize;
             buf.limit(chunkSize);
-            synchronized (mChannel) {
-                mChannel.position(chunkOffsetInFile);
-                while (chunkRemaining > 0) {
-                    int read = mChannel.read(buf);
-                    if (read < 0) {
-                        throw new RuntimeException("Unexpected EOF encountered");
-                    }
-                    chunkRemaining -= read;
+            // Positional reads do not touch the channel position, so concurrent readers of the
+            // same channel do not need to take turns.
+            long readOffsetInFile = chunkOffsetInFile;
+            while (chunkRemaining > 0) {
+                int read = mChannel.read(buf, readOffsetInFile);
+                if (read < 0) {
+                    throw new RuntimeException("Unexpected EOF encountered");
                 }
+                chunkRemaining -= read;
+                readOffsetInFile += read;
             }
             buf.flip();
             sink.consume(buf);
@@ -142,10 +143,9 @@ public class FileChannelDataSource implements DataSource {
             // the buffer's limit to avoid reading more than size bytes.
             dest.limit(dest.position() + size);
             while (remaining > 0) {
-                int chunkSize;
-                synchronized (mChannel) {
-                    mChannel.position(offsetInFile);
-                    chunkSize = mChannel.read(dest);
+                int chunkSize = mChannel.read(dest, offsetInFile);
+                if (chunkSize < 0) {
+                    throw new IOException("Unexpected EOF encountered");
                 }
                 offsetInFile += chunkSize;
                 remaining -= chunkSize;
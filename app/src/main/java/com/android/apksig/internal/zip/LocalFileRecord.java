@@ -115,6 +115,20 @@ public class LocalFileRecord {
         return mDataCompressed;
     }
 
+    /**
+     * Returns the size (in bytes) of this record's uncompressed data.
+     */
+    public long getUncompressedDataSize() {
+        return mUncompressedDataSize;
+    }
+
+    /**
+     * Sends this record's file data, as stored in the archive, into the provided data sink.
+     */
+    public void outputStoredData(DataSource lfhSection, DataSink sink) throws IOException {
+        lfhSection.feed(mStartOffsetInArchive + mDataStartOffset, mDataSize, sink);
+    }
+
     /**
      * Returns the Local File record starting at the current position of the provided buffer
      * and advances the buffer's position immediately past the end of the record. The record
@@ -371,10 +385,22 @@ public class LocalFileRecord {
     public void outputUncompressedData(
             DataSource lfhSection,
             DataSink sink) throws ZipFormatException {
+        outputUncompressedData(lfhSection, sink, null);
+    }
+
+    /**
+     * Sends uncompressed data of this record into the the provided data sink, inflating with the
+     * provided {@code nowrap} inflater if it is not {@code null}. The inflater is reset, not ended,
+     * so that it can be reused for further records.
+     */
+    public void outputUncompressedData(
+            DataSource lfhSection,
+            DataSink sink,
+            Inflater inflater) throws ZipFormatException {
         long dataStartOffsetInArchive = mStartOffsetInArchive + mDataStartOffset;
         try {
             if (mDataCompressed) {
-                try (InflateSinkAdapter inflateAdapter = new InflateSinkAdapter(sink)) {
+                try (InflateSinkAdapter inflateAdapter = new InflateSinkAdapter(sink, inflater)) {
                     lfhSection.feed(dataStartOffsetInArchive, mDataSize, inflateAdapter);
                     long actualUncompressedSize = inflateAdapter.getOutputByteCount();
                     if (actualUncompressedSize != mUncompressedDataSize) {
@@ -413,6 +439,19 @@ public class LocalFileRecord {
             CentralDirectoryRecord cdRecord,
             long cdStartOffsetInArchive,
             DataSink sink) throws ZipFormatException, IOException {
+        outputUncompressedData(source, cdRecord, cdStartOffsetInArchive, sink, null);
+    }
+
+    /**
+     * Sends uncompressed data pointed to by the provided ZIP Central Directory (CD) record into the
+     * provided data sink, inflating with the provided reusable inflater if it is not {@code null}.
+     */
+    public static void outputUncompressedData(
+            DataSource source,
+            CentralDirectoryRecord cdRecord,
+            long cdStartOffsetInArchive,
+            DataSink sink,
+            Inflater inflater) throws ZipFormatException, IOException {
         // IMPLEMENTATION NOTE: This method attempts to mimic the behavior of Android platform
         // exhibited when reading an APK for the purposes of verifying its signatures.
         // When verifying an APK, Android doesn't care reading the extra field or the Data
@@ -425,7 +464,7 @@ public class LocalFileRecord {
                         false, // don't care about the extra field
                         false // don't read the Data Descriptor
                         );
-        lfhRecord.outputUncompressedData(source, sink);
+        lfhRecord.outputUncompressedData(source, sink, inflater);
     }
 
     /**
@@ -456,15 +495,18 @@ public class LocalFileRecord {
      */
     private static class InflateSinkAdapter implements DataSink, Closeable {
         private final DataSink mDelegate;
+        private final boolean mOwnsInflater;
 
-        private Inflater mInflater = new Inflater(true);
+        private Inflater mInflater;
         private byte[] mOutputBuffer;
         private byte[] mInputBuffer;
         private long mOutputByteCount;
         private boolean mClosed;
 
-        private InflateSinkAdapter(DataSink delegate) {
+        private InflateSinkAdapter(DataSink delegate, Inflater inflater) {
             mDelegate = delegate;
+            mOwnsInflater = inflater == null;
+            mInflater = (inflater != null) ? inflater : new Inflater(true);
         }
 
         @Override
@@ -517,7 +559,11 @@ public class LocalFileRecord {
             mInputBuffer = null;
             mOutputBuffer = null;
             if (mInflater != null) {
-                mInflater.end();
+                if (mOwnsInflater) {
+                    mInflater.end();
+                } else {
+                    mInflater.reset();
+                }
                 mInflater = null;
             }
         }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.apksig.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link RunnablesExecutor} backed by a pool of daemon threads shared by all invocations, so
+ * that signing or verifying many APKs does not start and stop a thread pool each time. Idle
+ * threads exit after a while, and invocations from a pool thread run on the calling thread so
+ * that nested invocations never wait for the pool they are running on.
+ */
+final class SharedPoolRunnablesExecutor implements RunnablesExecutor {
+    private final int mParallelism;
+
+    SharedPoolRunnablesExecutor(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public void execute(RunnablesProvider provider) {
+        if (mParallelism == 1 || Thread.currentThread() instanceof PoolThread) {
+            provider.createRunnable().run();
+            return;
+        }
+        ExecutorService executor = Pool.getExecutor(mParallelism - 1);
+        List<Future<?>> futures = new ArrayList<>(mParallelism - 1);
+        try {
+            for (int i = 1; i < mParallelism; i++) {
+                futures.add(executor.submit(() -> provider.createRunnable().run()));
+            }
+            // The calling thread works too instead of just waiting for the pool.
+            provider.createRunnable().run();
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static final class Pool {
+        private static ThreadPoolExecutor sExecutor;
+
+        /**
+         * Returns the shared pool, grown to at least {@code threadCount} threads. The pool is
+         * never replaced, so callers that already have work queued on it are not affected.
+         */
+        static synchronized ExecutorService getExecutor(int threadCount) {
+            if (sExecutor == null) {
+                sExecutor =
+                        new ThreadPoolExecutor(
+                                threadCount,
+                                threadCount,
+                                KEEP_ALIVE_SECONDS,
+                                TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<>(),
+                                new DaemonThreadFactory());
+                // Threads started for a wide job exit once idle instead of living on
+                sExecutor.allowCoreThreadTimeOut(true);
+            } else if (sExecutor.getMaximumPoolSize() < threadCount) {
+                // Raise the maximum first, it may not be set below the core size.
+                sExecutor.setMaximumPoolSize(threadCount);
+                sExecutor.setCorePoolSize(threadCount);
+            }
+            return sExecutor;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new PoolThread(runnable, "apksig-worker-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class PoolThread extends Thread {
+        PoolThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+}
@@ -1,12 +1,21 @@
 package com.j256.simplezip;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.j256.simplezip.codec.FileDataDecoder;
@@ -27,11 +36,23 @@ import com.starry.FileUtils;
 /**
  * Read in a Zip-file either from a {@link File} or an {@link InputStream}.
  * 
+ * If the source is a file, or a {@link FileInputStream} at the start of its file, the input is also seekable: see
+ * {@link #readCentralDirectoryEntries()} and {@link #readFileHeader(ZipCentralDirectoryFileEntry)} to list and read
+ * entries from the central-directory without streaming over the data of the other entries.
+ * 
  * @author graywatson
  */
 public class ZipFileInput implements Closeable {
 
-	private final RewindableInputStream inputStream;
+	/** size of the end of central-directory without the comment */
+	private static final int DIRECTORY_END_SIZE = ZipCentralDirectoryEnd.MINIMUM_READ_SIZE + 4;
+	/** size of the zip64 end of central-directory locator */
+	private static final int ZIP64_LOCATOR_SIZE = 4 + 4 + 4 + 8 + 4;
+	private static final int DIRECTORY_END_SIGNATURE = 0x6054b50;
+	private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+	private final FileChannel fileChannel;
+	private RewindableInputStream inputStream;
 	private final ZipFileDataInfo fileDataCountingInfo = new ZipFileDataInfo();
 	private final byte[] tmpBuffer = new byte[IoUtils.STANDARD_BUFFER_SIZE];
 
@@ -55,7 +76,7 @@ public class ZipFileInput implements Closeable {
 	 * Read a Zip-file from a file. You must call {@link #close()} to close the stream when you are done.
 	 */
 	public ZipFileInput(File file) throws IOException {
-		this(FileUtils.getInputStream(file));
+		this(new FileInputStream(file));
 	}
 
 	/**
@@ -63,9 +84,95 @@ public class ZipFileInput implements Closeable {
 	 */
 	public ZipFileInput(InputStream inputStream) {
 		this.inputStream = new RewindableInputStream(inputStream, IoUtils.STANDARD_BUFFER_SIZE);
+		this.fileChannel = findSeekableChannel(inputStream);
 		readTillEof = true;
 	}
 
+	/**
+	 * Returns true if the Zip-file can be read from its central-directory. This is the case if it was opened from a
+	 * file or from a {@link FileInputStream} positioned at the start of its file.
+	 */
+	public boolean isSeekable() {
+		return fileChannel != null;
+	}
+
+	/**
+	 * Read all of the central-directory entries of a seekable Zip-file. Only the end of central-directory, which can be
+	 * a Zip64 one, and the central-directory itself are read, so this does not depend on the size of the file data.
+	 * This does not change the position of the file-header stream.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the input is not seekable. See {@link #isSeekable()}.
+	 */
+	public List<ZipCentralDirectoryFileEntry> readCentralDirectoryEntries() throws IOException {
+		requireSeekable();
+		long fileSize = fileChannel.size();
+		int tailSize = (int) Math.min(fileSize, DIRECTORY_END_SIZE + IoUtils.MAX_UNSIGNED_SHORT_VALUE);
+		byte[] tail = readAt(fileSize - tailSize, tailSize);
+		int endIndex = findDirectoryEnd(tail);
+		if (endIndex < 0) {
+			throw new IOException("Zip end of central-directory not found");
+		}
+		ZipCentralDirectoryEnd end = ZipCentralDirectoryEnd.read(toStream(tail, endIndex));
+		long directoryOffset = end.getDirectoryOffset() & IoUtils.MAX_UNSIGNED_INT_VALUE;
+		long directorySize = end.getDirectorySize() & IoUtils.MAX_UNSIGNED_INT_VALUE;
+		long numRecords = end.getNumRecordsTotal();
+		Zip64CentralDirectoryEndLocator locator = null;
+		if (endIndex >= ZIP64_LOCATOR_SIZE) {
+			locator = Zip64CentralDirectoryEndLocator.read(toStream(tail, endIndex - ZIP64_LOCATOR_SIZE));
+		}
+		if (locator != null) {
+			long zip64EndSize = (fileSize - tailSize + endIndex - ZIP64_LOCATOR_SIZE) - locator.getEndOffset();
+			if (zip64EndSize < Zip64CentralDirectoryEnd.FIXED_FIELDS_SIZE + 12 || zip64EndSize > Integer.MAX_VALUE) {
+				throw new IOException("Invalid zip64 end of central-directory offset: " + locator.getEndOffset());
+			}
+			Zip64CentralDirectoryEnd zip64End =
+					Zip64CentralDirectoryEnd.read(toStream(readAt(locator.getEndOffset(), (int) zip64EndSize), 0));
+			if (zip64End == null) {
+				throw new IOException("Zip64 end of central-directory not found at " + locator.getEndOffset());
+			}
+			directoryOffset = zip64End.getDirectoryOffset();
+			directorySize = zip64End.getDirectorySize();
+			numRecords = zip64End.getNumRecordsTotal();
+		}
+		if (directoryOffset + directorySize > fileSize || directorySize > Integer.MAX_VALUE) {
+			throw new IOException("Invalid central-directory offset " + directoryOffset + " and size " + directorySize);
+		}
+
+		RewindableInputStream directoryStream = toStream(readAt(directoryOffset, (int) directorySize), 0);
+		List<ZipCentralDirectoryFileEntry> entries = new ArrayList<>((int) Math.min(numRecords, 1 << 16));
+		while (directoryStream.getByteCount() < directorySize) {
+			ZipCentralDirectoryFileEntry entry = ZipCentralDirectoryFileEntry.read(directoryStream);
+			if (entry == null) {
+				break;
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Position a seekable Zip-file at the file-header of the central-directory entry and read it. The file data can
+	 * then be read like after {@link #readFileHeader()}. Any file data of the previous entry that was not read is
+	 * skipped without reading it.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the input is not seekable. See {@link #isSeekable()}.
+	 */
+	public ZipFileHeader readFileHeader(ZipCentralDirectoryFileEntry entry) throws IOException {
+		requireSeekable();
+		if (fileDataDecoder != null) {
+			fileDataDecoder.close();
+			fileDataDecoder = null;
+		}
+		currentFileEofReached = true;
+		fileChannel.position(getLocalHeaderOffset(entry));
+		inputStream = new RewindableInputStream(
+				new BufferedInputStream(Channels.newInputStream(fileChannel), IoUtils.STANDARD_BUFFER_SIZE),
+				IoUtils.STANDARD_BUFFER_SIZE);
+		return readFileHeader();
+	}
+
 	/**
 	 * Read the next file header from the zip file. This is first thing that you will call after opening the Zip file.
 	 */
@@ -380,6 +487,11 @@ public class ZipFileInput implements Closeable {
 	 * constructor is used.
 	 */
 	public void readToEndOfZip() throws IOException {
+		if (fileChannel != null) {
+			// nothing can follow a file, so there is no need to read the rest of it
+			fileChannel.position(fileChannel.size());
+			return;
+		}
 		while (true) {
 			int num = inputStream.read(tmpBuffer);
 			if (num < 0) {
@@ -454,6 +566,109 @@ public class ZipFileInput implements Closeable {
 		this.readTillEof = readTillEof;
 	}
 
+	private void requireSeekable() {
+		if (fileChannel == null) {
+			throw new IllegalStateException("Zip-file is read from a stream and is not seekable");
+		}
+	}
+
+	private byte[] readAt(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			int numRead = fileChannel.read(buffer, position + buffer.position());
+			if (numRead < 0) {
+				throw new EOFException("reached unexpected EOF while reading " + length + " bytes at " + position);
+			}
+		}
+		return buffer.array();
+	}
+
+	private static RewindableInputStream toStream(byte[] bytes, int offset) {
+		return new RewindableInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset),
+				IoUtils.STANDARD_BUFFER_SIZE);
+	}
+
+	/**
+	 * Find the end of central-directory in the tail of the file, preferring one whose comment reaches exactly to the
+	 * end of the file.
+	 */
+	private static int findDirectoryEnd(byte[] tail) {
+		int found = -1;
+		for (int i = tail.length - DIRECTORY_END_SIZE; i >= 0; i--) {
+			if (getInt(tail, i) != DIRECTORY_END_SIGNATURE) {
+				continue;
+			}
+			int commentLength = getShort(tail, i + DIRECTORY_END_SIZE - 2);
+			if (i + DIRECTORY_END_SIZE + commentLength == tail.length) {
+				return i;
+			}
+			if (found < 0) {
+				found = i;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Return the offset of the file-header of the entry, from its zip64 extra field if the 32-bit offset is
+	 * 0xFFFFFFFF. The fields of the extra field are only there if their 32-bit values are 0xFFFFFFFF.
+	 */
+	private static long getLocalHeaderOffset(ZipCentralDirectoryFileEntry entry) throws IOException {
+		long offset = entry.getRelativeOffsetOfLocalHeader() & IoUtils.MAX_UNSIGNED_INT_VALUE;
+		if (offset != IoUtils.MAX_UNSIGNED_INT_VALUE) {
+			return offset;
+		}
+		byte[] extra = entry.getExtraFieldBytes();
+		int index = 0;
+		while (extra != null && index + 4 <= extra.length) {
+			int id = getShort(extra, index);
+			int size = getShort(extra, index + 2);
+			index += 4;
+			if (id == ZIP64_EXTRA_FIELD_ID) {
+				int position = index;
+				if ((entry.getUncompressedSize() & IoUtils.MAX_UNSIGNED_INT_VALUE) == IoUtils.MAX_UNSIGNED_INT_VALUE) {
+					position += 8;
+				}
+				if ((entry.getCompressedSize() & IoUtils.MAX_UNSIGNED_INT_VALUE) == IoUtils.MAX_UNSIGNED_INT_VALUE) {
+					position += 8;
+				}
+				if (position + 8 <= index + size && position + 8 <= extra.length) {
+					return (getInt(extra, position) & IoUtils.MAX_UNSIGNED_INT_VALUE)
+							| ((long) getInt(extra, position + 4) << 32);
+				}
+				break;
+			}
+			index += size;
+		}
+		throw new IOException("Zip64 offset of the file-header not found for " + entry.getFileName());
+	}
+
+	private static int getShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8) | ((bytes[offset + 2] & 0xFF) << 16)
+				| ((bytes[offset + 3] & 0xFF) << 24);
+	}
+
+	/**
+	 * Return the channel of a file input-stream that is at the start of its file, or null if the stream can't be read
+	 * from its central-directory.
+	 */
+	private static FileChannel findSeekableChannel(InputStream inputStream) {
+		if (!(inputStream instanceof FileInputStream)) {
+			return null;
+		}
+		try {
+			FileChannel channel = ((FileInputStream) inputStream).getChannel();
+			return channel.position() == 0 && channel.size() > 0 ? channel : null;
+		} catch (IOException e) {
+			// pipes and sockets can't be positioned
+			return null;
+		}
+	}
+
 	private int doReadFileDataPart(byte[] buffer, int offset, int length, int compressionMethod) throws IOException {
 		if (currentFileEofReached) {
 			return -1;
@@ -39,14 +39,32 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class ApkBundle implements Closeable {
     private final Map<String, ApkModule> mModulesMap;
     private APKLogger apkLogger;
+    private int threadCount;
     public ApkBundle(){
         this.mModulesMap=new HashMap<>();
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Number of splits opened and decoded at the same time, 1 or less loads
+     * every split on the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
     }
     public void loadApkFiles(List<File> apkFiles, Context context) throws IOException, MismatchedSplitsException, InterruptedException {
         if (apkFiles == null || apkFiles.isEmpty()) {
@@ -56,9 +74,8 @@ public class ApkBundle implements Closeable {
         // 复用现有的加载逻辑
         for (File file : apkFiles) {
             LogUtil.logMessage("Loading: " + file.getName());
-            String name = ApkUtil.toModuleName(file);
-            ApkModule module = ApkModule.loadApkFile(file, name);
-            module.setAPKLogger(apkLogger);
+        }
+        for (ApkModule module : loadModules(apkFiles)) {
             addModule(module);
         }
 
@@ -82,7 +99,8 @@ public class ApkBundle implements Closeable {
         if(base == null){
             base = getLargestTableModule();
         }
-        result.merge(base, force);
+        // splits were decoded when loaded, the merged table is refreshed once at the end
+        result.merge(base, force, false);
         ApkSignatureBlock signatureBlock = null;
         for(ApkModule module:moduleList){
             ApkSignatureBlock asb = module.getApkSignatureBlock();
@@ -95,7 +113,7 @@ public class ApkBundle implements Closeable {
             if(signatureBlock == null){
                 signatureBlock = asb;
             }
-            result.merge(module, force);
+            result.merge(module, force, false);
         }
 
         result.setApkSignatureBlock(signatureBlock);
@@ -157,19 +175,41 @@ public class ApkBundle implements Closeable {
         logMessage("Found apk files: "+apkList.size());
         for(File file:apkList){
             logVerbose("Loading: "+file.getName());
-            String name = ApkUtil.toModuleName(file);
-            ApkModule module = ApkModule.loadApkFile(file, name);
-            module.setAPKLogger(apkLogger);
+        }
+        for(ApkModule module : loadModules(apkList)){
             addModule(module);
         }
     }
 
-    @SuppressLint("StringFormatInvalid")
     public void loadApkDirectory(File dir, boolean recursive, Context context) throws IOException, MismatchedSplitsException, InterruptedException {
         if(!dir.isDirectory()) throw new FileNotFoundException("No such directory: " + dir);
         List<File> apkList = recursive ? ApkUtil.recursiveFiles(dir, ".apk") : ApkUtil.listFiles(dir, ".apk");
         if(apkList.isEmpty()) throw new FileNotFoundException("No '*.apk' files in directory: " + dir);
         LogUtil.logMessage("Found apk files: "+apkList.size());
+        // 各分包只加载一次，版本检查与合并共用
+        List<File> loadedFiles = new ArrayList<>(apkList);
+        List<ApkModule> loadedModules = loadModules(loadedFiles);
+        try {
+            checkVersionCodes(dir, apkList, loadedModules, context);
+        } catch (MismatchedSplitsException | InterruptedException | RuntimeException e) {
+            closeModules(loadedModules);
+            throw e;
+        }
+        // 只保留仍被选中的分包，其余关闭
+        for(int i = 0; i < loadedFiles.size(); i++){
+            File file = loadedFiles.get(i);
+            ApkModule module = loadedModules.get(i);
+            if(apkList.contains(file)){
+                LogUtil.logMessage("Loading: "+file.getName());
+                addModule(module);
+            }else {
+                module.close();
+            }
+        }
+    }
+
+    @SuppressLint("StringFormatInvalid")
+    private void checkVersionCodes(File dir, List<File> apkList, List<ApkModule> modules, Context context) throws MismatchedSplitsException, InterruptedException {
         int size = apkList.size();
         int[] versionCodes = new int[size];
         int base = -1;
@@ -189,9 +229,7 @@ public class ApkBundle implements Closeable {
 //            } catch (Exception e) {
 //                versionCodes[i] = -1;
 //            }
-            String name = ApkUtil.toModuleName(file);
-            ApkModule module = ApkModule.loadApkFile(file, name);
-            versionCodes[i] = module.getVersionCode();
+            versionCodes[i] = modules.get(i).getVersionCode();
             if(DeviceSpecsUtil.isBaseApk(file.getName())) base = versionCodes[i];
         }
         if(base == -1) {
@@ -242,14 +280,100 @@ public class ApkBundle implements Closeable {
                     .show());
             latch.await();
         }
-        load(apkList);
-
     }
 
-    private void load(List<File> apkList) throws IOException {
-        for(File file : apkList) {
-            LogUtil.logMessage("Loading: "+file.getName());
-            addModule(ApkModule.loadApkFile(file, ApkUtil.toModuleName(file)));
+    /**
+     * Opens the splits concurrently and decodes their manifest and resource table ahead,
+     * so merging only links already decoded blocks. The result is in order of apkList.
+     */
+    private List<ApkModule> loadModules(List<File> apkList) throws IOException {
+        int size = apkList.size();
+        ApkModule[] modules = new ApkModule[size];
+        int threadCount = Math.max(1, Math.min(getThreadCount(), size));
+        if(threadCount == 1){
+            try {
+                for(int i = 0; i < size; i++){
+                    modules[i] = loadModule(apkList.get(i));
+                }
+            } catch (IOException | RuntimeException e) {
+                closeModules(Arrays.asList(modules));
+                throw e;
+            }
+            return new ArrayList<>(Arrays.asList(modules));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        boolean success = false;
+        try {
+            List<Future<?>> futures = new ArrayList<>(size);
+            for(int i = 0; i < size; i++){
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    modules[index] = loadModule(apkList.get(index));
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures){
+                await(future);
+            }
+            success = true;
+        } finally {
+            executor.shutdownNow();
+            if(!success){
+                awaitTermination(executor);
+                closeModules(Arrays.asList(modules));
+            }
+        }
+        return new ArrayList<>(Arrays.asList(modules));
+    }
+    private ApkModule loadModule(File file) throws IOException {
+        ApkModule module = ApkModule.loadApkFile(file, ApkUtil.toModuleName(file));
+        try {
+            module.setAPKLogger(apkLogger);
+            // Same as addModule, but before the table is decoded below
+            module.setLoadDefaultFramework(false);
+            module.getAndroidManifest();
+            if(module.hasTableBlock()){
+                module.getTableBlock();
+            }
+        } catch (RuntimeException e) {
+            module.close();
+            throw e;
+        }
+        return module;
+    }
+    private static void closeModules(List<ApkModule> modules) {
+        for(ApkModule module : modules){
+            if(module == null){
+                continue;
+            }
+            try {
+                module.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
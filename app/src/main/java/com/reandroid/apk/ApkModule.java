@@ -18,6 +18,7 @@ package com.reandroid.apk;
 import android.content.Context;
 import android.os.Build;
 
+import com.android.apksig.ApkSignerEngine;
 import com.reandroid.archive.*;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.archive.io.ArchiveFileEntrySource;
@@ -62,6 +63,7 @@ public class ApkModule implements ApkFile, Closeable {
     private APKLogger apkLogger;
     private ApkType mApkType;
     private ApkSignatureBlock apkSignatureBlock;
+    private CompressionPolicy compressionPolicy;
     private Integer preferredFramework;
     private Closeable mCloseable;
     private final List<TableBlock> mExternalFrameworks;
@@ -333,7 +335,7 @@ public class ApkModule implements ApkFile, Closeable {
                 // 加载框架文件
                 if (frameworkFile != null && frameworkFile.exists()) {
                     try {
-                        frameworkApk = FrameworkApk.loadTableBlock(frameworkFile);
+                        frameworkApk = FrameworkApk.loadCachedTableBlock(frameworkFile);
                         logMessage("Loaded framework from external storage: " + frameworkFile.getAbsolutePath());
                     } catch (IOException e) {
                         logMessage("Failed to load framework: " + e.getMessage());
@@ -585,6 +587,21 @@ public class ApkModule implements ApkFile, Closeable {
         applyDefaultApkWriterSetting(writer);
         return writer;
     }
+    /**
+     * Writes and signs in one pass, see {@link SignedApkFileWriter}
+     */
+    public void writeSignedApk(File file, ApkSignerEngine signerEngine, WriteProgress progress) throws IOException {
+        SignedApkFileWriter writer = createSignedApkFileWriter(file, signerEngine);
+        writer.setWriteProgress(progress);
+        writer.write();
+    }
+    public SignedApkFileWriter createSignedApkFileWriter(File file, ApkSignerEngine signerEngine) throws IOException {
+        updateUncompressedFiles();
+        SignedApkFileWriter writer = new SignedApkFileWriter(file,
+                getZipEntryMap().toArray(true), signerEngine);
+        applyDefaultApkWriterSetting(writer);
+        return writer;
+    }
     public ApkByteWriter createApkByteWriter() {
         updateUncompressedFiles();
         ApkByteWriter writer = new ApkByteWriter(getZipEntryMap().toArray(true));
@@ -603,6 +620,13 @@ public class ApkModule implements ApkFile, Closeable {
         writer.setApkSignatureBlock(getApkSignatureBlock());
         writer.setArchiveInfo(getZipEntryMap().getArchiveInfo());
         writer.setDataDescriptorFactory(DataDescriptorFactory.NO_ACTION);
+        writer.setCompressionPolicy(getCompressionPolicy());
+    }
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
     }
     public void uncompressNonXmlResFiles() {
         for(ResFile resFile:listResFiles()){
@@ -1242,13 +1266,20 @@ public class ApkModule implements ApkFile, Closeable {
         merge(module, false);
     }
     public void merge(ApkModule module, boolean force) throws IOException {
+        merge(module, force, true);
+    }
+    /**
+     * @param refreshTable false to skip refreshing the merged table, the caller has to
+     *                     refresh it after merging all modules
+     */
+    public void merge(ApkModule module, boolean force, boolean refreshTable) throws IOException {
         if(module == null || module == this){
             return;
         }
         logMessage("Merging: " + module.getModuleName());
         validateMerge(module, force);
         mergeDexFiles(module);
-        mergeTable(module);
+        mergeTable(module, refreshTable);
         mergeFiles(module);
         getUncompressedFiles().merge(module.getUncompressedFiles());
     }
@@ -1291,7 +1322,7 @@ public class ApkModule implements ApkFile, Closeable {
         }
         logMessage(msg);
     }
-    private void mergeTable(ApkModule module) {
+    private void mergeTable(ApkModule module, boolean refresh) {
         if(!module.hasTableBlock()){
             return;
         }
@@ -1304,7 +1335,7 @@ public class ApkModule implements ApkFile, Closeable {
             exist=getTableBlock();
         }
         TableBlock coming=module.getTableBlock();
-        exist.merge(coming);
+        exist.merge(coming, refresh);
     }
     private void mergeFiles(ApkModule module) {
         ZipEntryMap entryMapExist = getZipEntryMap();
@@ -23,7 +23,8 @@ import com.reandroid.archive.ZipEntryMap;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
-import com.reandroid.dex.model.DexDirectory;
+import com.reandroid.dex.model.DexFile;
+import com.reandroid.dex.model.MappedDexFile;
 import com.reandroid.dex.sections.Marker;
 import com.reandroid.identifiers.PackageIdentifier;
 import com.reandroid.identifiers.TableIdentifier;
@@ -32,8 +33,8 @@ import com.reandroid.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -82,12 +83,24 @@ public abstract class ApkModuleDecoder extends ApkModuleCoder{
         File file = new File(mainDirectory, "dex-info.json");
         logMessage("Decode: " + file.getName());
         ZipEntryMap zipEntryMap = apkModule.getZipEntryMap();
-        DexDirectory dexDirectory = DexDirectory.readStrings(zipEntryMap);
+        List<InputSource> dexSources = new ArrayList<>();
+        for(InputSource inputSource : zipEntryMap.toArray()){
+            String name = inputSource.getAlias();
+            if(name.startsWith("classes") && DexFile.getDexFileNumber(name) >= 0){
+                dexSources.add(inputSource);
+            }
+        }
+        dexSources.sort((source1, source2) -> Integer.compare(
+                DexFile.getDexFileNumber(source1.getAlias()),
+                DexFile.getDexFileNumber(source2.getAlias())));
         JSONObject jsonObject = new JSONObject();
         JSONArray jsonArray = new JSONArray();
-        Iterator<Marker> markers = dexDirectory.getMarkers();
-        while (markers.hasNext()){
-            jsonArray.put(markers.next().getJsonObject());
+        for(InputSource inputSource : dexSources){
+            try (MappedDexFile dexFile = MappedDexFile.read(inputSource)) {
+                for(Marker marker : dexFile.getMarkers()){
+                    jsonArray.put(marker.getJsonObject());
+                }
+            }
         }
         jsonObject.put("markers", jsonArray);
         jsonObject.write(file);
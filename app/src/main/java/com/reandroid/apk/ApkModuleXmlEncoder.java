@@ -21,22 +21,46 @@ import com.reandroid.archive.Archive;
 import com.reandroid.archive.FileInputSource;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.chunk.TypeBlock;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
+import com.reandroid.arsc.item.TableString;
+import com.reandroid.arsc.pool.TableStringPool;
 import com.reandroid.arsc.value.Entry;
 import com.reandroid.xml.source.XMLFileParserSource;
 import com.reandroid.xml.source.XMLParserSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ApkModuleXmlEncoder extends ApkModuleEncoder{
     private final XMLTableBlockEncoder tableBlockEncoder;
+    private int threadCount;
     public ApkModuleXmlEncoder(){
         this.tableBlockEncoder = new XMLTableBlockEncoder();
+        this.threadCount = Runtime.getRuntime().availableProcessors();
     }
     public ApkModuleXmlEncoder(ApkModule module, TableBlock tableBlock){
         this.tableBlockEncoder = new XMLTableBlockEncoder(module, tableBlock);
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
     }
 
     @Override
@@ -96,47 +120,129 @@ public class ApkModuleXmlEncoder extends ApkModuleEncoder{
         xmlEncodeSource.setSort(0);
         getApkModule().add(xmlEncodeSource);
     }
-    private void scanResFilesDirectory(File mainDirectory) {
+    private void scanResFilesDirectory(File mainDirectory) throws IOException {
         File resFilesDirectory = new File(mainDirectory, TableBlock.RES_FILES_DIRECTORY_NAME);
         if(!resFilesDirectory.isDirectory()){
             return;
         }
         logMessage("Searching files: " + resFilesDirectory.getName());
         List<File> fileList = ApkUtil.recursiveFiles(resFilesDirectory);
+        List<String> pathList = new ArrayList<>(fileList.size());
         for(File file : fileList){
-            encodeResFile(resFilesDirectory, file);
+            pathList.add(ApkUtil.toArchivePath(resFilesDirectory, file));
         }
+        Map<String, Entry> entryMap = mapResFileEntries(pathList);
+        List<XMLEncodeSource> xmlSourceList = new ArrayList<>();
+        int size = fileList.size();
+        for(int i = 0; i < size; i++){
+            File file = fileList.get(i);
+            String path = pathList.get(i);
+            logVerbose(path);
+            Entry entry = entryMap.get(path);
+            if(entry == null){
+                logMessage("Un registered file: " + file);
+                continue;
+            }
+            if(file.getName().endsWith(".xml")){
+                XMLParserSource xmlSource =
+                        new XMLFileParserSource(path, file);
+                XMLEncodeSource xmlEncodeSource =
+                        new XMLEncodeSource(entry.getPackageBlock(), xmlSource);
+                xmlEncodeSource.setApkLogger(getApkLogger());
+                xmlSourceList.add(xmlEncodeSource);
+                getApkModule().add(xmlEncodeSource);
+            }else {
+                FileInputSource inputSource = new FileInputSource(file, path);
+                getApkModule().add(inputSource);
+            }
+        }
+        encodeXmlFiles(xmlSourceList);
     }
-    private void encodeResFile(File resFilesDirectory, File file){
-        String path = ApkUtil.toArchivePath(resFilesDirectory, file);
-        logVerbose(path);
-        Entry entry = getEntry(path);
-        if(entry == null){
-            logMessage("Un registered file: " + file);
+    /**
+     * Same result as ApkModule.listReferencedEntries(path).get(0) for every path, but looked up
+     * in one pass over the table string pool
+     */
+    private Map<String, Entry> mapResFileEntries(List<String> pathList){
+        Map<String, Entry> results = new HashMap<>(pathList.size());
+        TableBlock tableBlock = getApkModule().getTableBlock();
+        if(tableBlock == null){
+            return results;
+        }
+        for(String path : pathList){
+            results.put(path, null);
+        }
+        TableStringPool stringPool = tableBlock.getStringPool();
+        stringPool.ensureStringLinkUnlockedInternal();
+        for(TableString tableString : stringPool){
+            String xml = tableString.getXml();
+            if(!results.containsKey(xml) || results.get(xml) != null){
+                continue;
+            }
+            Iterator<Entry> iterator = tableString.getEntries(entry -> entry.isScalar() &&
+                    TypeBlock.canHaveResourceFile(entry.getTypeName()));
+            if(iterator.hasNext()){
+                results.put(xml, iterator.next());
+            }
+        }
+        return results;
+    }
+    /**
+     * Encodes xml files ahead of the writer on a pool of threads. Documents share the table,
+     * so XMLEncodeSource parses them one at a time under the table lock and only the
+     * serialization runs in parallel. At most a few documents per thread are in flight, and
+     * once the encoded bytes exceed a limit the rest are left to be encoded on write.
+     */
+    private void encodeXmlFiles(List<XMLEncodeSource> xmlSourceList) throws IOException {
+        int size = xmlSourceList.size();
+        int threadCount = Math.min(getThreadCount(), size);
+        if(threadCount <= 1){
             return;
         }
-        if(file.getName().endsWith(".xml")){
-            XMLParserSource xmlSource =
-                    new XMLFileParserSource(path, file);
-            XMLEncodeSource xmlEncodeSource =
-                    new XMLEncodeSource(entry.getPackageBlock(), xmlSource);
-            xmlEncodeSource.setApkLogger(getApkLogger());
-            getApkModule().add(xmlEncodeSource);
-        }else {
-            FileInputSource inputSource = new FileInputSource(file, path);
-            getApkModule().add(inputSource);
+        logMessage("Encoding xml files: " + size);
+        int maxPendingCount = threadCount * PENDING_PER_THREAD;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>(maxPendingCount);
+            long encodedBytes = 0;
+            int index = 0;
+            while (index < size && encodedBytes < MAX_ENCODED_BYTES){
+                if(pending.size() >= maxPendingCount){
+                    encodedBytes += await(pending.poll()).length;
+                    continue;
+                }
+                XMLEncodeSource xmlEncodeSource = xmlSourceList.get(index);
+                pending.add(executor.submit(xmlEncodeSource::encodeBytes));
+                index ++;
+            }
+            while (!pending.isEmpty()){
+                await(pending.poll());
+            }
+            if(index < size){
+                logMessage("Encoding on write: " + (size - index));
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
-    private Entry getEntry(String path){
-        List<Entry> entryList = getApkModule().listReferencedEntries(path);
-        if(entryList.size() > 0){
-            return entryList.get(0);
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
         }
-        return null;
     }
     @Override
     public void setApkLogger(APKLogger apkLogger) {
         super.setApkLogger(apkLogger);
         this.tableBlockEncoder.setApkLogger(apkLogger);
     }
+
+    private static final int PENDING_PER_THREAD = 4;
+    private static final long MAX_ENCODED_BYTES = 32L * 1024 * 1024;
 }
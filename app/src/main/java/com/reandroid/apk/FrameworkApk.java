@@ -27,6 +27,9 @@ import com.reandroid.arsc.value.ValueType;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 /*
@@ -230,6 +233,28 @@ public class FrameworkApk extends ApkModule{
     public static FrameworkApk loadTableBlock(File apkFile) throws IOException {
         return loadApkFile(apkFile, false);
     }
+    /**
+     * Same as loadTableBlock(File), but reuses the framework loaded earlier from the same
+     * unchanged file, so the table and its attribute index are only built once per process.
+     * The returned framework is shared and must not be modified or destroyed by callers
+     */
+    public static FrameworkApk loadCachedTableBlock(File apkFile) throws IOException {
+        String key = apkFile.getAbsolutePath();
+        long length = apkFile.length();
+        long lastModified = apkFile.lastModified();
+        synchronized (CACHED_FRAMEWORKS){
+            CachedFramework cached = CACHED_FRAMEWORKS.get(key);
+            if(cached != null && cached.length == length && cached.lastModified == lastModified){
+                FrameworkApk frameworkApk = cached.get();
+                if(frameworkApk != null && !frameworkApk.isDestroyed()){
+                    return frameworkApk;
+                }
+            }
+            FrameworkApk frameworkApk = loadTableBlock(apkFile);
+            CACHED_FRAMEWORKS.put(key, new CachedFramework(frameworkApk, length, lastModified));
+            return frameworkApk;
+        }
+    }
     private static FrameworkApk loadApkFile(File apkFile, boolean addManifest) throws IOException {
         ArchiveFile archive = new ArchiveFile(apkFile);
         InputSource table = archive.getEntrySource(TableBlock.FILE_NAME);
@@ -282,4 +307,16 @@ public class FrameworkApk extends ApkModule{
         frameworkApk.optimize();
         frameworkApk.writeApk(out);
     }
+
+    static class CachedFramework extends SoftReference<FrameworkApk> {
+        final long length;
+        final long lastModified;
+        CachedFramework(FrameworkApk frameworkApk, long length, long lastModified){
+            super(frameworkApk);
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final Map<String, CachedFramework> CACHED_FRAMEWORKS = new HashMap<>();
 }
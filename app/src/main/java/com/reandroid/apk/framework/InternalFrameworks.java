@@ -21,6 +21,7 @@ import com.reandroid.apk.FrameworkApk;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +30,7 @@ public class InternalFrameworks extends FrameworkManager{
     public static final InternalFrameworks INSTANCE = new InternalFrameworks();
 
     private Map<Integer, String> resourcePaths;
+    private final Map<Integer, SoftReference<FrameworkApk>> mLoaded = new HashMap<>();
 
     private InternalFrameworks(){
         super();
@@ -131,12 +133,19 @@ public class InternalFrameworks extends FrameworkManager{
         }
     }
     private FrameworkApk loadResource(int version) throws IOException {
+        SoftReference<FrameworkApk> reference = mLoaded.get(version);
+        FrameworkApk frameworkApk = reference != null ? reference.get() : null;
+        if(frameworkApk != null && !frameworkApk.isDestroyed()){
+            return frameworkApk;
+        }
         String path = getResourcePaths().get(version);
         if(path == null){
             throw new IOException("No resource found for version: " + version);
         }
         String simpleName = toSimpleName(path);
-        return FrameworkApk.loadApkBuffer(simpleName, AndroidFrameworks.class.getResourceAsStream(path));
+        frameworkApk = FrameworkApk.loadApkBuffer(simpleName, AndroidFrameworks.class.getResourceAsStream(path));
+        mLoaded.put(version, new SoftReference<>(frameworkApk));
+        return frameworkApk;
     }
     private Map<Integer, String> scanAvailableResourcePaths(){
         Map<Integer, String> results = new HashMap<>();
@@ -5,6 +5,7 @@ import android.os.Build;
 import com.reandroid.apk.APKLogger;
 import com.reandroid.archive.ByteInputSource;
 import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.chunk.xml.ResXmlDocument;
 import com.reandroid.utils.CRCDigest;
 import com.reandroid.utils.io.IOUtil;
@@ -54,11 +55,18 @@ public class XMLEncodeSource extends ByteInputSource {
             throw new IllegalArgumentException(ex);
         }
     }
+    /**
+     * Encodes now instead of on first read, so that documents can be encoded ahead of the
+     * writer from worker threads
+     */
+    public byte[] encodeBytes() throws IOException {
+        return getArray();
+    }
     @Override
-    public void disposeInputSource(){
+    public synchronized void disposeInputSource(){
         array = DISPOSED;
     }
-    private byte[] getArray() throws IOException{
+    private synchronized byte[] getArray() throws IOException{
         if(array != null){
             return array;
         }
@@ -76,10 +84,25 @@ public class XMLEncodeSource extends ByteInputSource {
         XmlPullParser parser = parserSource.getParser();
         ResXmlDocument resXmlDocument = new ResXmlDocument();
         resXmlDocument.setPackageBlock(this.packageBlock);
-        resXmlDocument.parse(parser);
+        // Parsing resolves names against the table, whose lookups link lazily; only
+        // serializing the parsed document is independent of other sources
+        synchronized (getTableLock()){
+            resXmlDocument.parse(parser);
+        }
         IOUtil.close(parser);
         return resXmlDocument;
     }
+    private Object getTableLock(){
+        PackageBlock packageBlock = this.packageBlock;
+        if(packageBlock == null){
+            return this;
+        }
+        TableBlock tableBlock = packageBlock.getTableBlock();
+        if(tableBlock != null){
+            return tableBlock;
+        }
+        return packageBlock;
+    }
     public void setApkLogger(APKLogger logger){
         this.mLogger = logger;
     }
@@ -10,9 +10,10 @@ import android.text.TextUtils;
 import com.abdurazaaqmohammed.AntiSplit.main.DeviceSpecsUtil;
 import com.abdurazaaqmohammed.AntiSplit.main.MismatchedSplitsException;
 import com.abdurazaaqmohammed.AntiSplit.main.SignUtil;
+import com.android.apksig.DefaultApkSignerEngine;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.j256.simplezip.ZipFileInput;
-import com.j256.simplezip.format.ZipFileHeader;
+import com.j256.simplezip.format.ZipCentralDirectoryFileEntry;
 import com.reandroid.apk.ApkBundle;
 import com.reandroid.apk.ApkModule;
 import com.reandroid.apkeditor.common.AndroidManifestHelper;
@@ -20,6 +21,7 @@ import com.reandroid.app.AndroidManifest;
 import com.reandroid.archive.ArchiveFile;
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.ZipEntryMap;
+import com.reandroid.archive.writer.CompressionPolicy;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
 import com.reandroid.arsc.chunk.xml.ResXmlAttribute;
@@ -54,17 +56,17 @@ public class Merger {
         boolean checkSplits = splits != null && !splits.isEmpty();
         File inputFile = new File(inputPath);
 
-        try (InputStream is = FileUtils.getInputStream(inputFile);
-             ZipFileInput zis = new ZipFileInput(is)) {
-            ZipFileHeader header;
-            while ((header = zis.readFileHeader()) != null) {
-                String name = header.getFileName();
+        try (ZipFileInput zis = new ZipFileInput(inputFile)) {
+            // Splits are found in the central directory and only the selected ones are read
+            for (ZipCentralDirectoryFileEntry entry : zis.readCentralDirectoryEntries()) {
+                String name = entry.getFileName();
                 if (name.endsWith(".apk")) {
                     if ((checkSplits && splits.contains(name))) {
                         logMessage(MainActivity.instance.getString(R.string.skipping) + name + MainActivity.instance.getString(R.string.unselected));
                     } else {
                         File file = new File(cacheDir, name);
                         if (file.getCanonicalPath().startsWith(cacheDir.getCanonicalPath() + File.separator)) {
+                            zis.readFileHeader(entry);
                             zis.readFileDataToFile(file);
                             logMessage("Extracted " + name);
                         } else {
@@ -104,10 +106,15 @@ public class Merger {
         }
     }
 
+    private static int getMinSdkVersion(ApkModule module) {
+        AndroidManifestBlock manifest = module.getAndroidManifest();
+        Integer minSdkVersion = manifest != null ? manifest.getMinSdkVersion() : null;
+        return minSdkVersion != null ? minSdkVersion : 1;
+    }
+
     public static void run(ApkBundle bundle, File cacheDir, String outputPath, Context context, boolean signApk)
             throws IOException, InterruptedException {
         logMessage("Found modules: " + bundle.getApkModuleList().size());
-        final boolean[] saveToCacheDir = {false};
         final boolean[] sign = {signApk};
 
         // 检查pairipcore.so的逻辑保持不变
@@ -128,7 +135,6 @@ public class Merger {
                             .setTitle(context.getString(R.string.warning))
                             .setMessage(R.string.pairip_warning)
                             .setPositiveButton("OK", (dialog, which) -> {
-                                saveToCacheDir[0] = true;
                                 sign[0] = false;
                                 latch.countDown();
                             })
@@ -204,21 +210,18 @@ public class Merger {
             logMessage(MainActivity.instance.getString(R.string.saving));
 
             File outputFile = new File(outputPath);
+            // 已压缩的媒体文件直接存储，其余文件使用最快压缩级别
+            mergedModule.setCompressionPolicy(CompressionPolicy.fastStoreMedia());
             if (sign[0]) {
-
-                File temp = new File(cacheDir, "temp.apk");
-                mergedModule.writeApk(temp);
                 logMessage(MainActivity.instance.getString(R.string.signing));
-
-                try {
-                    SignUtil.signDebugKey(context, temp, outputFile);
+                // 边写边签名，只生成最终的APK
+                try (DefaultApkSignerEngine signerEngine = SignUtil.createDebugKeySignerEngine(context, getMinSdkVersion(mergedModule))) {
+                    mergedModule.writeSignedApk(outputFile, signerEngine, null);
                 } catch (Exception e) {
+                    File temp = new File(cacheDir, "temp.apk");
+                    mergedModule.writeApk(temp);
                     SignUtil.signPseudoApkSigner(temp, context, outputFile, e);
                 }
-            } else if (saveToCacheDir[0]) {
-                File poopyip = new File(cacheDir, "poopyip.apk");
-                mergedModule.writeApk(poopyip);
-                FileUtils.copyFile(poopyip, outputFile);
             } else {
                 mergedModule.writeApk(outputFile);
             }
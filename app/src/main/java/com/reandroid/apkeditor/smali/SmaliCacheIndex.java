@@ -0,0 +1,256 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import com.reandroid.utils.StringsUtil;
+import com.reandroid.utils.io.FileIterator;
+import com.reandroid.utils.io.IOUtil;
+import org.jf.dexlib2.extra.DexMarker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content hash of every smali file of a classesN directory, saved next to the cached dex.
+ * Unlike timestamps, the hashes survive re-extracting the same sources, and each entry
+ * remembers the class type it compiled to so that only changed classes need a rebuild.
+ */
+class SmaliCacheIndex {
+
+    private final File classesDir;
+    private final String header;
+    private final Map<String, Entry> entries;
+
+    private SmaliCacheIndex(File classesDir, String header){
+        this.classesDir = classesDir;
+        this.header = header;
+        this.entries = new LinkedHashMap<>();
+    }
+
+    public String getPath(File file){
+        String root = classesDir.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if(path.startsWith(root)){
+            path = path.substring(root.length());
+        }
+        path = path.replace(File.separatorChar, '/');
+        while (path.startsWith("/")){
+            path = path.substring(1);
+        }
+        return path;
+    }
+    public void setType(File file, String type){
+        Entry entry = entries.get(getPath(file));
+        if(entry != null){
+            entry.type = type;
+        }
+    }
+    /**
+     * @return true if every file, including the markers file, has the same content as when
+     * the cached dex was built
+     */
+    public boolean isSameContent(SmaliCacheIndex cached){
+        if(cached == null || !header.equals(cached.header)){
+            return false;
+        }
+        if(entries.size() != cached.entries.size()){
+            return false;
+        }
+        for(Map.Entry<String, Entry> mapEntry : entries.entrySet()){
+            Entry entry = cached.entries.get(mapEntry.getKey());
+            if(entry == null || !entry.hash.equals(mapEntry.getValue().hash)){
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * @return true if the cached dex can be updated class by class: same build settings,
+     * same markers and the compiled type of every cached smali file is known
+     */
+    public boolean canUpdate(SmaliCacheIndex cached){
+        if(cached == null || !header.equals(cached.header)){
+            return false;
+        }
+        Entry marker = entries.get(DexMarker.FILE_NAME);
+        Entry cachedMarker = cached.entries.get(DexMarker.FILE_NAME);
+        if(marker == null || cachedMarker == null){
+            if(marker != cachedMarker){
+                return false;
+            }
+        }else if(!marker.hash.equals(cachedMarker.hash)){
+            return false;
+        }
+        for(Map.Entry<String, Entry> mapEntry : cached.entries.entrySet()){
+            if(!DexMarker.FILE_NAME.equals(mapEntry.getKey()) && mapEntry.getValue().type == null){
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Copies compiled types of unchanged files from the cached index.
+     *
+     * @return smali files that are new or whose content changed
+     */
+    public List<File> listChangedFiles(SmaliCacheIndex cached){
+        List<File> results = new ArrayList<>();
+        for(Map.Entry<String, Entry> mapEntry : entries.entrySet()){
+            String path = mapEntry.getKey();
+            if(DexMarker.FILE_NAME.equals(path)){
+                continue;
+            }
+            Entry entry = mapEntry.getValue();
+            Entry cachedEntry = cached.entries.get(path);
+            if(cachedEntry != null && cachedEntry.hash.equals(entry.hash)){
+                entry.type = cachedEntry.type;
+            }else {
+                results.add(new File(classesDir, path.replace('/', File.separatorChar)));
+            }
+        }
+        return results;
+    }
+    /**
+     * @return types compiled from files that were removed or changed since the cached build
+     */
+    public Set<String> listStaleTypes(SmaliCacheIndex cached){
+        Set<String> results = new HashSet<>();
+        for(Map.Entry<String, Entry> mapEntry : cached.entries.entrySet()){
+            Entry cachedEntry = mapEntry.getValue();
+            if(cachedEntry.type == null){
+                continue;
+            }
+            Entry entry = entries.get(mapEntry.getKey());
+            if(entry == null || !entry.hash.equals(cachedEntry.hash)){
+                results.add(cachedEntry.type);
+            }
+        }
+        return results;
+    }
+    public void save(File file) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(header);
+        for(Map.Entry<String, Entry> mapEntry : entries.entrySet()){
+            Entry entry = mapEntry.getValue();
+            builder.append('\n');
+            builder.append(entry.hash);
+            builder.append('\t');
+            if(entry.type != null){
+                builder.append(entry.type);
+            }
+            builder.append('\t');
+            builder.append(mapEntry.getKey());
+        }
+        IOUtil.writeUtf8(builder.toString(), file);
+    }
+
+    public static SmaliCacheIndex scan(File classesDir, String header) throws IOException {
+        SmaliCacheIndex index = new SmaliCacheIndex(classesDir, header);
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        FileIterator iterator = new FileIterator(classesDir,
+                FileIterator.getExtensionFilter(".smali"));
+        while (iterator.hasNext()){
+            File file = iterator.next();
+            index.entries.put(index.getPath(file), new Entry(hash(digest, buffer, file)));
+        }
+        File marker = new File(classesDir, DexMarker.FILE_NAME);
+        if(marker.isFile()){
+            index.entries.put(DexMarker.FILE_NAME, new Entry(hash(digest, buffer, marker)));
+        }
+        return index;
+    }
+    public static SmaliCacheIndex load(File classesDir, File file, String header){
+        if(!file.isFile()){
+            return null;
+        }
+        String[] lines;
+        try {
+            lines = StringsUtil.split(IOUtil.readUtf8(file), '\n');
+        } catch (IOException ignored) {
+            return null;
+        }
+        if(lines.length == 0 || !header.equals(lines[0])){
+            return null;
+        }
+        SmaliCacheIndex index = new SmaliCacheIndex(classesDir, header);
+        for(int i = 1; i < lines.length; i++){
+            String line = lines[i];
+            int i1 = line.indexOf('\t');
+            int i2 = i1 < 0 ? -1 : line.indexOf('\t', i1 + 1);
+            if(i2 < 0){
+                return null;
+            }
+            Entry entry = new Entry(line.substring(0, i1));
+            if(i2 > i1 + 1){
+                entry.type = line.substring(i1 + 1, i2);
+            }
+            index.entries.put(line.substring(i2 + 1), entry);
+        }
+        return index;
+    }
+    public static File toIndexFile(File dexCacheFile){
+        return new File(dexCacheFile.getParentFile(), dexCacheFile.getName() + EXT_INDEX);
+    }
+    private static String hash(MessageDigest digest, byte[] buffer, File file) throws IOException {
+        digest.reset();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) > 0){
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static class Entry {
+        final String hash;
+        String type;
+
+        Entry(String hash){
+            this.hash = hash;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String EXT_INDEX = ".index";
+}
@@ -24,10 +24,12 @@ import com.reandroid.apkeditor.APKEditor;
 import com.reandroid.archive.FileInputSource;
 import com.reandroid.archive.InputSource;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
+import com.reandroid.dex.model.DexClass;
 import com.reandroid.dex.model.DexFile;
 import com.reandroid.dex.sections.Marker;
 import com.reandroid.dex.sections.SectionType;
 import com.reandroid.dex.smali.SmaliReader;
+import com.reandroid.dex.smali.model.SmaliClass;
 import com.reandroid.utils.StringsUtil;
 import com.reandroid.utils.io.FileIterator;
 import com.reandroid.utils.io.IOUtil;
@@ -37,16 +39,33 @@ import org.jf.smali.SmaliOptions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class SmaliCompiler implements DexEncoder {
     private APKLogger apkLogger;
     private final boolean noCache;
     private Integer minSdkVersion;
+    private int jobs;
+    private ExecutorService parseExecutor;
     public SmaliCompiler(boolean noCache){
         this.noCache = noCache;
+        this.jobs = Runtime.getRuntime().availableProcessors();
+    }
+    public int getJobs() {
+        return jobs;
+    }
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
     }
     @Override
     public List<InputSource> buildDexFiles(ApkModuleEncoder apkModuleEncoder, File mainDir) throws IOException {
@@ -63,8 +82,11 @@ public class SmaliCompiler implements DexEncoder {
         }
         List<InputSource> results = new ArrayList<>();
         List<File> classesDirList = listClassesDirectories(smaliDir);
-        int i = 0;
         int size = classesDirList.size();
+        if(getJobs() > 1){
+            return buildParallel(classesDirList);
+        }
+        int i = 0;
         for(File classesDir : classesDirList){
             i++;
             String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
@@ -73,21 +95,82 @@ public class SmaliCompiler implements DexEncoder {
         }
         return results;
     }
+    private List<InputSource> buildParallel(List<File> classesDirList) throws IOException {
+        int size = classesDirList.size();
+        int jobs = getJobs();
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(jobs);
+        // Each classesN build only waits for parse tasks, which never wait for anything,
+        // so the two pools can not deadlock each other.
+        ExecutorService dirExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, size)));
+        this.parseExecutor = parseExecutor;
+        try {
+            List<Future<InputSource>> futures = new ArrayList<>(size);
+            int i = 0;
+            for(File classesDir : classesDirList){
+                i++;
+                String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
+                futures.add(dirExecutor.submit(() -> build(progress, classesDir)));
+            }
+            List<InputSource> results = new ArrayList<>(size);
+            for(Future<InputSource> future : futures){
+                results.add(await(future, null));
+            }
+            return results;
+        } finally {
+            this.parseExecutor = null;
+            dirExecutor.shutdownNow();
+            parseExecutor.shutdownNow();
+        }
+    }
     private InputSource build(String progress, File classesDir) throws IOException {
         File dexCacheFile = toDexCache(classesDir);
-        if(isModified(classesDir, dexCacheFile)){
-            return build(progress, classesDir, dexCacheFile);
-        }else {
+        File indexFile = SmaliCacheIndex.toIndexFile(dexCacheFile);
+        String header = getCacheHeader();
+        SmaliCacheIndex index = SmaliCacheIndex.scan(classesDir, header);
+        SmaliCacheIndex cached = null;
+        if(!noCache && dexCacheFile.isFile()){
+            cached = SmaliCacheIndex.load(classesDir, indexFile, header);
+        }
+        if(index.isSameContent(cached)){
             logMessage(progress + "Cached: " + dexCacheFile.getName());
             return new FileInputSource(dexCacheFile, dexCacheFile.getName());
         }
+        // The index is only valid together with the dex it describes
+        indexFile.delete();
+        InputSource inputSource;
+        if(APKEditor.isExperimental() && index.canUpdate(cached)) {
+            inputSource = buildIncremental(progress, dexCacheFile, index, cached);
+        }else {
+            inputSource = build(progress, classesDir, dexCacheFile, index);
+        }
+        index.save(indexFile);
+        return inputSource;
     }
-    private InputSource build(String progress, File classesDir, File dexCacheFile) throws IOException {
+    private InputSource build(String progress, File classesDir, File dexCacheFile, SmaliCacheIndex index) throws IOException {
         if(APKEditor.isExperimental()) {
-            return buildExperimental(progress, classesDir, dexCacheFile);
+            return buildExperimental(progress, classesDir, dexCacheFile, index);
         }
         return buildJesusFreke(progress, classesDir, dexCacheFile);
     }
+    /**
+     * Reuses the classes of the previous build from the cached dex, drops the classes of
+     * changed or removed smali files and compiles only new and changed files.
+     */
+    private InputSource buildIncremental(String progress, File dexCacheFile, SmaliCacheIndex index,
+                                         SmaliCacheIndex cached) throws IOException {
+        List<File> changedFiles = index.listChangedFiles(cached);
+        Set<String> staleTypes = index.listStaleTypes(cached);
+        logMessage(progress + "Smali: " + dexCacheFile.getName() + ", changed = "
+                + changedFiles.size() + ", removed = " + staleTypes.size());
+        DexFile dexFile = DexFile.read(dexCacheFile);
+        if(!staleTypes.isEmpty()){
+            dexFile.removeClasses(dexClass -> staleTypes.contains(dexClass.getKey().getTypeName()));
+        }
+        parseSmaliFiles(dexFile, changedFiles.iterator(), index);
+        dexFile.refresh();
+        writeDexFile(dexFile, dexCacheFile);
+        return new FileInputSource(dexCacheFile, dexCacheFile.getName());
+    }
     private InputSource buildJesusFreke(String progress, File classesDir, File dexCacheFile) throws IOException {
         logMessage(progress + "Smali: " + dexCacheFile.getName());
         SmaliOptions smaliOptions = new SmaliOptions();
@@ -112,22 +195,35 @@ public class SmaliCompiler implements DexEncoder {
         }
         return new FileInputSource(dexCacheFile, dexCacheFile.getName());
     }
-    private InputSource buildExperimental(String progress, File classesDir, File dexCacheFile) throws IOException {
+    private InputSource buildExperimental(String progress, File classesDir, File dexCacheFile,
+                                          SmaliCacheIndex index) throws IOException {
         logMessage(progress + "Smali: " + dexCacheFile.getName());
         DexFile dexFile = DexFile.createDefault();
         FileIterator fileIterator = new FileIterator(classesDir,
                 FileIterator.getExtensionFilter(".smali"));
+        parseSmaliFiles(dexFile, fileIterator, index);
+        dexFile.refresh();
+        readMarkers(dexFile, classesDir);
+        writeDexFile(dexFile, dexCacheFile);
+        return new FileInputSource(dexCacheFile, dexCacheFile.getName());
+    }
+    private void parseSmaliFiles(DexFile dexFile, Iterator<File> fileIterator, SmaliCacheIndex index) throws IOException {
+        ExecutorService parseExecutor = this.parseExecutor;
+        if(parseExecutor != null) {
+            parseParallel(dexFile, fileIterator, index, parseExecutor);
+        }
         while (fileIterator.hasNext()) {
             File file = fileIterator.next();
             try {
-                dexFile.fromSmali(SmaliReader.of(file));
+                DexClass dexClass = dexFile.fromSmali(SmaliReader.of(file));
+                index.setType(file, dexClass.getKey().getTypeName());
             } catch (Exception e) {
                 if (Build.VERSION.SDK_INT > 9) throw new IOException("Error at: " + file, e);
                 else throw new RuntimeException("Error at: " + file, e);
             }
         }
-        dexFile.refresh();
-        readMarkers(dexFile, classesDir);
+    }
+    private void writeDexFile(DexFile dexFile, File dexCacheFile) throws IOException {
         int version = 0;
         if (this.minSdkVersion != null) {
             version = minSdkVersion;
@@ -140,7 +236,60 @@ public class SmaliCompiler implements DexEncoder {
         dexFile.refreshFull();
         dexFile.write(dexCacheFile);
         dexFile.close();
-        return new FileInputSource(dexCacheFile, dexCacheFile.getName());
+    }
+    /**
+     * Lexes and parses smali files on the given executor while classes are added to the
+     * dex file in the same order as the serial build, so the output is byte for byte identical.
+     * At most {@link #PARSE_WINDOW_PER_JOB} parsed classes per job are kept waiting in memory.
+     */
+    private void parseParallel(DexFile dexFile, Iterator<File> fileIterator, SmaliCacheIndex index,
+                               ExecutorService executor) throws IOException {
+        int window = Math.max(1, getJobs()) * PARSE_WINDOW_PER_JOB;
+        ArrayDeque<File> pendingFiles = new ArrayDeque<>(window);
+        ArrayDeque<Future<SmaliClass>> pending = new ArrayDeque<>(window);
+        try {
+            while (fileIterator.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < window && fileIterator.hasNext()) {
+                    File file = fileIterator.next();
+                    pendingFiles.add(file);
+                    pending.add(executor.submit(() -> parseSmaliClass(file)));
+                }
+                File file = pendingFiles.poll();
+                SmaliClass smaliClass = await(pending.poll(), file);
+                try {
+                    dexFile.fromSmali(smaliClass);
+                    index.setType(file, smaliClass.getKey().getTypeName());
+                } catch (Exception e) {
+                    throw new IOException("Error at: " + file, e);
+                }
+            }
+        } finally {
+            for (Future<SmaliClass> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+    private static SmaliClass parseSmaliClass(File file) throws IOException {
+        SmaliClass smaliClass = new SmaliClass();
+        smaliClass.parse(SmaliReader.of(file));
+        return smaliClass;
+    }
+    private static <T> T await(Future<T> future, File file) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new InterruptedIOException("Interrupted at: " + file);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (file != null) {
+                throw new IOException("Error at: " + file, cause);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
     private void readMarkers(DexFile dexFile, File classesDir) throws IOException {
         File markersFile = new File(classesDir, DexMarker.FILE_NAME);
@@ -156,30 +305,8 @@ public class SmaliCompiler implements DexEncoder {
         }
     }
 
-    private boolean isModified(File classesDir, File dexCacheFile){
-        if(noCache || !dexCacheFile.isFile()){
-            return true;
-        }
-        long dexMod = dexCacheFile.lastModified();
-        return isModified(classesDir, dexMod);
-    }
-    private boolean isModified(File dir, long dexMod){
-        if(dir.lastModified() > dexMod){
-            return true;
-        }
-        if(!dir.isDirectory()){
-            return false;
-        }
-        File[] files = dir.listFiles();
-        if(files == null){
-            return false;
-        }
-        for(File file : files){
-            if(isModified(file, dexMod)){
-                return true;
-            }
-        }
-        return false;
+    private String getCacheHeader(){
+        return "smali-cache:1 api=" + minSdkVersion + " experimental=" + APKEditor.isExperimental();
     }
     private File toDexCache(File classesDir){
         File mainDir = classesDir.getParentFile().getParentFile();
@@ -215,6 +342,8 @@ public class SmaliCompiler implements DexEncoder {
         }
     }
 
+    private static final int PARSE_WINDOW_PER_JOB = 64;
+
     public static int apiToDexVersion(int api) {
         if (api <= 23) {
             return 35;
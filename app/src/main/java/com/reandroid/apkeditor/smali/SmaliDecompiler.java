@@ -174,7 +174,7 @@ public class SmaliDecompiler implements DexDecoder {
         // 添加参数寄存器选项
         options.parameterRegisters = true;
 
-        int jobs = 1; // 使用单线程
+        int jobs = Runtime.getRuntime().availableProcessors();
 
         // 详细日志
         logMessage("Disassembling with options:");
@@ -0,0 +1,321 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive;
+
+import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Extracts entries of an archive file driven by its central directory. Entries are copied or
+ * inflated concurrently, every worker reading the archive through positional reads of one shared
+ * channel. Progress is reported from the calling thread while it waits for the workers.
+ */
+public class ParallelArchiveExtractor {
+    private final ArchiveFile archiveFile;
+    private int threadCount;
+    private ProgressListener progressListener;
+
+    public ParallelArchiveExtractor(ArchiveFile archiveFile){
+        this.archiveFile = archiveFile;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Extracts every file under the directory prefix (e.g. "assets/Content/") into dir,
+     * with paths relative to the prefix.
+     *
+     * @return number of extracted files
+     */
+    public int extractDirectory(String prefix, File dir) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        Set<File> directories = new LinkedHashSet<>();
+        File root = dir.getCanonicalFile();
+        long totalBytes = 0;
+        Iterator<ArchiveEntry> iterator = archiveFile.iterator();
+        while (iterator.hasNext()){
+            ArchiveEntry archiveEntry = iterator.next();
+            String name = archiveEntry.getName();
+            if(!name.startsWith(prefix) || name.length() == prefix.length()){
+                continue;
+            }
+            String path = name.substring(prefix.length());
+            if(!isSafePath(path)){
+                throw new IOException("Entry is outside of target directory: " + name);
+            }
+            File file = new File(root, path.replace('/', File.separatorChar));
+            if(archiveEntry.isDirectory()){
+                directories.add(file);
+                continue;
+            }
+            File parent = file.getParentFile();
+            if(parent != null){
+                directories.add(parent);
+            }
+            tasks.add(new Task(archiveEntry, file));
+            totalBytes += archiveEntry.getSize();
+        }
+        for(File directory : directories){
+            if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+                throw new IOException("Failed to create directory: " + directory);
+            }
+        }
+        // Largest first, so that one big entry does not run alone at the end
+        tasks.sort((task1, task2) -> Long.compare(
+                task2.archiveEntry.getDataSize(), task1.archiveEntry.getDataSize()));
+        extract(tasks, totalBytes);
+        return tasks.size();
+    }
+
+    /**
+     * Paths are checked by their segments instead of resolving the canonical path of every
+     * entry, the target directory itself is resolved once.
+     */
+    private static boolean isSafePath(String path){
+        if(path.startsWith("/")){
+            return false;
+        }
+        int start = 0;
+        while (start <= path.length()){
+            int end = path.indexOf('/', start);
+            if(end < 0){
+                end = path.length();
+            }
+            if(end - start == 2 && path.startsWith("..", start)){
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private void extract(List<Task> tasks, long totalBytes) throws IOException {
+        File file = archiveFile.getZipInput().getFile();
+        FileChannel input = LegacyUtils.supportsFileChannel ?
+                FileChannel.open(file.toPath(), StandardOpenOption.READ) :
+                new RandomAccessFile(file, "r").getChannel();
+        Progress progress = new Progress(progressListener, totalBytes);
+        int threadCount = Math.max(1, Math.min(getThreadCount(), tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for(Task task : tasks){
+                futures.add(executor.submit(() -> {
+                    task.run(input, progress);
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures){
+                while (!await(future)){
+                    progress.report();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            input.close();
+        }
+        progress.finish();
+    }
+    private static boolean await(Future<?> future) throws IOException {
+        try {
+            future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static class Task {
+        final ArchiveEntry archiveEntry;
+        final File file;
+
+        Task(ArchiveEntry archiveEntry, File file){
+            this.archiveEntry = archiveEntry;
+            this.file = file;
+        }
+        void run(FileChannel input, Progress progress) throws IOException {
+            try (FileChannel output = new FileOutputStream(file).getChannel()) {
+                if(archiveEntry.getMethod() == Archive.STORED){
+                    transfer(input, output, progress);
+                }else {
+                    inflate(input, output, progress);
+                }
+            }
+        }
+        private void transfer(FileChannel input, FileChannel output, Progress progress) throws IOException {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = archiveEntry.getFileOffset();
+            long remaining = archiveEntry.getDataSize();
+            while (remaining > 0){
+                buffer.clear();
+                if(remaining < buffer.capacity()){
+                    buffer.limit((int) remaining);
+                }
+                int read = input.read(buffer, position);
+                if(read <= 0){
+                    throw new IOException("Unexpected end of entry: " + archiveEntry.getName());
+                }
+                crc.update(buffer.array(), 0, read);
+                buffer.flip();
+                while (buffer.hasRemaining()){
+                    output.write(buffer);
+                }
+                position += read;
+                remaining -= read;
+                progress.add(read);
+            }
+            checkCrc(crc);
+        }
+        private void inflate(FileChannel input, FileChannel output, Progress progress) throws IOException {
+            Inflater inflater = new Inflater(true);
+            CRC32 crc = new CRC32();
+            ByteBuffer inBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] outBytes = new byte[BUFFER_SIZE];
+            ByteBuffer outBuffer = ByteBuffer.wrap(outBytes);
+            long position = archiveEntry.getFileOffset();
+            long remaining = archiveEntry.getDataSize();
+            boolean dummyByte = false;
+            try {
+                while (!inflater.finished()){
+                    if(inflater.needsInput() && remaining <= 0){
+                        // nowrap inflater may need one extra byte to detect the end of stream
+                        if(dummyByte){
+                            throw new IOException("Unexpected end of entry: " + archiveEntry.getName());
+                        }
+                        dummyByte = true;
+                        inflater.setInput(new byte[1]);
+                    }else if(inflater.needsInput()){
+                        inBuffer.clear();
+                        if(remaining < inBuffer.capacity()){
+                            inBuffer.limit((int) remaining);
+                        }
+                        int read = input.read(inBuffer, position);
+                        if(read <= 0){
+                            throw new IOException("Unexpected end of file: " + archiveEntry.getName());
+                        }
+                        position += read;
+                        remaining -= read;
+                        inflater.setInput(inBuffer.array(), 0, read);
+                    }
+                    int length = inflater.inflate(outBytes);
+                    if(length == 0 && inflater.needsDictionary()){
+                        throw new IOException("Unsupported deflate dictionary: " + archiveEntry.getName());
+                    }
+                    if(length > 0){
+                        crc.update(outBytes, 0, length);
+                        outBuffer.clear();
+                        outBuffer.limit(length);
+                        while (outBuffer.hasRemaining()){
+                            output.write(outBuffer);
+                        }
+                        progress.add(length);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid deflate data: " + archiveEntry.getName(), e);
+            } finally {
+                inflater.end();
+            }
+            checkCrc(crc);
+        }
+        private void checkCrc(CRC32 crc) throws IOException {
+            if(crc.getValue() != archiveEntry.getCrc()){
+                throw new IOException("CRC mismatch: " + archiveEntry.getName());
+            }
+        }
+    }
+
+    private static class Progress {
+        private final ProgressListener listener;
+        private final long totalBytes;
+        private final AtomicLong bytes;
+        private long reported;
+
+        Progress(ProgressListener listener, long totalBytes){
+            this.listener = listener;
+            this.totalBytes = totalBytes;
+            this.bytes = new AtomicLong();
+            this.reported = -1;
+        }
+        void add(long count){
+            bytes.addAndGet(count);
+        }
+        void report(){
+            long value = bytes.get();
+            if(listener != null && value != reported){
+                reported = value;
+                listener.onProgress(value, totalBytes);
+            }
+        }
+        void finish(){
+            if(listener != null){
+                listener.onProgress(bytes.get(), totalBytes);
+            }
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called from the thread running the extraction, about ten times a second while
+         * entries are extracted
+         */
+        void onProgress(long extractedBytes, long totalBytes);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL = 100;
+}
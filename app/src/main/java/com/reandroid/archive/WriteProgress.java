@@ -17,4 +17,12 @@ package com.reandroid.archive;
 
 public interface WriteProgress {
     void onCompressFile(String path, int mode, long writtenBytes);
+    /**
+     * Called after each entry is written to the archive
+     *
+     * @param index zero based index of the entry
+     * @param count total number of entries
+     */
+    default void onWriteFile(String path, int index, int count){
+    }
 }
@@ -26,8 +26,20 @@ import java.io.IOException;
 
 public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
     private BufferFileInput buffer;
+    private int threadCount;
     public ApkFileWriter(File file, InputSource[] sources) throws IOException {
         super(new ZipFileOutput(file), sources);
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Number of threads compressing changed files, 1 or less compresses
+     * everything on the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
     }
     @Override
     void closeBuffer() throws IOException{
@@ -68,17 +80,35 @@ public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
         BufferFileInput input = new BufferFileInput(bufferFile);
         FileOutputSource tableSource = null;
         int length = outputList.length;
-        for(int i = 0; i < length; i++){
-            FileOutputSource fileOutputSource = outputList[i];
-            InputSource inputSource = fileOutputSource.getInputSource();
-            if(tableSource == null && TableBlock.FILE_NAME.equals(inputSource.getAlias())){
-                tableSource = fileOutputSource;
-                continue;
+        SegmentCompressor compressor = null;
+        if(getThreadCount() > 1 && length > 1){
+            compressor = new SegmentCompressor(outputList, getThreadCount());
+        }
+        try {
+            for(int i = 0; i < length; i++){
+                FileOutputSource fileOutputSource = outputList[i];
+                InputSource inputSource = fileOutputSource.getInputSource();
+                if(tableSource == null && TableBlock.FILE_NAME.equals(inputSource.getAlias())){
+                    tableSource = fileOutputSource;
+                    continue;
+                }
+                onCompressFileProgress(inputSource.getAlias(),
+                        inputSource.getMethod(),
+                        output.position());
+                FileOutputSource.Segment segment = null;
+                if(compressor != null){
+                    segment = compressor.take(i);
+                }
+                if(segment != null){
+                    fileOutputSource.makeBuffer(input, output, segment);
+                }else {
+                    fileOutputSource.makeBuffer(input, output);
+                }
+            }
+        } finally {
+            if(compressor != null){
+                compressor.shutdown();
             }
-            onCompressFileProgress(inputSource.getAlias(),
-                    inputSource.getMethod(),
-                    output.position());
-            fileOutputSource.makeBuffer(input, output);
         }
         if(tableSource != null){
             tableSource.makeBuffer(input, output);
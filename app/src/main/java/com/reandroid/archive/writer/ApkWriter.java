@@ -35,6 +35,8 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
     private ApkSignatureBlock apkSignatureBlock;
     private APKLogger apkLogger;
     private WriteProgress writeProgress;
+    private CompressionPolicy compressionPolicy;
+    private final EntryEncoder.Pool encoderPool;
     private final HeaderInterceptorChain interceptorChain;
 
     public ApkWriter(T zipOutput, InputSource[] sources){
@@ -42,21 +44,26 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
         this.inputSources = sources;
         this.zipAligner = ZipAligner.apkAligner();
         this.interceptorChain = HeaderInterceptorChain.createDefault();
+        this.encoderPool = new EntryEncoder.Pool();
     }
 
     public void write()throws IOException {
         synchronized (mLock){
-            OUT[] outList = buildOutputEntries();
+            try {
+                OUT[] outList = buildOutputEntries();
 
-            prepareOutputs(outList);
-            writeApkList(outList);
+                prepareOutputs(outList);
+                writeApkList(outList);
 
-            closeBuffer();
+                closeBuffer();
 
-            writeSignatureBlock();
-            writeCEHList(outList);
+                OutputSource[] entries = writeAdditionalEntries(outList);
+                writeCentralDirectory(entries);
 
-            this.close();
+                this.close();
+            } finally {
+                encoderPool.close();
+            }
         }
     }
     private void writeApkList(OUT[] outputList) throws IOException{
@@ -71,25 +78,44 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
             if(i % 100 == 0){
                 out.logFileWrite();
             }
+            onWriteFileProgress(out.getInputSource().getAlias(), i, length);
         }
     }
     void closeBuffer() throws IOException{
     }
-    private void writeCEHList(OUT[] outputList) throws IOException{
-        EndRecord endRecord = new EndRecord();
-        endRecord.setSignature(ZipSignature.END_RECORD);
+    /**
+     * Writes entries after the input entries (e.g. signature files), before the central directory
+     *
+     * @return all entries for the central directory
+     */
+    OutputSource[] writeAdditionalEntries(OUT[] outputList) throws IOException{
+        return outputList;
+    }
+    void writeCentralDirectory(OutputSource[] outputList) throws IOException{
+        writeSignatureBlock();
+        writeCEHList(outputList);
+    }
+    private void writeCEHList(OutputSource[] outputList) throws IOException{
         long offset = position();
-        endRecord.setOffsetOfCentralDirectory(offset);
         int count = outputList.length;
-        endRecord.setNumberOfDirectories(count);
-        endRecord.setTotalNumberOfDirectories(count);
         ZipOutput zipOutput = getZipOutput();
         for(int i = 0; i < count; i++){
-            OUT outputSource = outputList[i];
+            OutputSource outputSource = outputList[i];
             outputSource.writeCEH(zipOutput);
         }
         long cedLength = position() - offset;
+        writeEndRecord(createEndRecord(offset, cedLength, count));
+    }
+    static EndRecord createEndRecord(long offset, long cedLength, int count){
+        EndRecord endRecord = new EndRecord();
+        endRecord.setSignature(ZipSignature.END_RECORD);
+        endRecord.setOffsetOfCentralDirectory(offset);
+        endRecord.setNumberOfDirectories(count);
+        endRecord.setTotalNumberOfDirectories(count);
         endRecord.setLengthOfCentralDirectory(cedLength);
+        return endRecord;
+    }
+    void writeEndRecord(EndRecord endRecord) throws IOException{
         OutputStream outputStream = getOutputStream();
         Zip64Record zip64Record = endRecord.getZip64Record();
         if(zip64Record != null){
@@ -107,18 +133,23 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
         InputSource[] sources = this.getInputSources();
         int length = sources.length;
         OUT[] results = createOutArray(length);
-        HeaderInterceptorChain interceptorChain = this.getInterceptorChain();
-        if(interceptorChain.isDisabled()){
-            interceptorChain = null;
-        }
         for(int i = 0; i < length; i++){
             InputSource inputSource = sources[i];
             OUT out = toOutputSource(inputSource);
-            out.setHeaderInterceptor(interceptorChain);
+            initOutputSource(out);
             results[i] = out;
         }
         return results;
     }
+    void initOutputSource(OutputSource outputSource){
+        HeaderInterceptorChain interceptorChain = this.getInterceptorChain();
+        if(interceptorChain.isDisabled()){
+            interceptorChain = null;
+        }
+        outputSource.setHeaderInterceptor(interceptorChain);
+        outputSource.setCompressionPolicy(compressionPolicy);
+        outputSource.setEncoderPool(encoderPool);
+    }
 
     abstract void writeApk(OUT outputSource, ZipAligner zipAligner) throws IOException;
     abstract void prepareOutputs(OUT[] outList) throws IOException;
@@ -180,6 +211,17 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
         this.writeProgress = writeProgress;
     }
 
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    /**
+     * Compression level of entries to be compressed, null deflates every entry
+     * with BEST_SPEED and keeps STORED entries stored
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
     public HeaderInterceptorChain getInterceptorChain() {
         return interceptorChain;
     }
@@ -198,6 +240,11 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
             writeProgress.onCompressFile(path, mode, writtenBytes);
         }
     }
+    void onWriteFileProgress(String path, int index, int count) {
+        if(writeProgress!=null){
+            writeProgress.onWriteFile(path, index, count);
+        }
+    }
     APKLogger getApkLogger(){
         return apkLogger;
     }
@@ -17,6 +17,7 @@ package com.reandroid.archive.writer;
 
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.io.ZipByteOutput;
+import com.reandroid.archive.io.ZipOutput;
 
 import java.io.IOException;
 
@@ -24,13 +25,13 @@ class ByteOutputSource extends OutputSource{
     ByteOutputSource(InputSource inputSource) {
         super(inputSource);
     }
-    void writeApk(ZipByteOutput zipOutput, ZipAligner zipAligner) throws IOException {
+    void writeApk(ZipOutput zipOutput, ZipAligner zipAligner) throws IOException {
         ZipByteOutput buffer = new ZipByteOutput();
         writeBuffer(buffer);
         buffer.close();
         writeLFH(zipOutput, zipAligner);
         getLocalFileHeader().setFileOffset(zipOutput.position());
-        zipOutput.write(buffer.toByteArray());
+        zipOutput.getOutputStream().write(buffer.toByteArray());
         writeDD(zipOutput);
     }
 }
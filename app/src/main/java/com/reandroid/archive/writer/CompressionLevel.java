@@ -0,0 +1,48 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import java.util.zip.Deflater;
+
+/*
+ * Trade of compression ratio for speed of an entry, see CompressionPolicy
+ */
+public enum CompressionLevel {
+    /*
+     * Written as STORED, no compression at all
+     */
+    STORE(Deflater.NO_COMPRESSION),
+    /*
+     * Deflated with Deflater.BEST_SPEED
+     */
+    FAST(Deflater.BEST_SPEED),
+    /*
+     * Deflated with Deflater.DEFAULT_COMPRESSION
+     */
+    DEFAULT(Deflater.DEFAULT_COMPRESSION);
+
+    private final int deflaterLevel;
+
+    CompressionLevel(int deflaterLevel){
+        this.deflaterLevel = deflaterLevel;
+    }
+    public int getDeflaterLevel() {
+        return deflaterLevel;
+    }
+    public boolean isStore(){
+        return this == STORE;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.InputSource;
+import com.reandroid.utils.StringsUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Chooses the compression level of each entry by its file extension. Entries whose
+ * method is already STORED (e.g. resources.arsc, uncompressed native libraries) are
+ * always stored, the policy only applies to entries to be deflated.
+ */
+public class CompressionPolicy {
+    private final Map<String, CompressionLevel> extensionLevels;
+    private CompressionLevel defaultLevel;
+
+    public CompressionPolicy(CompressionLevel defaultLevel){
+        this.extensionLevels = new HashMap<>();
+        this.defaultLevel = defaultLevel;
+    }
+    public CompressionPolicy(){
+        this(CompressionLevel.FAST);
+    }
+
+    public CompressionLevel getDefaultLevel() {
+        return defaultLevel;
+    }
+    public void setDefaultLevel(CompressionLevel defaultLevel) {
+        if(defaultLevel == null){
+            throw new NullPointerException();
+        }
+        this.defaultLevel = defaultLevel;
+    }
+    /**
+     * @param extension file extension with or without dot e.g. "png", case insensitive
+     * @param level compression level, null to use default level
+     */
+    public CompressionPolicy setLevel(String extension, CompressionLevel level){
+        extension = normalizeExtension(extension);
+        if(level == null){
+            extensionLevels.remove(extension);
+        }else {
+            extensionLevels.put(extension, level);
+        }
+        return this;
+    }
+    public CompressionLevel getLevel(InputSource inputSource){
+        if(inputSource.getMethod() == Archive.STORED){
+            return CompressionLevel.STORE;
+        }
+        if(!extensionLevels.isEmpty()){
+            CompressionLevel level = extensionLevels.get(
+                    extensionOf(inputSource.getAlias()));
+            if(level != null){
+                return level;
+            }
+        }
+        return getDefaultLevel();
+    }
+
+    /**
+     * Same as writing without a policy, every deflated entry with BEST_SPEED
+     */
+    public static CompressionPolicy fast(){
+        return new CompressionPolicy(CompressionLevel.FAST);
+    }
+    /**
+     * Stores already compressed media and deflates the rest with BEST_SPEED
+     */
+    public static CompressionPolicy fastStoreMedia(){
+        CompressionPolicy policy = new CompressionPolicy(CompressionLevel.FAST);
+        for(String extension : MEDIA_EXTENSIONS){
+            policy.setLevel(extension, CompressionLevel.STORE);
+        }
+        return policy;
+    }
+
+    private static String normalizeExtension(String extension){
+        if(extension.length() != 0 && extension.charAt(0) == '.'){
+            extension = extension.substring(1);
+        }
+        return StringsUtil.toLowercase(extension);
+    }
+    private static String extensionOf(String path){
+        int i = path.lastIndexOf('.');
+        if(i < 0 || path.indexOf('/', i) >= 0){
+            return StringsUtil.EMPTY;
+        }
+        return StringsUtil.toLowercase(path.substring(i + 1));
+    }
+
+    private static final String[] MEDIA_EXTENSIONS = new String[]{
+            "png", "jpg", "jpeg", "gif", "webp",
+            "mp3", "ogg", "m4a", "aac", "mp4", "webm",
+            "zip", "jar", "apk", "gz"
+    };
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * Computes CRC32 and size of entry data and stores or deflates it to the raw output.
+ * Small writes are gathered into a large chunk, so the native CRC32 and Deflater are
+ * called once per chunk instead of once per write, and deflated output is drained in
+ * chunks of the same size instead of DeflaterOutputStream's 512 bytes.
+ * Encoders and their Deflaters are pooled per writer and reset between entries, and the
+ * native zlib streams are ended when the writer releases its pool.
+ * The uncompressed data can be copied to a second stream on the way (e.g. a signer digest).
+ */
+class EntryEncoder extends OutputStream {
+    private final Pool pool;
+    private final CRC32 crc;
+    private final byte[] inputChunk;
+    private final byte[] outputChunk;
+    private final Deflater[] deflaters;
+    private Deflater deflater;
+    private OutputStream rawOutput;
+    private OutputStream plainOutput;
+    private int inputCount;
+    private long size;
+    private long compressedSize;
+
+    private EntryEncoder(Pool pool){
+        this.pool = pool;
+        this.crc = new CRC32();
+        this.inputChunk = new byte[CHUNK_SIZE];
+        this.outputChunk = new byte[CHUNK_SIZE];
+        this.deflaters = new Deflater[CompressionLevel.values().length];
+    }
+
+    long getCrc(){
+        return crc.getValue();
+    }
+    long getSize(){
+        return size;
+    }
+    long getCompressedSize(){
+        return compressedSize;
+    }
+    /**
+     * Writes the remaining data, after this call the crc and sizes are final
+     */
+    void finish() throws IOException {
+        flushInput();
+        Deflater deflater = this.deflater;
+        if(deflater != null){
+            deflater.finish();
+            while (!deflater.finished()){
+                drain(deflater);
+            }
+        }
+    }
+    /**
+     * Returns this encoder to the pool, must be called even if writing failed
+     */
+    void release(){
+        Deflater deflater = this.deflater;
+        this.deflater = null;
+        this.rawOutput = null;
+        this.plainOutput = null;
+        this.inputCount = 0;
+        if(deflater != null){
+            deflater.reset();
+        }
+        pool.recycle(this);
+    }
+    private void end(){
+        Deflater[] deflaters = this.deflaters;
+        for(int i = 0; i < deflaters.length; i++){
+            Deflater deflater = deflaters[i];
+            if(deflater != null){
+                deflater.end();
+                deflaters[i] = null;
+            }
+        }
+    }
+    private void begin(OutputStream rawOutput, OutputStream plainOutput, CompressionLevel level){
+        this.rawOutput = rawOutput;
+        this.plainOutput = plainOutput;
+        this.crc.reset();
+        this.size = 0;
+        this.compressedSize = 0;
+        this.inputCount = 0;
+        if(level.isStore()){
+            this.deflater = null;
+        }else {
+            this.deflater = getDeflater(level);
+        }
+    }
+    private Deflater getDeflater(CompressionLevel level){
+        int index = level.ordinal();
+        Deflater deflater = deflaters[index];
+        if(deflater == null){
+            deflater = new Deflater(level.getDeflaterLevel(), true);
+            deflaters[index] = deflater;
+        }
+        return deflater;
+    }
+
+    @Override
+    public void write(int i) throws IOException {
+        if(inputCount == inputChunk.length){
+            flushInput();
+        }
+        inputChunk[inputCount] = (byte) i;
+        inputCount ++;
+    }
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if(length >= CHUNK_SIZE){
+            flushInput();
+            encode(bytes, offset, length);
+            return;
+        }
+        byte[] chunk = this.inputChunk;
+        if(inputCount + length > chunk.length){
+            flushInput();
+        }
+        System.arraycopy(bytes, offset, chunk, inputCount, length);
+        inputCount += length;
+    }
+    @Override
+    public void flush() {
+        // entry data is only complete on finish()
+    }
+    @Override
+    public void close() {
+        // the raw output is owned by the writer
+    }
+    private void flushInput() throws IOException {
+        int count = this.inputCount;
+        if(count == 0){
+            return;
+        }
+        this.inputCount = 0;
+        encode(inputChunk, 0, count);
+    }
+    private void encode(byte[] bytes, int offset, int length) throws IOException {
+        crc.update(bytes, offset, length);
+        size += length;
+        OutputStream plainOutput = this.plainOutput;
+        if(plainOutput != null){
+            plainOutput.write(bytes, offset, length);
+        }
+        Deflater deflater = this.deflater;
+        if(deflater == null){
+            rawOutput.write(bytes, offset, length);
+            compressedSize += length;
+            return;
+        }
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()){
+            drain(deflater);
+        }
+    }
+    private void drain(Deflater deflater) throws IOException {
+        byte[] chunk = this.outputChunk;
+        int length = deflater.deflate(chunk, 0, chunk.length);
+        if(length > 0){
+            rawOutput.write(chunk, 0, length);
+            compressedSize += length;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Idle encoders of one writer, shared by its threads. An entry being written while
+     * another one is (e.g. an input source that writes an archive) takes its own encoder.
+     */
+    static class Pool {
+        private final ConcurrentLinkedQueue<EntryEncoder> idleEncoders;
+        private volatile boolean closed;
+
+        Pool(){
+            this.idleEncoders = new ConcurrentLinkedQueue<>();
+        }
+        /**
+         * @param plainOutput receives a copy of the uncompressed data, may be null
+         */
+        EntryEncoder obtain(OutputStream rawOutput, OutputStream plainOutput, CompressionLevel level){
+            EntryEncoder encoder = idleEncoders.poll();
+            if(encoder == null){
+                encoder = new EntryEncoder(this);
+            }
+            encoder.begin(rawOutput, plainOutput, level);
+            return encoder;
+        }
+        private void recycle(EntryEncoder encoder){
+            if(closed){
+                encoder.end();
+                return;
+            }
+            idleEncoders.add(encoder);
+            // close() may have drained the queue before the add
+            if(closed && idleEncoders.remove(encoder)){
+                encoder.end();
+            }
+        }
+        /**
+         * Ends the Deflaters of idle encoders, encoders released later are ended on release
+         */
+        void close(){
+            closed = true;
+            EntryEncoder encoder;
+            while ((encoder = idleEncoders.poll()) != null){
+                encoder.end();
+            }
+        }
+    }
+}
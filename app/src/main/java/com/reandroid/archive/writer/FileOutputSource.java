@@ -15,11 +15,14 @@
  */
 package com.reandroid.archive.writer;
 
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.FileInputSource;
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.block.LocalFileHeader;
 import com.reandroid.archive.io.ZipFileOutput;
 import com.reandroid.archive.io.ZipOutput;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 
@@ -41,6 +44,44 @@ class FileOutputSource extends OutputSource {
         }
         this.entryBuffer = writeBuffer(input, output);
     }
+    /**
+     * Writes data compressed ahead of time by {@link #compressSegment()}
+     */
+    void makeBuffer(BufferFileInput input, BufferFileOutput output, Segment segment) throws IOException {
+        if(this.entryBuffer != null){
+            return;
+        }
+        EntryBuffer entryBuffer = makeFromEntry();
+        if(entryBuffer != null){
+            this.entryBuffer = entryBuffer;
+            return;
+        }
+        long offset = output.position();
+        segment.writeTo(output.getOutputStream());
+        this.entryBuffer = new EntryBuffer(input, offset, segment.size());
+    }
+    /**
+     * Compresses into memory, it is safe to call from any thread only if
+     * {@link #canCompressConcurrently()} returns true
+     */
+    Segment compressSegment() throws IOException {
+        Segment segment = new Segment((int) Math.min(getInputSource().getLength(), MAX_SEGMENT_SIZE));
+        writeBuffer(segment);
+        return segment;
+    }
+    /**
+     * Returns true if the source neither shares state with other sources nor is too large
+     * to be held in memory. Encoded sources (e.g. xml compiled against the shared resource
+     * table) must stay on the writer thread.
+     */
+    boolean canCompressConcurrently() throws IOException {
+        InputSource inputSource = getInputSource();
+        Class<?> type = inputSource.getClass();
+        if(type != FileInputSource.class && type != ByteInputSource.class){
+            return false;
+        }
+        return inputSource.getLength() <= MAX_SEGMENT_SIZE;
+    }
     private EntryBuffer writeBuffer(BufferFileInput input, ZipOutput output) throws IOException {
         long offset = output.position();
         writeBuffer(output);
@@ -50,6 +91,9 @@ class FileOutputSource extends OutputSource {
     EntryBuffer makeFromEntry(){
         return null;
     }
+    EntryBuffer getEntryBuffer(){
+        return entryBuffer;
+    }
     void writeApk(ZipFileOutput zipFileOutput, ZipAligner zipAligner) throws IOException{
         logLargeFileWrite();
         EntryBuffer entryBuffer = this.entryBuffer;
@@ -66,5 +110,11 @@ class FileOutputSource extends OutputSource {
         apkFileWriter.write(input, length);
     }
 
+    static class Segment extends ByteArrayOutputStream {
+        Segment(int initialSize){
+            super(Math.max(32, initialSize));
+        }
+    }
 
+    static final long MAX_SEGMENT_SIZE = 1024 * 1024;
 }
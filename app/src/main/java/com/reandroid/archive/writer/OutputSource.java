@@ -22,59 +22,76 @@ import com.reandroid.archive.ZipSignature;
 import com.reandroid.archive.block.CentralEntryHeader;
 import com.reandroid.archive.block.DataDescriptor;
 import com.reandroid.archive.block.LocalFileHeader;
-import com.reandroid.archive.io.CountingOutputStream;
 import com.reandroid.archive.io.ZipOutput;
 import com.reandroid.utils.io.FileUtil;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 class OutputSource {
     private final InputSource inputSource;
     private LocalFileHeader lfh;
     private APKLogger apkLogger;
     private HeaderInterceptor headerInterceptor;
+    private CompressionPolicy compressionPolicy;
+    private EntryEncoder.Pool encoderPool;
+    private OutputStream plainDataOutput;
+    private boolean plainDataWritten;
 
     OutputSource(InputSource inputSource){
         this.inputSource = inputSource;
     }
 
     void writeBuffer(ZipOutput zipOutput) throws IOException {
+        writeBuffer(zipOutput.getOutputStream());
+    }
+    void writeBuffer(OutputStream rawStream) throws IOException {
         LocalFileHeader lfh = getLocalFileHeader();
         InputSource inputSource = getInputSource();
-        OutputStream rawStream = zipOutput.getOutputStream();
-        CountingOutputStream<OutputStream> rawCounter = new CountingOutputStream<>(rawStream);
-        CountingOutputStream<DeflaterOutputStream> deflateCounter = null;
-
-        if(inputSource.getMethod() != Archive.STORED){
-            DeflaterOutputStream deflaterInputStream = (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT) ?
-                    new DeflaterOutputStream(rawCounter, new Deflater(Deflater.BEST_SPEED, true), true)
-                    :  new DeflaterOutputStream(rawCounter, new Deflater(Deflater.BEST_SPEED, true));
-            deflateCounter = new CountingOutputStream<>(deflaterInputStream, false);
+        CompressionLevel level = getCompressionLevel();
+        EntryEncoder encoder = encoderPool.obtain(rawStream, plainDataOutput, level);
+        try {
+            inputSource.write(encoder);
+            encoder.finish();
+            if(level.isStore()){
+                lfh.setMethod(Archive.STORED);
+            }else {
+                lfh.setMethod(Archive.DEFLATED);
+            }
+            lfh.setCrc(encoder.getCrc());
+            lfh.setSize(encoder.getSize());
+            lfh.setCompressedSize(encoder.getCompressedSize());
+            plainDataWritten = plainDataOutput != null;
+        } finally {
+            encoder.release();
         }
-        if(deflateCounter != null){
-            rawCounter.disableCrc(true);
-            inputSource.write(deflateCounter);
-            deflateCounter.close();
-            rawCounter.close();
-        }else {
-            inputSource.write(rawCounter);
+        inputSource.disposeInputSource();
+    }
+    CompressionLevel getCompressionLevel(){
+        CompressionPolicy policy = this.compressionPolicy;
+        if(policy != null){
+            return policy.getLevel(getInputSource());
         }
-
-        lfh.setCompressedSize(rawCounter.getSize());
-
-        if(deflateCounter != null){
-            lfh.setMethod(Archive.DEFLATED);
-            lfh.setCrc(deflateCounter.getCrc());
-            lfh.setSize(deflateCounter.getSize());
-        }else {
-            lfh.setSize(rawCounter.getSize());
-            lfh.setMethod(Archive.STORED);
-            lfh.setCrc(rawCounter.getCrc());
+        if(getInputSource().getMethod() == Archive.STORED){
+            return CompressionLevel.STORE;
         }
-        inputSource.disposeInputSource();
+        return CompressionLevel.FAST;
+    }
+    void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+    void setEncoderPool(EntryEncoder.Pool encoderPool) {
+        this.encoderPool = encoderPool;
+    }
+    /**
+     * Receives a copy of the uncompressed data when the entry is encoded, entries copied
+     * as is from an archive are not encoded, see {@link #isPlainDataWritten()}
+     */
+    void setPlainDataOutput(OutputStream plainDataOutput) {
+        this.plainDataOutput = plainDataOutput;
+    }
+    boolean isPlainDataWritten() {
+        return plainDataWritten;
     }
     void writeCEH(ZipOutput zipOutput) throws IOException{
         LocalFileHeader lfh = getLocalFileHeader();
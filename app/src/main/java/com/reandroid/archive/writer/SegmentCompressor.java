@@ -0,0 +1,125 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.reandroid.arsc.chunk.TableBlock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses independent entries ahead of the buffer writer on a pool of threads, each entry
+ * into its own in-memory segment. The writer takes the segments back in entry order, so the
+ * buffer layout is the same as when every entry is compressed on the calling thread.
+ * The number of segments and bytes in flight are bounded.
+ */
+class SegmentCompressor {
+    private final FileOutputSource[] outputList;
+    private final Future<?>[] futures;
+    private final long[] reservedBytes;
+    private final ExecutorService executor;
+    private final int maxPendingCount;
+    private int submitIndex;
+    private int pendingCount;
+    private long pendingBytes;
+
+    SegmentCompressor(FileOutputSource[] outputList, int threadCount){
+        this.outputList = outputList;
+        this.futures = new Future<?>[outputList.length];
+        this.reservedBytes = new long[outputList.length];
+        this.executor = Executors.newFixedThreadPool(threadCount);
+        this.maxPendingCount = threadCount * PENDING_PER_THREAD;
+    }
+
+    /**
+     * @return the compressed segment of the entry at index, or null if the entry was not
+     * compressed ahead and has to be written by the caller
+     */
+    FileOutputSource.Segment take(int index) throws IOException {
+        submit(index);
+        Future<?> future = futures[index];
+        if(future == null){
+            return null;
+        }
+        futures[index] = null;
+        FileOutputSource.Segment segment = await(future);
+        pendingCount --;
+        pendingBytes -= reservedBytes[index];
+        submit(index + 1);
+        return segment;
+    }
+    void shutdown(){
+        Future<?>[] futures = this.futures;
+        for(int i = 0; i < futures.length; i++){
+            Future<?> future = futures[i];
+            if(future != null){
+                future.cancel(true);
+                futures[i] = null;
+            }
+        }
+        executor.shutdownNow();
+    }
+    private void submit(int index){
+        if(submitIndex < index){
+            submitIndex = index;
+        }
+        FileOutputSource[] outputList = this.outputList;
+        int length = outputList.length;
+        while (submitIndex < length && pendingCount < maxPendingCount
+                && pendingBytes < MAX_PENDING_BYTES){
+            int i = submitIndex;
+            submitIndex ++;
+            FileOutputSource outputSource = outputList[i];
+            long size;
+            try {
+                if(!outputSource.canCompressConcurrently()){
+                    continue;
+                }
+                size = outputSource.getInputSource().getLength();
+            } catch (IOException ignored) {
+                continue;
+            }
+            if(TableBlock.FILE_NAME.equals(outputSource.getInputSource().getAlias())){
+                continue;
+            }
+            futures[i] = executor.submit(outputSource::compressSegment);
+            reservedBytes[i] = size;
+            pendingCount ++;
+            pendingBytes += size;
+        }
+    }
+    private FileOutputSource.Segment await(Future<?> future) throws IOException {
+        try {
+            return (FileOutputSource.Segment) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static final int PENDING_PER_THREAD = 8;
+    private static final long MAX_PENDING_BYTES = 32L * 1024 * 1024;
+}
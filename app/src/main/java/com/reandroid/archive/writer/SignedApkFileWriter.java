@@ -0,0 +1,370 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSink;
+import com.android.apksig.util.DataSinks;
+import com.android.apksig.util.DataSources;
+import com.android.apksig.util.RunnablesExecutor;
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.block.EndRecord;
+import com.reandroid.archive.block.LocalFileHeader;
+import com.reandroid.archive.io.ZipByteOutput;
+import com.reandroid.utils.collection.ArrayCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Writes and signs an apk in one pass. Entries are handed to the signer engine as they are
+ * written, JAR signature files are appended after the last entry and the APK Signing Block
+ * is computed over the written file before the central directory, so no unsigned
+ * intermediate apk is written and signed again.
+ * Entry data the engine asks for (v1 digests) is copied to the engine while the entry is
+ * compressed. Entries copied as is from an archive are inflated from that archive
+ * concurrently, unless the engine already knows the digest of their stored data. The output
+ * is read back only for the APK Signing Block. Entries the engine replaces (existing
+ * signature files) are dropped.
+ * The engine is not closed by this writer.
+ */
+public class SignedApkFileWriter extends ApkFileWriter {
+    private final ApkSignerEngine signerEngine;
+    private final List<PendingEntry> pendingEntries;
+    private RunnablesExecutor executor;
+    private RandomAccessFile readBack;
+
+    public SignedApkFileWriter(File file, InputSource[] sources, ApkSignerEngine signerEngine) throws IOException {
+        super(file, filterSources(sources, signerEngine));
+        this.signerEngine = signerEngine;
+        this.pendingEntries = new ArrayCollection<>();
+        this.executor = RunnablesExecutor.MULTI_THREADED;
+    }
+
+    /**
+     * Executor reading back entry data for the engine, default is
+     * RunnablesExecutor.MULTI_THREADED
+     */
+    public void setExecutor(RunnablesExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    void prepareOutputs(FileOutputSource[] outList) throws IOException {
+        for(FileOutputSource outputSource : outList){
+            ApkSignerEngine.InspectJarEntryRequest request = signerEngine.outputJarEntry(
+                    outputSource.getInputSource().getAlias());
+            if(request != null){
+                outputSource.setPlainDataOutput(new DataSinkOutputStream(request.getDataSink()));
+                pendingEntries.add(new PendingEntry(outputSource, request));
+            }
+        }
+        super.prepareOutputs(outList);
+        fulfillPendingEntries();
+    }
+    @Override
+    OutputSource[] writeAdditionalEntries(FileOutputSource[] outputList) throws IOException {
+        ApkSignerEngine.OutputJarSignatureRequest signatureRequest;
+        try {
+            signatureRequest = signerEngine.outputJarEntries();
+        } catch (ApkFormatException | GeneralSecurityException e) {
+            throw new IOException("Failed to generate JAR signature", e);
+        }
+        if(signatureRequest == null){
+            return outputList;
+        }
+        List<ApkSignerEngine.OutputJarSignatureRequest.JarEntry> jarEntries =
+                signatureRequest.getAdditionalJarEntries();
+        int length = outputList.length;
+        OutputSource[] results = new OutputSource[length + jarEntries.size()];
+        System.arraycopy(outputList, 0, results, 0, length);
+        for(ApkSignerEngine.OutputJarSignatureRequest.JarEntry jarEntry : jarEntries){
+            byte[] data = jarEntry.getData();
+            ByteInputSource inputSource = new ByteInputSource(data, jarEntry.getName());
+            inputSource.setMethod(Archive.DEFLATED);
+            ByteOutputSource outputSource = new ByteOutputSource(inputSource);
+            initOutputSource(outputSource);
+            outputSource.writeApk(getZipOutput(), getZipAligner());
+            ApkSignerEngine.InspectJarEntryRequest request =
+                    signerEngine.outputJarEntry(jarEntry.getName());
+            if(request != null){
+                request.getDataSink().consume(data, 0, data.length);
+                request.done();
+            }
+            results[length] = outputSource;
+            length ++;
+        }
+        signatureRequest.done();
+        return results;
+    }
+    @Override
+    void writeCentralDirectory(OutputSource[] outputList) throws IOException {
+        long offset = position();
+        ZipByteOutput centralDirectory = new ZipByteOutput();
+        for(OutputSource outputSource : outputList){
+            outputSource.writeCEH(centralDirectory);
+        }
+        byte[] cedBytes = centralDirectory.toByteArray();
+        EndRecord endRecord = createEndRecord(offset, cedBytes.length, outputList.length);
+        if(endRecord.getZip64Record() != null){
+            throw new IOException("ZIP64 apk can not be signed");
+        }
+        ApkSignerEngine.OutputApkSigningBlockRequest2 blockRequest;
+        try {
+            blockRequest = signerEngine.outputZipSections2(
+                    DataSources.asDataSource(getReadBack(), 0, offset),
+                    DataSources.asDataSource(ByteBuffer.wrap(cedBytes)),
+                    DataSources.asDataSource(ByteBuffer.wrap(endRecord.getBytes())));
+        } catch (ApkFormatException | GeneralSecurityException e) {
+            throw new IOException("Failed to generate APK Signing Block", e);
+        }
+        OutputStream outputStream = getOutputStream();
+        if(blockRequest != null){
+            byte[] signingBlock = blockRequest.getApkSigningBlock();
+            int padding = blockRequest.getPaddingSizeBeforeApkSigningBlock();
+            if(padding > 0){
+                outputStream.write(new byte[padding]);
+            }
+            outputStream.write(signingBlock);
+            blockRequest.done();
+            endRecord.setOffsetOfCentralDirectory(position());
+        }
+        outputStream.write(cedBytes);
+        writeEndRecord(endRecord);
+        signerEngine.outputDone();
+    }
+    @Override
+    public void close() throws IOException {
+        RandomAccessFile readBack = this.readBack;
+        this.readBack = null;
+        try {
+            if(readBack != null){
+                readBack.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    private void fulfillPendingEntries() throws IOException {
+        List<PendingEntry> pendingEntries = this.pendingEntries;
+        List<PendingEntry> copiedEntries = new ArrayCollection<>();
+        for(PendingEntry pendingEntry : pendingEntries){
+            if(pendingEntry.isPlainDataWritten()){
+                pendingEntry.request.done();
+            }else {
+                // channels are opened lazily, not thread safe
+                pendingEntry.openInput();
+                copiedEntries.add(pendingEntry);
+            }
+        }
+        pendingEntries.clear();
+        if(copiedEntries.isEmpty()){
+            return;
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        executor.execute(() -> () -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] inflated = new byte[BUFFER_SIZE];
+            Inflater inflater = new Inflater(true);
+            try {
+                while (failure.get() == null){
+                    int index = nextIndex.getAndIncrement();
+                    if(index >= copiedEntries.size()){
+                        return;
+                    }
+                    copiedEntries.get(index).fulfill(buffer, inflated, inflater);
+                    inflater.reset();
+                }
+            } catch (IOException | DataFormatException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inflater.end();
+            }
+        });
+        Exception exception = failure.get();
+        if(exception instanceof IOException){
+            throw (IOException) exception;
+        }
+        if(exception != null){
+            throw new IOException(exception);
+        }
+    }
+    private RandomAccessFile getReadBack() throws IOException {
+        RandomAccessFile readBack = this.readBack;
+        if(readBack == null){
+            readBack = new RandomAccessFile(getZipOutput().getFile(), "r");
+            this.readBack = readBack;
+        }
+        return readBack;
+    }
+
+    private static InputSource[] filterSources(InputSource[] sources, ApkSignerEngine signerEngine) throws IOException {
+        List<InputSource> results = new ArrayCollection<>(sources.length);
+        for(InputSource inputSource : sources){
+            ApkSignerEngine.InputJarEntryInstructions instructions =
+                    signerEngine.inputJarEntry(inputSource.getAlias());
+            ApkSignerEngine.InspectJarEntryRequest request = instructions.getInspectJarEntryRequest();
+            if(request != null){
+                // e.g. existing META-INF/MANIFEST.MF, the engine keeps its attributes
+                inputSource.write(new DataSinkOutputStream(request.getDataSink()));
+                request.done();
+            }
+            if(instructions.getOutputPolicy() == ApkSignerEngine.InputJarEntryInstructions.OutputPolicy.OUTPUT){
+                results.add(inputSource);
+            }
+        }
+        return results.toArray(new InputSource[0]);
+    }
+
+    static class DataSinkOutputStream extends OutputStream {
+        private final DataSink dataSink;
+
+        DataSinkOutputStream(DataSink dataSink){
+            this.dataSink = dataSink;
+        }
+        @Override
+        public void write(int i) throws IOException {
+            dataSink.consume(new byte[]{(byte) i}, 0, 1);
+        }
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            dataSink.consume(bytes, offset, length);
+        }
+    }
+
+    static class PendingEntry {
+        private final FileOutputSource outputSource;
+        private final ApkSignerEngine.InspectJarEntryRequest request;
+        private FileChannel input;
+
+        PendingEntry(FileOutputSource outputSource, ApkSignerEngine.InspectJarEntryRequest request){
+            this.outputSource = outputSource;
+            this.request = request;
+        }
+
+        boolean isPlainDataWritten(){
+            return outputSource.isPlainDataWritten();
+        }
+        void openInput() throws IOException {
+            input = outputSource.getEntryBuffer().getZipFileInput().getFileChannel();
+        }
+        void fulfill(byte[] buffer, byte[] inflated, Inflater inflater)
+                throws IOException, DataFormatException {
+            EntryBuffer entryBuffer = outputSource.getEntryBuffer();
+            LocalFileHeader lfh = outputSource.getLocalFileHeader();
+            long offset = entryBuffer.getOffset();
+            long length = entryBuffer.getLength();
+            if(lfh.getMethod() == Archive.STORED){
+                feed(offset, length, buffer, request.getDataSink());
+            }else if(!offerStoredDataDigest(offset, length, lfh.getSize(), buffer)){
+                inflate(offset, length, lfh.getSize(), buffer, inflated, inflater);
+            }
+            request.done();
+        }
+        /**
+         * Returns true if the engine knows the digest of the stored data, so the entry
+         * need not be inflated
+         */
+        private boolean offerStoredDataDigest(long offset, long length, long size, byte[] buffer)
+                throws IOException {
+            if(!(request instanceof ApkSignerEngine.StoredDataInspectJarEntryRequest)){
+                return false;
+            }
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            ByteBuffer uncompressedSize = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            uncompressedSize.putLong(size);
+            digest.update(uncompressedSize.array());
+            feed(offset, length, buffer, DataSinks.asDataSink(digest));
+            return ((ApkSignerEngine.StoredDataInspectJarEntryRequest) request)
+                    .offerStoredDataDigest(digest.digest());
+        }
+        private void feed(long offset, long length, byte[] buffer, DataSink sink) throws IOException {
+            long position = offset;
+            long end = offset + length;
+            while (position < end){
+                int read = input.read(ByteBuffer.wrap(buffer, 0,
+                        (int) Math.min(buffer.length, end - position)), position);
+                if(read <= 0){
+                    throw new IOException("Unexpected end of file: " + request.getEntryName());
+                }
+                position += read;
+                sink.consume(buffer, 0, read);
+            }
+        }
+        private void inflate(long offset, long length, long size, byte[] buffer, byte[] inflated,
+                             Inflater inflater) throws IOException, DataFormatException {
+            DataSink sink = request.getDataSink();
+            long position = offset;
+            long remaining = length;
+            boolean dummyByte = false;
+            while (!inflater.finished()){
+                if(inflater.needsInput() && remaining <= 0){
+                    // nowrap inflater may need one extra byte to detect the end of stream
+                    if(dummyByte){
+                        throw new IOException("Unexpected end of entry: " + request.getEntryName());
+                    }
+                    dummyByte = true;
+                    inflater.setInput(new byte[1]);
+                }else if(inflater.needsInput()){
+                    int read = input.read(ByteBuffer.wrap(buffer, 0,
+                            (int) Math.min(buffer.length, remaining)), position);
+                    if(read <= 0){
+                        throw new IOException("Unexpected end of file: " + request.getEntryName());
+                    }
+                    position += read;
+                    remaining -= read;
+                    inflater.setInput(buffer, 0, read);
+                }
+                int count = inflater.inflate(inflated);
+                if(count == 0 && inflater.needsDictionary()){
+                    throw new IOException("Unsupported deflate dictionary: " + request.getEntryName());
+                }
+                if(count > 0){
+                    sink.consume(inflated, 0, count);
+                }
+            }
+            if(inflater.getBytesWritten() != size){
+                throw new IOException("Unexpected size of inflated data of " + request.getEntryName()
+                        + ", expected: " + size + ", actual: " + inflater.getBytesWritten());
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
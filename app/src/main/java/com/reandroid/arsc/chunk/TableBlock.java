@@ -795,12 +795,21 @@ public class TableBlock extends Chunk<TableHeader>
         refresh();
     }
     public void merge(TableBlock tableBlock){
+        merge(tableBlock, true);
+    }
+    /**
+     * @param refresh false to skip refresh, when merging several tables the caller
+     *                refreshes once after the last merge
+     */
+    public void merge(TableBlock tableBlock, boolean refresh){
         if(tableBlock == null || tableBlock == this){
             return;
         }
         getStringPool().merge(tableBlock.getStringPool());
         getPackageArray().merge(tableBlock.getPackageArray());
-        refresh();
+        if(refresh){
+            refresh();
+        }
     }
     @Override
     public byte[] getBytes(){
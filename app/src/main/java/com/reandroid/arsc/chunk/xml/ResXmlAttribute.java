@@ -21,6 +21,7 @@ import com.reandroid.arsc.coder.ValueCoder;
 import com.reandroid.arsc.coder.XmlSanitizer;
 import com.reandroid.arsc.io.BlockReader;
 import com.reandroid.arsc.item.*;
+import com.reandroid.arsc.model.FrameworkTable;
 import com.reandroid.arsc.model.ResourceEntry;
 import com.reandroid.arsc.pool.ResXmlStringPool;
 import com.reandroid.arsc.pool.StringPool;
@@ -685,8 +686,11 @@ public class ResXmlAttribute extends AttributeValue implements Comparable<ResXml
             }
             return;
         }
-        AttributeBag attributeBag = AttributeBag.create(attrResource.get());
-        encodeResult = attributeBag.encode(value);
+        encodeResult = FrameworkTable.encodeAttributeValue(attrResource, value);
+        if(encodeResult == null){
+            AttributeBag attributeBag = AttributeBag.create(attrResource.get());
+            encodeResult = attributeBag.encode(value);
+        }
         if(encodeResult != null){
             if(encodeResult.valueType == ValueType.STRING){
                 setValueAsString(XmlSanitizer.unEscapeSpecialCharacter(value));
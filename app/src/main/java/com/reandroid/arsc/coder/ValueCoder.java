@@ -17,6 +17,7 @@ package com.reandroid.arsc.coder;
 
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.model.FrameworkTable;
 import com.reandroid.arsc.model.ResourceEntry;
 import com.reandroid.arsc.value.Value;
 import com.reandroid.arsc.value.attribute.AttributeBag;
@@ -42,20 +43,23 @@ public class ValueCoder {
         }
         if(name != null){
             name = name.resolveReference();
-            AttributeBag attributeBag = AttributeBag.create(name.get());
-            if(attributeBag != null){
-                encodeResult = attributeBag.encode(value);
-                if(encodeResult != null){
-                    if(encodeResult.valueType == ValueType.STRING){
-                        output.setValueAsString(XmlSanitizer.unEscapeSpecialCharacter(value));
-                        return new EncodeResult(ValueType.STRING, output.getData());
-                    }
-                    if(encodeResult.isError()){
-                        if(validate){
-                            return encodeResult;
-                        }
-                        encodeResult = null;
+            encodeResult = FrameworkTable.encodeAttributeValue(name, value);
+            if(encodeResult == null){
+                AttributeBag attributeBag = AttributeBag.create(name.get());
+                if(attributeBag != null){
+                    encodeResult = attributeBag.encode(value);
+                }
+            }
+            if(encodeResult != null){
+                if(encodeResult.valueType == ValueType.STRING){
+                    output.setValueAsString(XmlSanitizer.unEscapeSpecialCharacter(value));
+                    return new EncodeResult(ValueType.STRING, output.getData());
+                }
+                if(encodeResult.isError()){
+                    if(validate){
+                        return encodeResult;
                     }
+                    encodeResult = null;
                 }
             }
         }
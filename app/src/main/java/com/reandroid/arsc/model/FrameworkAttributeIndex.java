@@ -0,0 +1,271 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.arsc.model;
+
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.coder.EncodeResult;
+import com.reandroid.arsc.coder.ValueCoder;
+import com.reandroid.arsc.container.SpecTypePair;
+import com.reandroid.arsc.value.AttributeDataFormat;
+import com.reandroid.arsc.value.ValueType;
+import com.reandroid.arsc.value.attribute.AttributeBag;
+import com.reandroid.arsc.value.attribute.AttributeBagItem;
+import com.reandroid.utils.collection.ArrayCollection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * Pre-decoded attribute definitions of a framework table, kept as arrays sorted by
+ * resource id. Enum and flag names of each attribute are resolved once and sorted, so
+ * encoding an attribute value is a binary search instead of building an AttributeBag
+ * and resolving every item name on each call. Encoding results are the same as
+ * AttributeBag#encode(String).
+ */
+public class FrameworkAttributeIndex {
+
+    private final int[] mIds;
+    private final int[] mFormats;
+    private final AttributeDataFormat[][] mDataFormats;
+    private final int[] mValueStarts;
+    private final String[] mValueNames;
+    private final int[] mValueData;
+
+    private FrameworkAttributeIndex(int[] ids, int[] formats, AttributeDataFormat[][] dataFormats,
+                                    int[] valueStarts, String[] valueNames, int[] valueData){
+        this.mIds = ids;
+        this.mFormats = formats;
+        this.mDataFormats = dataFormats;
+        this.mValueStarts = valueStarts;
+        this.mValueNames = valueNames;
+        this.mValueData = valueData;
+    }
+
+    public int size(){
+        return mIds.length;
+    }
+    public boolean contains(int resourceId){
+        return Arrays.binarySearch(mIds, resourceId) >= 0;
+    }
+    public int getFormat(int resourceId){
+        int index = Arrays.binarySearch(mIds, resourceId);
+        if(index < 0){
+            return 0;
+        }
+        return mFormats[index];
+    }
+    /**
+     * Same as AttributeBag#encode(String) of the attribute
+     *
+     * @return encode result, or null if the attribute is not in this index
+     */
+    public EncodeResult encode(int resourceId, String valueString){
+        int index = Arrays.binarySearch(mIds, resourceId);
+        if(index < 0){
+            return null;
+        }
+        EncodeResult encodeResult = encodeEnumOrFlagValue(index, valueString);
+        if(encodeResult != null){
+            return encodeResult;
+        }
+        AttributeDataFormat[] formats = mDataFormats[index];
+        if(formats != null){
+            encodeResult = ValueCoder.encode(valueString, formats);
+            if(encodeResult != null){
+                return encodeResult;
+            }
+        }
+        if(AttributeDataFormat.contains(formats, ValueType.STRING)){
+            return new EncodeResult(ValueType.STRING, -1);
+        }
+        if(isEnumOrFlag(index)){
+            return new EncodeResult("Invalid attribute enum/flag/value");
+        }
+        return new EncodeResult("Incompatible attribute value, expected formats "
+                + AttributeDataFormat.toString(formats));
+    }
+    private EncodeResult encodeEnumOrFlagValue(int index, String valueString){
+        if(valueString == null || !isEnumOrFlag(index)){
+            return null;
+        }
+        EncodeResult encodeResult = ValueCoder
+                .encode(valueString, AttributeDataFormat.INTEGER);
+        if(encodeResult != null){
+            return encodeResult;
+        }
+        int start = mValueStarts[index];
+        int end = mValueStarts[index + 1];
+        int value = 0;
+        boolean foundOnce = false;
+        String[] splitNames = valueString.split("[\\s|]+");
+        for(String name : splitNames){
+            name = name.trim();
+            int i = Arrays.binarySearch(mValueNames, start, end, name);
+            if(i < 0){
+                if(name.length() != 0){
+                    return null;
+                }
+                continue;
+            }
+            value |= mValueData[i];
+            foundOnce = true;
+        }
+        if(!foundOnce){
+            return null;
+        }
+        ValueType valueType = isFlag(index) ? ValueType.HEX : ValueType.DEC;
+        return new EncodeResult(valueType, value);
+    }
+    private boolean isEnumOrFlag(int index){
+        int format = mFormats[index];
+        return AttributeDataFormat.FLAG.matches(format)
+                || AttributeDataFormat.ENUM.matches(format);
+    }
+    private boolean isFlag(int index){
+        return AttributeDataFormat.FLAG.matches(mFormats[index]);
+    }
+    @Override
+    public String toString(){
+        return "attributes = " + size() + ", values = " + mValueNames.length;
+    }
+
+    public static FrameworkAttributeIndex build(TableBlock tableBlock){
+        List<Attribute> attributeList = new ArrayCollection<>();
+        for(PackageBlock packageBlock : tableBlock){
+            Iterator<SpecTypePair> iterator = packageBlock.getSpecTypePairArray().iterator();
+            while (iterator.hasNext()){
+                SpecTypePair specTypePair = iterator.next();
+                if(specTypePair == null || !specTypePair.isTypeAttr()){
+                    continue;
+                }
+                Iterator<ResourceEntry> resources = specTypePair.getResources();
+                while (resources.hasNext()){
+                    Attribute attribute = Attribute.create(resources.next());
+                    if(attribute != null){
+                        attributeList.add(attribute);
+                    }
+                }
+            }
+        }
+        Attribute[] attributes = attributeList.toArray(new Attribute[0]);
+        Arrays.sort(attributes, (a1, a2) -> Integer.compare(a1.id, a2.id));
+        int length = attributes.length;
+        int valuesCount = 0;
+        for(Attribute attribute : attributes){
+            valuesCount += attribute.names.length;
+        }
+        int[] ids = new int[length];
+        int[] formats = new int[length];
+        AttributeDataFormat[][] dataFormats = new AttributeDataFormat[length][];
+        int[] valueStarts = new int[length + 1];
+        String[] valueNames = new String[valuesCount];
+        int[] valueData = new int[valuesCount];
+        int position = 0;
+        int count = 0;
+        for(int i = 0; i < length; i++){
+            Attribute attribute = attributes[i];
+            if(count != 0 && ids[count - 1] == attribute.id){
+                // same id from another package, first one wins as on resolving
+                continue;
+            }
+            ids[count] = attribute.id;
+            formats[count] = attribute.format;
+            dataFormats[count] = attribute.dataFormats;
+            valueStarts[count] = position;
+            int size = attribute.names.length;
+            System.arraycopy(attribute.names, 0, valueNames, position, size);
+            System.arraycopy(attribute.data, 0, valueData, position, size);
+            position += size;
+            count ++;
+        }
+        valueStarts[count] = position;
+        if(count != length){
+            ids = Arrays.copyOf(ids, count);
+            formats = Arrays.copyOf(formats, count);
+            dataFormats = Arrays.copyOf(dataFormats, count);
+            valueStarts = Arrays.copyOf(valueStarts, count + 1);
+            valueNames = Arrays.copyOf(valueNames, position);
+            valueData = Arrays.copyOf(valueData, position);
+        }
+        return new FrameworkAttributeIndex(ids, formats, dataFormats,
+                valueStarts, valueNames, valueData);
+    }
+
+    static class Attribute {
+        final int id;
+        final int format;
+        final AttributeDataFormat[] dataFormats;
+        final String[] names;
+        final int[] data;
+
+        Attribute(int id, int format, AttributeDataFormat[] dataFormats, String[] names, int[] data){
+            this.id = id;
+            this.format = format;
+            this.dataFormats = dataFormats;
+            this.names = names;
+            this.data = data;
+        }
+
+        static Attribute create(ResourceEntry resourceEntry){
+            AttributeBag attributeBag = AttributeBag.create(resourceEntry.get());
+            if(attributeBag == null){
+                return null;
+            }
+            AttributeBagItem formatItem = attributeBag.getFormat();
+            AttributeBagItem[] bagItems = attributeBag.getBagItems();
+            int length = bagItems.length;
+            String[] names = new String[length];
+            int[] data = new int[length];
+            int count = 0;
+            for(AttributeBagItem item : bagItems){
+                if(item.isType()){
+                    continue;
+                }
+                String name = item.getNameOrHex();
+                if(name == null || indexOf(names, count, name) >= 0){
+                    // AttributeBag#searchByName returns the first match
+                    continue;
+                }
+                names[count] = name;
+                data[count] = item.getData();
+                count ++;
+            }
+            Integer[] order = new Integer[count];
+            for(int i = 0; i < count; i++){
+                order[i] = i;
+            }
+            Arrays.sort(order, (i1, i2) -> names[i1].compareTo(names[i2]));
+            String[] sortedNames = new String[count];
+            int[] sortedData = new int[count];
+            for(int i = 0; i < count; i++){
+                sortedNames[i] = names[order[i]];
+                sortedData[i] = data[order[i]];
+            }
+            return new Attribute(resourceEntry.getResourceId(), formatItem.getData(),
+                    formatItem.getDataFormats(), sortedNames, sortedData);
+        }
+        private static int indexOf(String[] names, int count, String name){
+            for(int i = 0; i < count; i++){
+                if(name.equals(names[i])){
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
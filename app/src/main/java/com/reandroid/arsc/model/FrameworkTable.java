@@ -23,6 +23,7 @@ import com.reandroid.arsc.array.TypeBlockArray;
 import com.reandroid.arsc.chunk.ChunkType;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.coder.EncodeResult;
 import com.reandroid.arsc.container.SpecTypePair;
 import com.reandroid.arsc.header.HeaderBlock;
 import com.reandroid.arsc.item.ReferenceItem;
@@ -46,6 +47,7 @@ public class FrameworkTable extends TableBlock {
     private int mainPackageId;
     private boolean mOptimized;
     private boolean mOptimizeChecked;
+    private FrameworkAttributeIndex mAttributeIndex;
     public FrameworkTable(){
         super();
     }
@@ -71,8 +73,19 @@ public class FrameworkTable extends TableBlock {
         this.frameworkName = null;
         this.versionCode = 0;
         this.mainPackageId = 0;
+        this.mAttributeIndex = null;
         super.clear();
     }
+    public FrameworkAttributeIndex getAttributeIndex(){
+        synchronized (this){
+            FrameworkAttributeIndex attributeIndex = this.mAttributeIndex;
+            if(attributeIndex == null){
+                attributeIndex = FrameworkAttributeIndex.build(this);
+                this.mAttributeIndex = attributeIndex;
+            }
+            return attributeIndex;
+        }
+    }
     public int getVersionCode(){
         if(versionCode == 0 && isOptimized()){
             String version = loadProperty(PROP_VERSION_CODE);
@@ -120,6 +133,7 @@ public class FrameworkTable extends TableBlock {
         mOptimizeChecked = false;
         setFrameworkName(name);
         refresh();
+        mAttributeIndex = null;
     }
 
     private void ensureTypeBlockNonNullEntries(){
@@ -305,6 +319,27 @@ public class FrameworkTable extends TableBlock {
         }
         return getFrameworkName()+'-'+getVersionCode();
     }
+    /**
+     * Encodes the value through the attribute index when the attribute is defined on a
+     * framework table
+     *
+     * @return encode result, or null if the attribute does not belong to a framework table
+     */
+    public static EncodeResult encodeAttributeValue(ResourceEntry attribute, String value){
+        if(attribute == null){
+            return null;
+        }
+        PackageBlock packageBlock = attribute.getPackageBlock();
+        if(packageBlock == null){
+            return null;
+        }
+        TableBlock tableBlock = packageBlock.getTableBlock();
+        if(!(tableBlock instanceof FrameworkTable)){
+            return null;
+        }
+        return ((FrameworkTable) tableBlock).getAttributeIndex()
+                .encode(attribute.getResourceId(), value);
+    }
     public static FrameworkTable load(File file) throws IOException{
         return load(new FileChannelInputStream(file));
     }
@@ -225,7 +225,7 @@ public class StringData extends DataItem
         buffer[position++] = 0;
         mDataContainer.setLength(position);
     }
-    private static String decodeString(ByteReader reader) throws IOException {
+    public static String decodeString(ByteReader reader) throws IOException {
         int utf16Length = DexBlockItem.readUleb128(reader);
         char[] chars = new char[utf16Length];
         int outAt = 0;
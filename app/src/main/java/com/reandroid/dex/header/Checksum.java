@@ -39,8 +39,45 @@ public class Checksum extends HeaderPiece {
         adler32.update(bytes, start, bytes.length - start);
         setValue(adler32.getValue());
     }
+    /**
+     * Sets checksum of signature bytes followed by a block already summed as adler32,
+     * so the block is not read again after the signature changes
+     */
+    public void update(Signature signature, long adler32, long length) {
+        Adler32 signatureSum = new Adler32();
+        byte[] bytes = signature.getBytes();
+        signatureSum.update(bytes, 0, bytes.length);
+        setValue(combine(signatureSum.getValue(), adler32, length));
+    }
     @Override
     public String toString(){
         return HexUtil.toHex8(getValue());
     }
+
+    /**
+     * Same as zlib adler32_combine, also implemented by
+     * org.jf.dexlib2.writer.DexWriter#combineAdler32 for smali, keep both in sync
+     */
+    public static long combine(long adler1, long adler2, long length2){
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+        if(sum1 >= ADLER_BASE){
+            sum1 -= ADLER_BASE;
+        }
+        if(sum1 >= ADLER_BASE){
+            sum1 -= ADLER_BASE;
+        }
+        if(sum2 >= (ADLER_BASE << 1)){
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if(sum2 >= ADLER_BASE){
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static final long ADLER_BASE = 65521;
 }
@@ -26,8 +26,12 @@ import com.reandroid.arsc.item.NumberIntegerReference;
 import com.reandroid.dex.sections.SectionType;
 import com.reandroid.dex.sections.SpecialItem;
 
+import com.reandroid.utils.SHA1;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Adler32;
 
 public class DexHeader extends SpecialItem implements OffsetSupplier, BlockLoad {
 
@@ -138,12 +142,22 @@ public class DexHeader extends SpecialItem implements OffsetSupplier, BlockLoad
         }
         return null;
     }
+    /**
+     * Streams the parent through SHA-1 and adler32 at once instead of building the whole
+     * file as byte array, the checksum of the new signature is combined afterwards
+     */
     public void updateHeaderInternal(Block parent){
-        byte[] bytes = parent.getBytes();
         headerSize.set(countBytes());
-        fileSize.set(bytes.length);
-        signature.update(parent, bytes);
-        checksum.update(parent, bytes);
+        fileSize.set(parent.countBytes());
+        int start = parent.countUpTo(signature) + signature.countBytes();
+        DigestStream digestStream = new DigestStream(start);
+        try {
+            parent.writeBytes(digestStream);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        signature.update(digestStream.sha1);
+        checksum.update(signature, digestStream.adler32.getValue(), digestStream.length);
     }
     @Override
     public IntegerReference getOffsetReference() {
@@ -205,4 +219,35 @@ public class DexHeader extends SpecialItem implements OffsetSupplier, BlockLoad
     }
 
     private static final int COMMON_HEADER_SIZE = 112;
+
+    static class DigestStream extends OutputStream {
+        private long skip;
+        final SHA1 sha1;
+        final Adler32 adler32;
+        long length;
+
+        DigestStream(long skip){
+            this.skip = skip;
+            this.sha1 = new SHA1();
+            this.adler32 = new Adler32();
+        }
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if(skip > 0){
+                int amount = (int) Math.min(skip, length);
+                skip -= amount;
+                offset += amount;
+                length -= amount;
+            }
+            if(length > 0){
+                sha1.update(bytes, offset, length);
+                adler32.update(bytes, offset, length);
+                this.length += length;
+            }
+        }
+    }
 }
@@ -31,6 +31,9 @@ public class Signature extends HeaderPiece {
         sha1.update(bytes, start, bytes.length - start);
         sha1.digest(getBytesInternal());
     }
+    public void update(SHA1 sha1) {
+        sha1.digest(getBytesInternal());
+    }
     public String getHex() {
         return HexUtil.toHexString(getBytesInternal());
     }
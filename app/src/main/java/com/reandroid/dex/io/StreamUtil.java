@@ -17,6 +17,7 @@ package com.reandroid.dex.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class StreamUtil {
 
@@ -29,6 +30,9 @@ public class StreamUtil {
     public static ByteReader createByteReader(InputStream inputStream){
         return new ByteInputStreamReader(inputStream);
     }
+    public static ByteReader createByteReader(ByteBuffer buffer, int offset){
+        return new ByteBufferReader(buffer, offset);
+    }
 
     static class ByteInputStreamReader implements ByteReader {
         private final InputStream inputStream;
@@ -69,4 +73,27 @@ public class StreamUtil {
             return index;
         }
     }
+    static class ByteBufferReader implements ByteReader {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private int index;
+        ByteBufferReader(ByteBuffer buffer, int offset){
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+        @Override
+        public int read() throws IOException{
+            int position = offset + index;
+            if(position >= buffer.limit()){
+                throw new IOException("Finished reading: " + position);
+            }
+            int i = buffer.get(position) & 0xFF;
+            index++;
+            return i;
+        }
+        @Override
+        public int count() {
+            return index;
+        }
+    }
 }
@@ -407,8 +407,10 @@ public class DexFile implements DexClassRepository, Closeable,
     }
     public void write(OutputStream outputStream) throws IOException {
         requireNotClosed();
-        byte[] bytes = getBytes();
-        outputStream.write(bytes, 0, bytes.length);
+        if(isEmpty()){
+            return;
+        }
+        getDexLayout().write(outputStream);
     }
 
     public String printSectionInfo(){
@@ -0,0 +1,545 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.dex.model;
+
+import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils;
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.ArchiveEntry;
+import com.reandroid.archive.FileInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.io.ArchiveEntrySource;
+import com.reandroid.archive.io.ZipFileInput;
+import com.reandroid.archive.io.ZipInput;
+import com.reandroid.dex.base.DexBlockItem;
+import com.reandroid.dex.data.StringData;
+import com.reandroid.dex.io.ByteReader;
+import com.reandroid.dex.io.StreamUtil;
+import com.reandroid.dex.key.FieldKey;
+import com.reandroid.dex.key.MethodKey;
+import com.reandroid.dex.key.TypeKey;
+import com.reandroid.dex.sections.Marker;
+import com.reandroid.utils.collection.ArrayCollection;
+import com.reandroid.utils.io.IOUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a dex file over a (memory mapped) buffer. Only the header is parsed on open,
+ * id sections stay as offset tables in the buffer, and strings, classes and their members are
+ * decoded on first access. Use {@link #toDexFile()} to get an editable {@link DexFile}.
+ * Like {@link DexFile}, this class is not thread safe.
+ */
+public class MappedDexFile implements Iterable<MappedDexFile.MappedClass>, Closeable {
+
+    private final ByteBuffer buffer;
+    private final int stringIdsSize;
+    private final int stringIdsOffset;
+    private final int typeIdsSize;
+    private final int typeIdsOffset;
+    private final int protoIdsSize;
+    private final int protoIdsOffset;
+    private final int fieldIdsSize;
+    private final int fieldIdsOffset;
+    private final int methodIdsSize;
+    private final int methodIdsOffset;
+    private final int classDefsSize;
+    private final int classDefsOffset;
+    private final String[] strings;
+    private final MappedClass[] classes;
+    private int[] typeClassIndexes;
+    private String simpleName;
+
+    private MappedDexFile(ByteBuffer buffer) throws IOException {
+        ByteBuffer duplicate = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        duplicate.position(0);
+        this.buffer = duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer header = this.buffer;
+        if(header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC){
+            throw new IOException("Invalid dex magic");
+        }
+        this.stringIdsSize = header.getInt(0x38);
+        this.stringIdsOffset = header.getInt(0x3c);
+        this.typeIdsSize = header.getInt(0x40);
+        this.typeIdsOffset = header.getInt(0x44);
+        this.protoIdsSize = header.getInt(0x48);
+        this.protoIdsOffset = header.getInt(0x4c);
+        this.fieldIdsSize = header.getInt(0x50);
+        this.fieldIdsOffset = header.getInt(0x54);
+        this.methodIdsSize = header.getInt(0x58);
+        this.methodIdsOffset = header.getInt(0x5c);
+        this.classDefsSize = header.getInt(0x60);
+        this.classDefsOffset = header.getInt(0x64);
+        checkSection(stringIdsOffset, stringIdsSize, 4);
+        checkSection(typeIdsOffset, typeIdsSize, 4);
+        checkSection(protoIdsOffset, protoIdsSize, 12);
+        checkSection(fieldIdsOffset, fieldIdsSize, 8);
+        checkSection(methodIdsOffset, methodIdsSize, 8);
+        checkSection(classDefsOffset, classDefsSize, 32);
+        this.strings = new String[stringIdsSize];
+        this.classes = new MappedClass[classDefsSize];
+    }
+
+    public int getVersion(){
+        int version = 0;
+        for(int i = 4; i < 7; i++){
+            int ch = buffer.get(i) & 0xff;
+            if(ch < '0' || ch > '9'){
+                return 0;
+            }
+            version = version * 10 + (ch - '0');
+        }
+        return version;
+    }
+    public String getSimpleName() {
+        return simpleName;
+    }
+    public void setSimpleName(String simpleName) {
+        this.simpleName = simpleName;
+    }
+
+    public int getStringsCount(){
+        return stringIdsSize;
+    }
+    public String getString(int index) throws IOException {
+        if(index < 0 || index >= stringIdsSize){
+            return null;
+        }
+        String result = strings[index];
+        if(result == null){
+            int offset = buffer.getInt(stringIdsOffset + index * 4);
+            result = StringData.decodeString(StreamUtil.createByteReader(buffer, offset));
+            strings[index] = result;
+        }
+        return result;
+    }
+    public int getTypesCount(){
+        return typeIdsSize;
+    }
+    public String getTypeName(int index) throws IOException {
+        if(index < 0 || index >= typeIdsSize){
+            return null;
+        }
+        return getString(buffer.getInt(typeIdsOffset + index * 4));
+    }
+    /**
+     * Type ids are sorted by their string index and strings are sorted, so the search decodes
+     * only about log2(types count) strings.
+     *
+     * @return index of type id, or -1
+     */
+    public int indexOfType(String typeName) throws IOException {
+        int low = 0;
+        int high = typeIdsSize - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            int compare = getTypeName(mid).compareTo(typeName);
+            if(compare < 0){
+                low = mid + 1;
+            }else if(compare > 0){
+                high = mid - 1;
+            }else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int getClassesCount(){
+        return classDefsSize;
+    }
+    public MappedClass getMappedClass(int index){
+        MappedClass mappedClass = classes[index];
+        if(mappedClass == null){
+            mappedClass = new MappedClass(this, classDefsOffset + index * 32);
+            classes[index] = mappedClass;
+        }
+        return mappedClass;
+    }
+    public MappedClass findClass(String typeName) throws IOException {
+        int typeIndex = indexOfType(typeName);
+        if(typeIndex < 0){
+            return null;
+        }
+        int index = getTypeClassIndexes()[typeIndex];
+        if(index < 0){
+            return null;
+        }
+        return getMappedClass(index);
+    }
+    public MappedClass findClass(TypeKey typeKey) throws IOException {
+        if(typeKey == null){
+            return null;
+        }
+        return findClass(typeKey.getTypeName());
+    }
+    public boolean contains(String typeName) throws IOException {
+        return findClass(typeName) != null;
+    }
+    @Override
+    public Iterator<MappedClass> iterator() {
+        return new Iterator<MappedClass>() {
+            private int mIndex;
+            @Override
+            public boolean hasNext() {
+                return mIndex < classDefsSize;
+            }
+            @Override
+            public MappedClass next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return getMappedClass(mIndex ++);
+            }
+        };
+    }
+    /**
+     * Markers have the "~~" prefix, which sorts after other printable strings, so only the
+     * strings from the first match onwards are decoded.
+     */
+    public List<Marker> getMarkers() throws IOException {
+        List<Marker> results = new ArrayCollection<>();
+        int low = 0;
+        int high = stringIdsSize;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if(getString(mid).compareTo(MARKER_PREFIX) < 0){
+                low = mid + 1;
+            }else {
+                high = mid;
+            }
+        }
+        for(int i = low; i < stringIdsSize; i++){
+            String str = getString(i);
+            if(!Marker.hasMarkerPrefix(str)){
+                break;
+            }
+            Marker marker = Marker.parse(str);
+            if(marker != null){
+                results.add(marker);
+            }
+        }
+        return results;
+    }
+    /**
+     * Reads the whole dex into an editable model, the mapped view stays unchanged
+     */
+    public DexFile toDexFile() throws IOException {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        DexFile dexFile = DexFile.read(bytes);
+        dexFile.setSimpleName(getSimpleName());
+        return dexFile;
+    }
+    @Override
+    public void close() {
+        Arrays.fill(strings, null);
+        Arrays.fill(classes, null);
+        typeClassIndexes = null;
+    }
+
+    private int[] getTypeClassIndexes(){
+        int[] indexes = this.typeClassIndexes;
+        if(indexes == null){
+            indexes = new int[typeIdsSize];
+            Arrays.fill(indexes, -1);
+            for(int i = 0; i < classDefsSize; i++){
+                int typeIndex = buffer.getInt(classDefsOffset + i * 32);
+                if(typeIndex >= 0 && typeIndex < typeIdsSize){
+                    indexes[typeIndex] = i;
+                }
+            }
+            this.typeClassIndexes = indexes;
+        }
+        return indexes;
+    }
+    private String getTypeNameOrNull(int index) throws IOException {
+        if(index == NO_INDEX){
+            return null;
+        }
+        return getTypeName(index);
+    }
+    private String[] getTypeList(int offset) throws IOException {
+        if(offset == 0){
+            return EMPTY_STRINGS;
+        }
+        int size = buffer.getInt(offset);
+        String[] results = new String[size];
+        for(int i = 0; i < size; i++){
+            results[i] = getTypeName(buffer.getShort(offset + 4 + i * 2) & 0xffff);
+        }
+        return results;
+    }
+    private FieldKey getFieldKey(int index) throws IOException {
+        int offset = fieldIdsOffset + index * 8;
+        return new FieldKey(
+                getTypeName(buffer.getShort(offset) & 0xffff),
+                getString(buffer.getInt(offset + 4)),
+                getTypeName(buffer.getShort(offset + 2) & 0xffff));
+    }
+    private MethodKey getMethodKey(int index) throws IOException {
+        int offset = methodIdsOffset + index * 8;
+        int protoOffset = protoIdsOffset + (buffer.getShort(offset + 2) & 0xffff) * 12;
+        return new MethodKey(
+                getTypeName(buffer.getShort(offset) & 0xffff),
+                getString(buffer.getInt(offset + 4)),
+                getTypeList(buffer.getInt(protoOffset + 8)),
+                getTypeName(buffer.getInt(protoOffset + 4)));
+    }
+    private void checkSection(int offset, int size, int itemSize) throws IOException {
+        if(size < 0 || offset < 0 || (size != 0 && (long) offset + (long) size * itemSize > buffer.limit())){
+            throw new IOException("Invalid dex section: offset = " + offset + ", size = " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedDexFile{name = " + getSimpleName()
+                + ", version = " + getVersion()
+                + ", classes = " + getClassesCount() + "}";
+    }
+
+    public static MappedDexFile wrap(ByteBuffer buffer) throws IOException {
+        return new MappedDexFile(buffer);
+    }
+    public static MappedDexFile wrap(byte[] dexBytes) throws IOException {
+        return wrap(ByteBuffer.wrap(dexBytes));
+    }
+    public static MappedDexFile read(InputStream inputStream) throws IOException {
+        return wrap(IOUtil.readFully(inputStream));
+    }
+    /**
+     * Maps the dex of a file or of a stored archive entry, other sources are read to memory
+     */
+    public static MappedDexFile read(InputSource inputSource) throws IOException {
+        MappedDexFile dexFile = null;
+        if(inputSource instanceof FileInputSource){
+            dexFile = open(((FileInputSource) inputSource).getFile());
+        }else if(inputSource instanceof ArchiveEntrySource){
+            ArchiveEntrySource<?> entrySource = (ArchiveEntrySource<?>) inputSource;
+            ArchiveEntry archiveEntry = entrySource.getArchiveEntry();
+            ZipInput zipInput = entrySource.getZipSource();
+            if(archiveEntry.getMethod() == Archive.STORED && zipInput instanceof ZipFileInput){
+                dexFile = open(((ZipFileInput) zipInput).getFile(),
+                        archiveEntry.getFileOffset(), archiveEntry.getDataSize());
+            }
+        }
+        if(dexFile == null){
+            try (InputStream inputStream = inputSource.openStream()) {
+                dexFile = read(inputStream);
+            }
+        }
+        dexFile.setSimpleName(inputSource.getAlias());
+        return dexFile;
+    }
+    /**
+     * Maps the file read only, the mapping stays valid after the channel is closed
+     */
+    public static MappedDexFile open(File file) throws IOException {
+        MappedDexFile dexFile = open(file, 0, file.length());
+        dexFile.setSimpleName(file.getName());
+        return dexFile;
+    }
+    /**
+     * Maps length bytes of the file starting at offset, e.g. a dex stored uncompressed in an apk
+     */
+    public static MappedDexFile open(File file, long offset, long length) throws IOException {
+        FileChannel channel = LegacyUtils.supportsFileChannel ?
+                FileChannel.open(file.toPath(), StandardOpenOption.READ) :
+                new RandomAccessFile(file, "r").getChannel();
+        try {
+            if(offset < 0 || length < 0 || offset + length > channel.size()){
+                throw new IOException("Dex out of file range: offset = " + offset
+                        + ", length = " + length + ", file = " + file);
+            }
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Class definition view, members are decoded from class data on first access
+     */
+    public static class MappedClass {
+        private final MappedDexFile dexFile;
+        private final int offset;
+        private List<MappedField> fields;
+        private List<MappedMethod> methods;
+
+        MappedClass(MappedDexFile dexFile, int offset){
+            this.dexFile = dexFile;
+            this.offset = offset;
+        }
+        public MappedDexFile getDexFile() {
+            return dexFile;
+        }
+        public TypeKey getKey() throws IOException {
+            return TypeKey.create(getTypeName());
+        }
+        public String getTypeName() throws IOException {
+            return dexFile.getTypeName(dexFile.buffer.getInt(offset));
+        }
+        public int getAccessFlagsValue(){
+            return dexFile.buffer.getInt(offset + 4);
+        }
+        public String getSuperClassName() throws IOException {
+            return dexFile.getTypeNameOrNull(dexFile.buffer.getInt(offset + 8));
+        }
+        public String[] getInterfaceNames() throws IOException {
+            return dexFile.getTypeList(dexFile.buffer.getInt(offset + 12));
+        }
+        public String getSourceFile() throws IOException {
+            int index = dexFile.buffer.getInt(offset + 16);
+            if(index == NO_INDEX){
+                return null;
+            }
+            return dexFile.getString(index);
+        }
+        public List<MappedField> getFields() throws IOException {
+            loadClassData();
+            return fields;
+        }
+        public List<MappedMethod> getMethods() throws IOException {
+            loadClassData();
+            return methods;
+        }
+        public MappedMethod getMethod(MethodKey methodKey) throws IOException {
+            for(MappedMethod method : getMethods()){
+                if(method.getKey().equals(methodKey)){
+                    return method;
+                }
+            }
+            return null;
+        }
+        private void loadClassData() throws IOException {
+            if(methods != null){
+                return;
+            }
+            List<MappedField> fieldList = new ArrayCollection<>();
+            List<MappedMethod> methodList = new ArrayCollection<>();
+            int classDataOffset = dexFile.buffer.getInt(offset + 24);
+            if(classDataOffset != 0){
+                ByteReader reader = StreamUtil.createByteReader(dexFile.buffer, classDataOffset);
+                int staticFields = DexBlockItem.readUleb128(reader);
+                int instanceFields = DexBlockItem.readUleb128(reader);
+                int directMethods = DexBlockItem.readUleb128(reader);
+                int virtualMethods = DexBlockItem.readUleb128(reader);
+                readFields(reader, staticFields, fieldList);
+                readFields(reader, instanceFields, fieldList);
+                readMethods(reader, directMethods, true, methodList);
+                readMethods(reader, virtualMethods, false, methodList);
+            }
+            this.fields = fieldList;
+            this.methods = methodList;
+        }
+        private void readFields(ByteReader reader, int count, List<MappedField> results) throws IOException {
+            int index = 0;
+            for(int i = 0; i < count; i++){
+                index += DexBlockItem.readUleb128(reader);
+                int accessFlags = DexBlockItem.readUleb128(reader);
+                results.add(new MappedField(dexFile.getFieldKey(index), accessFlags));
+            }
+        }
+        private void readMethods(ByteReader reader, int count, boolean direct, List<MappedMethod> results) throws IOException {
+            int index = 0;
+            for(int i = 0; i < count; i++){
+                index += DexBlockItem.readUleb128(reader);
+                int accessFlags = DexBlockItem.readUleb128(reader);
+                int codeOffset = DexBlockItem.readUleb128(reader);
+                results.add(new MappedMethod(dexFile.getMethodKey(index), accessFlags, codeOffset, direct));
+            }
+        }
+        @Override
+        public String toString() {
+            try {
+                return getTypeName();
+            } catch (IOException exception) {
+                return "MappedClass{offset = " + offset + "}";
+            }
+        }
+    }
+    public static class MappedField {
+        private final FieldKey key;
+        private final int accessFlags;
+
+        MappedField(FieldKey key, int accessFlags){
+            this.key = key;
+            this.accessFlags = accessFlags;
+        }
+        public FieldKey getKey() {
+            return key;
+        }
+        public int getAccessFlagsValue() {
+            return accessFlags;
+        }
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+    }
+    public static class MappedMethod {
+        private final MethodKey key;
+        private final int accessFlags;
+        private final int codeOffset;
+        private final boolean direct;
+
+        MappedMethod(MethodKey key, int accessFlags, int codeOffset, boolean direct){
+            this.key = key;
+            this.accessFlags = accessFlags;
+            this.codeOffset = codeOffset;
+            this.direct = direct;
+        }
+        public MethodKey getKey() {
+            return key;
+        }
+        public int getAccessFlagsValue() {
+            return accessFlags;
+        }
+        public int getCodeOffset() {
+            return codeOffset;
+        }
+        public boolean isDirect() {
+            return direct;
+        }
+        public boolean isVirtual() {
+            return !direct;
+        }
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+    }
+
+    private static final int MAGIC = 0x0a786564; // "dex\n"
+    private static final int HEADER_SIZE = 0x70;
+    private static final int NO_INDEX = -1;
+    private static final String MARKER_PREFIX = "~~";
+    private static final String[] EMPTY_STRINGS = new String[0];
+}
@@ -32,6 +32,7 @@ import com.reandroid.dex.smali.model.SmaliClass;
 import com.reandroid.utils.collection.*;
 import com.reandroid.utils.io.FileUtil;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -314,9 +315,18 @@ public class DexLayout extends FixedBlockContainer implements FullRefresh {
     }
     public void write(File file) throws IOException {
         OutputStream outputStream = FileUtil.outputStream(file);
-        writeBytes(outputStream);
+        write(outputStream);
         outputStream.close();
     }
+    /**
+     * Writes sections one by one as laid out by the last refresh, the whole file is never
+     * held as a single array
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream, WRITE_BUFFER_SIZE);
+        writeBytes(bufferedStream);
+        bufferedStream.flush();
+    }
 
 
     public Object getTag() {
@@ -379,4 +389,6 @@ public class DexLayout extends FixedBlockContainer implements FullRefresh {
         int version = dexHeader.getVersion();
         return version > 0 && version < 1000;
     }
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
 }
@@ -15,24 +15,24 @@
  */
 package com.reandroid.utils;
 
-// implemented from http://www.libpng.org/pub/png/spec/1.2/PNG-CRCAppendix.html
-
 import java.io.OutputStream;
+import java.util.zip.CRC32;
 
+/*
+ * Standard zip CRC-32 as OutputStream, computed by java.util.zip.CRC32 which runs natively
+ * (and is intrinsified on most runtimes) instead of a byte-at-a-time table lookup.
+ */
 public class CRCDigest extends OutputStream {
 
-    private static final long[] CRC_TABLE = makeCrcTable();
-
-    private long mCrc;
+    private final CRC32 mCrc;
     private long mLength;
-    private byte[] oneByte;
 
     public CRCDigest() {
-        mCrc = 0xffffffffL;
+        mCrc = new CRC32();
     }
 
     public long getValue() {
-        return mCrc ^ 0xffffffffL;
+        return mCrc.getValue();
     }
     public long getLength() {
         return mLength;
@@ -40,7 +40,8 @@ public class CRCDigest extends OutputStream {
 
     @Override
     public void write(int i) {
-        write(oneByte(i), 0, 1);
+        mCrc.update(i);
+        mLength ++;
     }
     @Override
     public void write(byte[] buffer) {
@@ -48,28 +49,12 @@ public class CRCDigest extends OutputStream {
     }
     @Override
     public void write(byte[] buffer, int offset, int length) {
-        long c = mCrc;
-        int end = offset + length;
-        for (int i = offset; i < end; i++) {
-            int b = buffer[i] & 0xff;
-            c = CRC_TABLE[(int)((c ^ b) & 0xff)] ^ (c >> 8);
-        }
-        this.mCrc = c;
+        mCrc.update(buffer, offset, length);
         this.mLength += length;
     }
 
-    private byte[] oneByte(int i) {
-        byte[] bytes = this.oneByte;
-        if(bytes == null) {
-            bytes = new byte[1];
-            this.oneByte = bytes;
-        }
-        bytes[0] = (byte) i;
-        return bytes;
-    }
-
     public void update(int i) {
-        write(oneByte(i), 0, 1);
+        write(i);
     }
     public void update(byte[] buffer) {
         write(buffer, 0, buffer.length);
@@ -82,20 +67,4 @@ public class CRCDigest extends OutputStream {
     public String toString() {
         return HexUtil.toHex(null, getValue(), 8);
     }
-
-    private static long[] makeCrcTable() {
-        long[] table = new long[256];
-        for (int i = 0; i < 256; i++) {
-            long c = i;
-            for (int j = 0; j < 8; j++) {
-                if ((c & 1) == 1) {
-                    c = 0xedb88320L ^ (c >> 1);
-                } else {
-                    c = c >> 1;
-                }
-            }
-            table[i] = c;
-        }
-        return table;
-    }
 }
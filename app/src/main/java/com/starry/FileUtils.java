@@ -105,9 +105,23 @@ public class FileUtils {
 
     public static InputStream getInputStream(Uri uri, Context context) throws IOException {
      //   if(doesNotHaveStoragePerm(context)) return context.getContentResolver().openInputStream(uri);
+        File file = getReadableFile(uri, context);
+        return file != null ? getInputStream(file) : context.getContentResolver().openInputStream(uri);
+    }
+
+    /**
+     * Like getInputStream(Uri, Context) but returns a FileInputStream for readable files,
+     * so that its channel can be positioned e.g. to read a zip from its central directory
+     */
+    public static InputStream getSeekableInputStream(Uri uri, Context context) throws IOException {
+        File file = getReadableFile(uri, context);
+        return file != null ? new FileInputStream(file) : context.getContentResolver().openInputStream(uri);
+    }
+
+    private static File getReadableFile(Uri uri, Context context) {
         String filePath = getPath(uri, context);
         File file = filePath == null ? null : new File(filePath);
-        return file != null && file.canRead() ? getInputStream(file) : context.getContentResolver().openInputStream(uri);
+        return file != null && file.canRead() ? file : null;
     }
 
     private static boolean fileExists(String filePath) {
@@ -7,8 +7,10 @@ import com.hjq.language.MultiLanguages
 import com.lzy.okgo.OkGo
 import com.zane.smapiinstaller.entity.DaoMaster
 import com.zane.smapiinstaller.entity.DaoSession
+import com.zane.smapiinstaller.logic.ModIndex
 import com.zane.smapiinstaller.utils.DbOpenHelper
 import okhttp3.OkHttpClient
+import java.io.File
 
 /**
  * @author Zane
@@ -30,6 +32,7 @@ class MainApplication : Application() {
         val helper = DbOpenHelper(this, "installer-db")
         val db = helper.writableDb
         daoSession = DaoMaster(db).newSession()
+        ModIndex.init(File(cacheDir, "mod_index.json"))
     }
 
     override fun attachBaseContext(base: Context) {
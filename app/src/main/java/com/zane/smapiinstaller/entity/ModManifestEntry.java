@@ -1,6 +1,8 @@
 package com.zane.smapiinstaller.entity;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -67,6 +69,35 @@ public class ModManifestEntry {
      */
     private transient Long lastModified;
 
+    /**
+     * 复制Mod信息，依赖与资源包信息一并复制，修改副本不影响原对象
+     *
+     * @return 副本
+     */
+    public ModManifestEntry copy() {
+        final ModManifestEntry entry = new ModManifestEntry();
+        entry.assetPath = this.assetPath;
+        entry.Name = this.Name;
+        entry.UniqueID = this.UniqueID;
+        entry.Version = this.Version;
+        entry.Description = this.Description;
+        if (this.Dependencies != null) {
+            entry.Dependencies = new LinkedHashSet<>(this.Dependencies.size());
+            for (ModManifestEntry dependency : this.Dependencies) {
+                entry.Dependencies.add(dependency == null ? null : dependency.copy());
+            }
+        }
+        entry.UpdateKeys = this.UpdateKeys == null ? null : new ArrayList<>(this.UpdateKeys);
+        entry.ContentPackFor = this.ContentPackFor == null ? null : this.ContentPackFor.copy();
+        entry.MinimumVersion = this.MinimumVersion;
+        entry.IsRequired = this.IsRequired;
+        entry.CleanInstall = this.CleanInstall;
+        entry.OriginUniqueId = this.OriginUniqueId == null ? null : new ArrayList<>(this.OriginUniqueId);
+        entry.translatedDescription = this.translatedDescription;
+        entry.lastModified = this.lastModified;
+        return entry;
+    }
+
     //<editor-fold defaultstate="collapsed" desc="delombok">
     @SuppressWarnings("all")
     public ModManifestEntry() {
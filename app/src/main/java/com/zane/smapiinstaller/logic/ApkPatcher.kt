@@ -6,19 +6,19 @@ import android.content.Intent
 import android.content.pm.PackageManager
 import android.net.Uri
 import android.os.Build
-import android.os.SystemClock
 import android.provider.Settings
 import android.util.Log
 import androidx.core.content.FileProvider
 import com.afollestad.materialdialogs.MaterialDialog
 import com.android.apksig.ApkSigner
-import com.android.apksig.ApkVerifier
-import com.android.apksig.DefaultApkSignerEngine
+import com.android.apksig.util.DataSink
+import com.android.apksig.util.DataSinks
+import com.android.apksig.util.DataSource
 import com.android.apksig.util.DataSources
 import com.fasterxml.jackson.core.type.TypeReference
-import com.google.common.base.Stopwatch
-import com.google.common.base.Ticker
 import com.google.common.io.ByteStreams
+import com.reandroid.archive.ArchiveFile
+import com.reandroid.archive.ParallelArchiveExtractor
 import com.zane.smapiinstaller.BuildConfig
 import com.zane.smapiinstaller.MainActivity
 import com.zane.smapiinstaller.R
@@ -36,20 +36,15 @@ import com.zane.smapiinstaller.utils.FileUtils
 import com.zane.smapiinstaller.utils.ManifestUtil
 import com.zane.smapiinstaller.utils.StringUtils
 import com.zane.smapiinstaller.utils.ZipUtils
-import net.fornwall.apksigner.KeyStoreFileManager.JksKeyStore
 import org.apache.commons.io.FilenameUtils
 import org.apache.commons.lang3.NotImplementedException
-import org.zeroturnaround.zip.ZipUtil
 import pxb.android.axml.NodeVisitor
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.IOException
 import java.io.InputStream
 import java.io.RandomAccessFile
-import java.security.KeyStore
-import java.security.PrivateKey
-import java.security.cert.X509Certificate
-import java.util.concurrent.TimeUnit
+import java.nio.ByteBuffer
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.atomic.AtomicReference
@@ -70,14 +65,8 @@ class ApkPatcher(context: Context) {
     private val gamePackageName = AtomicReference<String?>()
     private val gameVersionCode = AtomicLong()
     val switchAction = AtomicInteger()
-    private var originSignInfo: Tuple2<ByteArray, Set<String>>? = null
     private val progressListener: MutableList<(Int) -> Unit> = ArrayList()
     private var lastProgress = -1
-    private val stopwatch = Stopwatch.createUnstarted(object : Ticker() {
-        override fun read(): Long {
-            return SystemClock.elapsedRealtimeNanos()
-        }
-    })
 
     init {
         lastProgress = -1
@@ -85,10 +74,12 @@ class ApkPatcher(context: Context) {
     }
 
     /**
-     * 依次扫描package_names.json文件对应的包名，抽取找到的第一个游戏APK到SMAPI Installer路径
+     * 依次扫描package_names.json文件对应的包名，定位找到的第一个游戏APK
+     *
+     * 默认直接以只读方式使用安装目录中的APK，不做整包复制
      *
      * @param advancedStage 0: 初始化，1: 高级安装，-1: 普通安装
-     * @return 抽取后的APK文件路径列表，如果抽取失败返回null
+     * @return APK文件路径列表（主APK在前，拆分APK按序在后），如果抽取失败返回null
      */
     fun extract(advancedStage: Int): Tuple2<List<String>, Array<String?>>? {
         emitProgress(0)
@@ -115,43 +106,24 @@ class ApkPatcher(context: Context) {
                 }
 
                 val stadewValleyBasePath = FileUtils.stadewValleyBasePath
-                val destDir = File("$stadewValleyBasePath/SMAPI Installer/")
-                if (!destDir.exists()) {
-                    destDir.mkdirs()
-                }
 
                 // 收集所有APK文件路径（主APK + 拆分APK）
                 val allApkPaths = mutableListOf<String>()
                 allApkPaths.add(sourceDir)
                 splitDirs?.forEach { if (it != null) allApkPaths.add(it) }
 
-                // 将所有APK文件复制到目标目录
-                allApkPaths.forEachIndexed { index, apkPath ->
-                    val srcFile = File(apkPath)
-                    val destFile = File(destDir, "base_${index}.apk")
-                    srcFile.copyTo(destFile, overwrite = true)
-                    emitProgress(10 + (index * 80 / allApkPaths.size))
-                }
-
-                // 返回复制后的APK文件路径列表
-                val copiedApkPaths = allApkPaths.mapIndexed { index, _ ->
-                    File(destDir, "base_${index}.apk").absolutePath
-                }
-
                 if (advancedStage == 0) {
                     // 初始化阶段提取资源
-                    val count = AtomicInteger()
-                    ZipUtil.unpack(
-                        File(sourceDir), File("$stadewValleyBasePath/StardewValley/")
-                    ) { name ->
-                        if (name.startsWith("assets/")) {
-                            val progress = count.incrementAndGet()
-                            if (progress % 30 == 0) {
-                                emitProgress(progress / 30)
+                    ArchiveFile(File(sourceDir)).use { archive ->
+                        val extractor = ParallelArchiveExtractor(archive)
+                        extractor.setProgressListener { extractedBytes, totalBytes ->
+                            if (totalBytes > 0) {
+                                emitProgress((extractedBytes * 100 / totalBytes).toInt())
                             }
-                            return@unpack name.replaceFirst("assets/".toRegex(), "")
                         }
-                        null
+                        extractor.extractDirectory(
+                            "assets/", File("$stadewValleyBasePath/StardewValley/")
+                        )
                     }
                 } else if (advancedStage == 1) {
                     // 高级安装阶段确保资源存在
@@ -161,7 +133,7 @@ class ApkPatcher(context: Context) {
                     }
                 }
 
-                Tuple2(copiedApkPaths, arrayOfNulls(0))
+                Tuple2(allApkPaths, arrayOfNulls(0))
             } catch (ignored: PackageManager.NameNotFoundException) {
                 null
             }
@@ -170,10 +142,6 @@ class ApkPatcher(context: Context) {
         return null
     }
 
-
-
-
-
     /**
      * 重新签名安装包
      *
@@ -186,56 +154,42 @@ class ApkPatcher(context: Context) {
             emitProgress(47)
             val signApkPath =
                 stadewValleyBasePath + "/SMAPI Installer/" + FilenameUtils.getBaseName(apkPath) + "_signed.apk"
-            val ks: KeyStore = JksKeyStore()
-            context.assets.open("debug.keystore.dat")
-                .use { fis -> ks.load(fis, PASSWORD.toCharArray()) }
-            val alias = ks.aliases().nextElement()
-            val publicKey = ks.getCertificate(alias) as X509Certificate
-            val privateKey = ks.getKey(alias, "android".toCharArray()) as PrivateKey
+            // 签名密钥与未变化条目的v1摘要在会话中复用
+            val signerEngine = SigningSession.get(context).createEngine()
             emitProgress(49)
             val outputFile = File(signApkPath)
-            val engineSignerConfigs = listOf(
-                DefaultApkSignerEngine.SignerConfig.Builder(
-                    "debug", privateKey, listOf(publicKey)
-                ).build()
-            )
-            val signerEngine =
-                DefaultApkSignerEngine.Builder(engineSignerConfigs, 19).setV1SigningEnabled(true)
-                    .setV2SigningEnabled(true).setV3SigningEnabled(false).build()
-            if (originSignInfo != null && originSignInfo!!.first != null) {
-                signerEngine.initWith(originSignInfo!!.first, originSignInfo!!.second)
-            }
-            val zipOpElapsed = stopwatch.elapsed(TimeUnit.MILLISECONDS)
-            stopwatch.reset()
-            val thread = Thread(Runnable {
-                stopwatch.start()
-                while (true) {
-                    try {
-                        Thread.sleep(200)
-                        val elapsed = stopwatch.elapsed(TimeUnit.MILLISECONDS)
-                        val progress = elapsed * 0.98 / zipOpElapsed
-                        if (progress < 1.0) {
-                            emitProgress((49 + 45 * progress).toInt())
-                        }
-                    } catch (ignored: InterruptedException) {
-                        return@Runnable
+            val result = signerEngine.use {
+                // 签名需读取输入APK一次，并为v2签名对输出APK做一次分块摘要，进度按实际处理的字节数计算
+                val totalBytes = maxOf(1L, File(apkPath).length() * 2)
+                val processedBytes = AtomicLong()
+                val onBytes: (Long) -> Unit = { count ->
+                    val processed = processedBytes.addAndGet(count)
+                    emitProgress((49 + 45 * minOf(processed, totalBytes) / totalBytes).toInt())
+                }
+                RandomAccessFile(apkPath, "r").use { inputApkFile ->
+                    RandomAccessFile(outputFile, "rw").use { outputApkFile ->
+                        outputApkFile.setLength(0)
+                        val outputApkIn = DataSources.asDataSource(outputApkFile)
+                        val signer = ApkSigner.Builder(signerEngine)
+                            .setInputApk(
+                                ProgressDataSource(
+                                    DataSources.asDataSource(inputApkFile, 0, inputApkFile.length()),
+                                    onBytes
+                                )
+                            )
+                            .setOutputApk(
+                                DataSinks.asDataSink(outputApkFile), ProgressDataSource(outputApkIn, onBytes)
+                            ).build()
+                        signer.sign()
+                        // 使用签名时计算的摘要校验输出，无需再次完整读取，仅复用摘要的条目会对照输出检查
+                        signerEngine.verifyOutputApk(outputApkIn)
                     }
                 }
-            })
-            thread.start()
-            RandomAccessFile(apkPath, "r").use { inputApkFile ->
-                val signer = ApkSigner.Builder(signerEngine)
-                    .setInputApk(DataSources.asDataSource(inputApkFile, 0, inputApkFile.length()))
-                    .setOutputApk(outputFile).build()
-                signer.sign()
             }
             org.zeroturnaround.zip.commons.FileUtils.forceDelete(File(apkPath))
-            val result = ApkVerifier.Builder(outputFile).build().verify()
-            if (thread.isAlive && !thread.isInterrupted) {
-                thread.interrupt()
-            }
-            if (result.containsErrors() && result.errors.size > 0) {
-                errorMessage.set(result.errors.joinToString(",") { issueWithParams -> issueWithParams.toString() })
+            if (result.containsErrors()) {
+                val errors = result.errors + result.signers.flatMap { signer -> signer.errors }
+                errorMessage.set(errors.joinToString(",") { issue -> issue.toString() })
                 return null
             }
             emitProgress(95)
@@ -314,6 +268,7 @@ class ApkPatcher(context: Context) {
         return gameVersionCode.get()
     }
 
+    @Synchronized
     private fun emitProgress(progress: Int) {
         if (lastProgress < progress) {
             lastProgress = progress
@@ -327,8 +282,36 @@ class ApkPatcher(context: Context) {
         progressListener.add(listener)
     }
 
+    /**
+     * 统计读取字节数的数据源，用于报告签名进度
+     */
+    private class ProgressDataSource(
+        private val dataSource: DataSource, private val onBytes: (Long) -> Unit
+    ) : DataSource {
+        override fun size(): Long = dataSource.size()
+
+        override fun feed(offset: Long, size: Long, sink: DataSink) {
+            dataSource.feed(offset, size, sink)
+            onBytes.invoke(size)
+        }
+
+        override fun getByteBuffer(offset: Long, size: Int): ByteBuffer {
+            val buffer = dataSource.getByteBuffer(offset, size)
+            onBytes.invoke(size.toLong())
+            return buffer
+        }
+
+        override fun copyTo(offset: Long, size: Int, dest: ByteBuffer) {
+            dataSource.copyTo(offset, size, dest)
+            onBytes.invoke(size.toLong())
+        }
+
+        override fun slice(offset: Long, size: Long): DataSource {
+            return ProgressDataSource(dataSource.slice(offset, size), onBytes)
+        }
+    }
+
     companion object {
-        private const val PASSWORD = "android"
         private const val TAG = "PATCHER"
     }
 }
\ No newline at end of file
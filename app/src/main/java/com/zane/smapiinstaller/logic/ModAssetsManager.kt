@@ -10,10 +10,7 @@ import androidx.navigation.Navigation.findNavController
 import com.fasterxml.jackson.core.type.TypeReference
 import com.google.common.base.Joiner
 import com.google.common.collect.ImmutableList
-import com.google.common.collect.ImmutableListMultimap
-import com.google.common.collect.Lists
 import com.google.common.collect.Multimaps
-import com.google.common.collect.Queues
 import com.lzy.okgo.OkGo
 import com.lzy.okgo.model.Response
 import com.microsoft.appcenter.crashes.Crashes
@@ -156,12 +153,12 @@ class ModAssetsManager(private val root: View) {
      * @param returnCallback 回调函数
      */
     fun checkModEnvironment(returnCallback: (Boolean) -> Unit) {
-        val installedModMap = Multimaps.index(findAllInstalledMods(true)) { obj -> obj!!.uniqueID }
-        checkDuplicateMod(installedModMap) { isConfirm ->
+        val index = ModIndex.query(true)
+        checkDuplicateMod(index) { isConfirm ->
             if (isConfirm) {
-                checkUnsatisfiedDependencies(installedModMap) { isConfirm2 ->
+                checkUnsatisfiedDependencies(index) { isConfirm2 ->
                     if (isConfirm2) {
-                        checkContentpacks(installedModMap, returnCallback)
+                        checkContentpacks(index, returnCallback)
                     } else {
                         returnCallback.invoke(false)
                     }
@@ -175,20 +172,16 @@ class ModAssetsManager(private val root: View) {
     /**
      * 检查是否有重复Mod
      *
-     * @param installedModMap 已安装Mod集合
-     * @param returnCallback  回调函数
+     * @param index          已安装Mod索引
+     * @param returnCallback 回调函数
      */
     private fun checkDuplicateMod(
-        installedModMap: ImmutableListMultimap<String, ModManifestEntry>,
+        index: ModIndex.Query,
         returnCallback: (Boolean) -> Unit
     ) {
         // Duplicate mod check
-        val list = Lists.newArrayList<String?>()
-        for (key in installedModMap.keySet()) {
-            val installedMods = installedModMap[key]
-            if (installedMods.size > 1) {
-                list.add(installedMods.joinToString(",") { item -> FileUtils.toPrettyPath(item.assetPath) })
-            }
+        val list = index.findDuplicates().map { installedMods ->
+            installedMods.joinToString(",") { item -> FileUtils.toPrettyPath(item.assetPath) }
         }
         if (!list.isEmpty()) {
             DialogUtils.showConfirmDialog(
@@ -206,15 +199,31 @@ class ModAssetsManager(private val root: View) {
     /**
      * 检查是否有依赖关系缺失
      *
-     * @param installedModMap 已安装Mod集合
-     * @param returnCallback  回调函数
+     * @param index          已安装Mod索引
+     * @param returnCallback 回调函数
      */
     private fun checkUnsatisfiedDependencies(
-        installedModMap: ImmutableListMultimap<String, ModManifestEntry>,
+        index: ModIndex.Query,
         returnCallback: (Boolean) -> Unit
     ) {
-        val dependencyErrors = installedModMap.values()
-            .mapNotNull { mod -> checkModDependencyError(mod, installedModMap) }.toList()
+        // 按被依赖的Mod分组，每个被依赖的Mod只查找一次，缺失的依赖按Mod汇总
+        val unsatisfiedDependencies =
+            LinkedHashMap<String, Tuple2<ModManifestEntry, MutableList<ModManifestEntry>>>()
+        for (uniqueId in index.dependencyIds) {
+            val entries = index.findByUniqueId(uniqueId)
+            for (mod in index.findDependents(uniqueId)) {
+                mod.dependencies.filter { dependency ->
+                    dependency != null && StringUtils.equalsIgnoreCase(dependency.uniqueID, uniqueId)
+                            && isDependencyIsExist(dependency, entries)
+                }.forEach { dependency ->
+                    unsatisfiedDependencies.getOrPut(mod.assetPath) { Tuple2(mod, ArrayList()) }
+                        .second.add(dependency)
+                }
+            }
+        }
+        val dependencyErrors = unsatisfiedDependencies.values.map { item ->
+            checkModDependencyError(item.first, item.second)
+        }
         if (dependencyErrors.isNotEmpty()) {
             DialogUtils.showConfirmDialog(
                 root,
@@ -245,18 +254,19 @@ class ModAssetsManager(private val root: View) {
     /**
      * 检查是否有资源包依赖Mod没有安装
      *
-     * @param installedModMap 已安装Mod集合
-     * @param returnCallback  回调函数
+     * @param index          已安装Mod索引
+     * @param returnCallback 回调函数
      */
     private fun checkContentpacks(
-        installedModMap: ImmutableListMultimap<String, ModManifestEntry>,
+        index: ModIndex.Query,
         returnCallback: (Boolean) -> Unit
     ) {
-        val dependencyErrors = installedModMap.values().mapNotNull { mod ->
-            checkContentPackDependencyError(
-                mod, installedModMap
-            )
-        }.toList()
+        val dependencyErrors = index.contentPackForIds.flatMap { uniqueId ->
+            val entries = index.findByUniqueId(uniqueId)
+            index.findContentPacksFor(uniqueId).mapNotNull { mod ->
+                checkContentPackDependencyError(mod, entries)
+            }
+        }
         if (dependencyErrors.isNotEmpty()) {
             DialogUtils.showConfirmDialog(
                 root,
@@ -334,8 +344,7 @@ class ModAssetsManager(private val root: View) {
         if (checkUpdating.get()) {
             return
         }
-        val list = findAllInstalledMods(false).asSequence()
-            .filter { mod -> mod.updateKeys != null && mod.updateKeys.isNotEmpty() }
+        val list = ModIndex.query().findUpdatable().asSequence()
             .map { mod -> ModInfo.fromModManifestEntry(mod) }.distinct()
             .filter { modInfo -> modInfo.installedVersion != null }.toList()
         val context = getActivityFromView(root) ?: return
@@ -372,42 +381,28 @@ class ModAssetsManager(private val root: View) {
     }
 
     private fun checkModDependencyError(
-        mod: ModManifestEntry, installedModMap: ImmutableListMultimap<String, ModManifestEntry>
-    ): Tuple2<String?, List<String?>>? {
-        if (mod.dependencies != null) {
-            val unsatisfiedDependencies = mod.dependencies.filter { dependency ->
-                isDependencyIsExist(
-                    dependency, installedModMap
-                )
-            }.toList()
-            if (unsatisfiedDependencies.isNotEmpty()) {
-                return Tuple2(
-                    root.context.getString(R.string.error_depends_on_mod,
-                        mod.uniqueID,
-                        unsatisfiedDependencies.joinToString(",") { obj -> obj.uniqueID }),
-                    unsatisfiedDependencies.map { obj -> obj.uniqueID }.toList()
-                )
-            }
-        }
-        return null
+        mod: ModManifestEntry, unsatisfiedDependencies: List<ModManifestEntry>
+    ): Tuple2<String?, List<String?>> {
+        return Tuple2(
+            root.context.getString(R.string.error_depends_on_mod,
+                mod.uniqueID,
+                unsatisfiedDependencies.joinToString(",") { obj -> obj.uniqueID }),
+            unsatisfiedDependencies.map { obj -> obj.uniqueID }.toList()
+        )
     }
 
+    /**
+     * @param entries 依赖的唯一ID对应的已安装Mod
+     */
     private fun isDependencyIsExist(
         dependency: ModManifestEntry,
-        installedModMap: ImmutableListMultimap<String, ModManifestEntry>
+        entries: List<ModManifestEntry>
     ): Boolean {
         if (dependency.isRequired != null && !dependency.isRequired) {
             return false
         }
-        var entries = installedModMap[dependency.uniqueID]
-        if (entries.size == 0) {
-            for (key in installedModMap.keySet()) {
-                if (StringUtils.equalsIgnoreCase(key, dependency.uniqueID)) {
-                    dependency.uniqueID = key
-                    entries = installedModMap[dependency.uniqueID]
-                    break
-                }
-            }
+        if (entries.isNotEmpty()) {
+            dependency.uniqueID = entries[0].uniqueID
         }
         if (entries.size != 1) {
             return true
@@ -421,23 +416,19 @@ class ModAssetsManager(private val root: View) {
         } else VersionUtil.compareVersion(version, dependency.minimumVersion) < 0
     }
 
+    /**
+     * @param entries 资源包所属的唯一ID对应的已安装Mod
+     */
     private fun checkContentPackDependencyError(
-        mod: ModManifestEntry, installedModMap: ImmutableListMultimap<String, ModManifestEntry>
+        mod: ModManifestEntry, entries: List<ModManifestEntry>
     ): Tuple2<String?, String?>? {
         val dependency = mod.contentPackFor
         if (dependency != null) {
             if (dependency.isRequired != null && !dependency.isRequired) {
                 return null
             }
-            var entries = installedModMap[dependency.uniqueID]
-            if (entries.size == 0) {
-                for (key in installedModMap.keySet()) {
-                    if (StringUtils.equalsIgnoreCase(key, dependency.uniqueID)) {
-                        dependency.uniqueID = key
-                        entries = installedModMap[dependency.uniqueID]
-                        break
-                    }
-                }
+            if (entries.isNotEmpty()) {
+                dependency.uniqueID = entries[0].uniqueID
             }
             if (entries.size != 1) {
                 return Tuple2(
@@ -478,33 +469,7 @@ class ModAssetsManager(private val root: View) {
          */
         @JvmStatic
         fun findFirstModIf(filter: (ModManifestEntry) -> Boolean): ModManifestEntry? {
-            val files = Queues.newConcurrentLinkedQueue<File>()
-            files.add(File(FileUtils.stadewValleyBasePath, Constants.MOD_PATH))
-            do {
-                val currentFile = files.poll()
-                if (currentFile != null && currentFile.exists()) {
-                    var foundManifest = false
-                    val listFiles = currentFile.listFiles { obj -> obj.isFile } ?: continue
-                    for (file in listFiles) {
-                        if (StringUtils.equalsIgnoreCase(file.name, "manifest.json")) {
-                            val manifest = FileUtils.getFileJson(file, ModManifestEntry::class.java)
-                            foundManifest = true
-                            if (manifest != null) {
-                                manifest.assetPath = file.parentFile?.absolutePath
-                                if (filter.invoke(manifest)) {
-                                    return manifest
-                                }
-                            }
-                            break
-                        }
-                    }
-                    if (!foundManifest) {
-                        val subFolder = currentFile.listFiles { obj -> obj.isDirectory }
-                        subFolder?.let { files.addAll(Lists.newArrayList(*it)) }
-                    }
-                }
-            } while (!files.isEmpty())
-            return null
+            return ModIndex.findFirst(filter)
         }
 
         /**
@@ -515,44 +480,7 @@ class ModAssetsManager(private val root: View) {
          */
         @JvmOverloads
         fun findAllInstalledMods(ignoreDisabledMod: Boolean = false): MutableList<ModManifestEntry> {
-            val files = Queues.newConcurrentLinkedQueue<File>()
-            files.add(File(FileUtils.stadewValleyBasePath, Constants.MOD_PATH))
-            val mods: MutableList<ModManifestEntry> = ArrayList(30)
-            do {
-                val currentFile = files.poll()
-                if (currentFile != null && currentFile.exists()) {
-                    var foundManifest = false
-                    val listFiles = currentFile.listFiles { obj -> obj.isFile }
-                    if (listFiles != null) {
-                        for (file in listFiles) {
-                            if (StringUtils.equalsIgnoreCase(file.name, "manifest.json")) {
-                                val manifest =
-                                    FileUtils.getFileJson(file, ModManifestEntry::class.java)
-                                foundManifest = true
-                                if (manifest != null && StringUtils.isNoneBlank(manifest.uniqueID)) {
-                                    if (ignoreDisabledMod && StringUtils.startsWith(
-                                            file.parentFile?.name, "."
-                                        )
-                                    ) {
-                                        break
-                                    }
-                                    manifest.assetPath = file.parentFile?.absolutePath
-                                    manifest.lastModified = file.lastModified()
-                                    mods.add(manifest)
-                                }
-                                break
-                            }
-                        }
-                    }
-                    if (!foundManifest) {
-                        val listDirectories = currentFile.listFiles { obj -> obj.isDirectory }
-                        if (listDirectories != null) {
-                            files.addAll(Lists.newArrayList(*listDirectories))
-                        }
-                    }
-                }
-            } while (!files.isEmpty())
-            return mods
+            return ModIndex.findAll(ignoreDisabledMod)
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+package com.zane.smapiinstaller.logic
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect
+import com.google.common.collect.ImmutableListMultimap
+import com.zane.smapiinstaller.constant.Constants
+import com.zane.smapiinstaller.entity.ModManifestEntry
+import com.zane.smapiinstaller.utils.FileUtils
+import org.apache.commons.lang3.StringUtils
+import java.io.File
+import java.util.ArrayDeque
+
+/**
+ * 已安装Mod索引
+ *
+ * 以目录路径为键缓存目录结构与manifest解析结果并持久化。每次查询只做一轮文件状态比对：
+ * Mod目录比对manifest的修改时间与大小，其余目录比对目录修改时间与条目名称，有变化时才重新列目录或解析manifest
+ *
+ * @author Zane
+ */
+object ModIndex {
+    private const val INDEX_VERSION = 2
+    private const val MANIFEST_NAME = "manifest.json"
+
+    private var indexFile: File? = null
+    private var loaded = false
+    private var nodes: MutableMap<String, Node> = HashMap()
+    private var snapshot: Snapshot? = null
+
+    /**
+     * 设置索引持久化文件，未设置时只在内存中缓存
+     *
+     * @param file 索引文件
+     */
+    @Synchronized
+    fun init(file: File) {
+        indexFile = file
+        loaded = false
+    }
+
+    /**
+     * 查找全部已识别Mod
+     *
+     * @param ignoreDisabledMod 是否忽略禁用的mod
+     * @return Mod信息列表，可自由修改
+     */
+    fun findAll(ignoreDisabledMod: Boolean = false): MutableList<ModManifestEntry> {
+        return query(ignoreDisabledMod).findAll()
+    }
+
+    /**
+     * 校验一次索引，返回可多次查询的结果，避免每次查询都重新比对文件状态
+     *
+     * @param ignoreDisabledMod 是否忽略禁用的mod
+     * @return 查询结果
+     */
+    fun query(ignoreDisabledMod: Boolean = false): Query {
+        val snapshot = refresh()
+        return if (ignoreDisabledMod) snapshot.enabled else snapshot.all
+    }
+
+    /**
+     * 查找第一个匹配的Mod，包含未声明唯一ID的manifest
+     *
+     * @param filter 过滤规则
+     * @return Mod信息
+     */
+    fun findFirst(filter: (ModManifestEntry) -> Boolean): ModManifestEntry? {
+        return refresh().manifests.asSequence().map { mod -> mod.copy() }.firstOrNull(filter)
+    }
+
+    /**
+     * 校验索引，只重新读取发生变化的目录与manifest
+     *
+     * @return 最新的索引快照
+     */
+    @Synchronized
+    private fun refresh(): Snapshot {
+        load()
+        val visited: MutableMap<String, Node> = HashMap(nodes.size)
+        val manifests: MutableList<ModManifestEntry> = ArrayList(nodes.size)
+        var changed = false
+        val queue = ArrayDeque<File>()
+        queue.add(File(FileUtils.stadewValleyBasePath, Constants.MOD_PATH))
+        while (queue.isNotEmpty()) {
+            val dir = queue.poll()!!
+            var node = nodes[dir.absolutePath]
+            if (node == null || !node.isValid(dir)) {
+                node = scan(dir) ?: continue
+                changed = true
+            }
+            visited[node.path] = node
+            if (node.manifestName != null) {
+                node.manifest?.let { manifests.add(it) }
+            } else {
+                node.children?.forEach { name -> queue.add(File(dir, name)) }
+            }
+        }
+        if (changed || visited.size != nodes.size) {
+            nodes = visited
+            save()
+        } else {
+            snapshot?.let { return it }
+        }
+        // 从持久化文件载入且没有变化时也需要构建快照
+        return Snapshot(manifests).also { snapshot = it }
+    }
+
+    private fun scan(dir: File): Node? {
+        // 先取修改时间再列目录，列目录期间的变化会在下次校验时发现
+        val modified = dir.lastModified()
+        val files = dir.listFiles() ?: return null
+        val node = Node()
+        node.path = dir.absolutePath
+        node.modified = modified
+        val manifestFile =
+            files.firstOrNull { file -> file.isFile && StringUtils.equalsIgnoreCase(file.name, MANIFEST_NAME) }
+        if (manifestFile != null) {
+            node.manifestName = manifestFile.name
+            node.manifestModified = manifestFile.lastModified()
+            node.manifestSize = manifestFile.length()
+            node.manifest = FileUtils.getFileJson(manifestFile, ModManifestEntry::class.java)
+            node.attach()
+        } else {
+            node.children = files.filter { file -> file.isDirectory }.map { file -> file.name }
+            node.names = files.map { file -> file.name }.sorted()
+        }
+        return node
+    }
+
+    private fun load() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+        val file = indexFile ?: return
+        if (!file.exists()) {
+            return
+        }
+        val data = FileUtils.getFileJson(file, IndexData::class.java)
+        if (data == null || data.version != INDEX_VERSION) {
+            return
+        }
+        val map: MutableMap<String, Node> = HashMap(data.nodes.size)
+        for (node in data.nodes) {
+            node.attach()
+            map[node.path] = node
+        }
+        nodes = map
+    }
+
+    private fun key(uniqueId: String?): String {
+        return uniqueId?.lowercase() ?: ""
+    }
+
+    private fun save() {
+        val file = indexFile ?: return
+        val data = IndexData()
+        data.version = INDEX_VERSION
+        data.nodes = ArrayList(nodes.values)
+        FileUtils.writeFileJson(file, data)
+    }
+
+    /**
+     * 索引快照，构建后不再修改
+     */
+    private class Snapshot(val manifests: List<ModManifestEntry>) {
+        val all = Query(manifests.filter { mod -> StringUtils.isNoneBlank(mod.uniqueID) })
+        val enabled by lazy {
+            Query(all.mods.filter { mod ->
+                !StringUtils.startsWith(File(mod.assetPath).name, Constants.HIDDEN_FILE_PREFIX)
+            })
+        }
+    }
+
+    /**
+     * 一次索引校验的查询结果，唯一ID均忽略大小写，返回的Mod信息均为副本
+     */
+    class Query internal constructor(internal val mods: List<ModManifestEntry>) {
+        private val byUniqueId: ImmutableListMultimap<String, ModManifestEntry>
+        private val byDependency: ImmutableListMultimap<String, ModManifestEntry>
+        private val byContentPackFor: ImmutableListMultimap<String, ModManifestEntry>
+
+        init {
+            val uniqueIdBuilder = ImmutableListMultimap.builder<String, ModManifestEntry>()
+            val dependencyBuilder = ImmutableListMultimap.builder<String, ModManifestEntry>()
+            val contentPackBuilder = ImmutableListMultimap.builder<String, ModManifestEntry>()
+            for (mod in mods) {
+                uniqueIdBuilder.put(key(mod.uniqueID), mod)
+                mod.dependencies?.filterNotNull()?.map { dependency -> key(dependency.uniqueID) }
+                    ?.distinct()?.forEach { id -> dependencyBuilder.put(id, mod) }
+                mod.contentPackFor?.let { pack -> contentPackBuilder.put(key(pack.uniqueID), mod) }
+            }
+            byUniqueId = uniqueIdBuilder.build()
+            byDependency = dependencyBuilder.build()
+            byContentPackFor = contentPackBuilder.build()
+        }
+
+        /**
+         * 被依赖Mod的唯一ID（小写）
+         */
+        val dependencyIds: Set<String>
+            get() = byDependency.keySet()
+
+        /**
+         * 资源包所属Mod的唯一ID（小写）
+         */
+        val contentPackForIds: Set<String>
+            get() = byContentPackFor.keySet()
+
+        /**
+         * 查找全部Mod
+         *
+         * @return Mod信息列表，可自由修改
+         */
+        fun findAll(): MutableList<ModManifestEntry> {
+            return mods.mapTo(ArrayList(mods.size)) { mod -> mod.copy() }
+        }
+
+        /**
+         * 查找唯一ID重复的Mod
+         *
+         * @return 每组重复的Mod信息列表
+         */
+        fun findDuplicates(): List<List<ModManifestEntry>> {
+            return byUniqueId.asMap().values.filter { list -> list.size > 1 }
+                .map { list -> list.map { mod -> mod.copy() } }
+        }
+
+        /**
+         * 按唯一ID查找Mod
+         *
+         * @param uniqueId 唯一ID
+         * @return Mod信息列表
+         */
+        fun findByUniqueId(uniqueId: String?): List<ModManifestEntry> {
+            return byUniqueId[key(uniqueId)].map { mod -> mod.copy() }
+        }
+
+        /**
+         * 查找依赖指定Mod的Mod
+         *
+         * @param uniqueId 被依赖Mod的唯一ID
+         * @return Mod信息列表
+         */
+        fun findDependents(uniqueId: String?): List<ModManifestEntry> {
+            return byDependency[key(uniqueId)].map { mod -> mod.copy() }
+        }
+
+        /**
+         * 查找指定Mod的资源包
+         *
+         * @param uniqueId 资源包所属Mod的唯一ID
+         * @return Mod信息列表
+         */
+        fun findContentPacksFor(uniqueId: String?): List<ModManifestEntry> {
+            return byContentPackFor[key(uniqueId)].map { mod -> mod.copy() }
+        }
+
+        /**
+         * 查找声明了更新键的Mod
+         *
+         * @return Mod信息列表
+         */
+        fun findUpdatable(): List<ModManifestEntry> {
+            return mods.filter { mod -> !mod.updateKeys.isNullOrEmpty() }.map { mod -> mod.copy() }
+        }
+    }
+
+    /**
+     * 目录索引节点，manifestName不为空时为Mod目录，否则记录子目录名称与全部条目名称
+     */
+    @JsonAutoDetect(
+        fieldVisibility = JsonAutoDetect.Visibility.ANY,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE
+    )
+    private class Node {
+        var path: String = ""
+        var modified: Long = 0
+        var manifestName: String? = null
+        var manifestModified: Long = 0
+        var manifestSize: Long = 0
+        var manifest: ModManifestEntry? = null
+        var children: List<String>? = null
+        var names: List<String>? = null
+
+        /**
+         * 仅比对文件状态与目录条目名称，不读取内容
+         *
+         * 修改时间精度较低的存储上，同一时间单位内的新增或删除不会改变目录修改时间，因此同时比对条目名称
+         */
+        fun isValid(dir: File): Boolean {
+            val name = manifestName
+            if (name != null) {
+                val file = File(dir, name)
+                val lastModified = file.lastModified()
+                return lastModified != 0L && lastModified == manifestModified && file.length() == manifestSize
+            }
+            val lastModified = dir.lastModified()
+            if (lastModified == 0L || lastModified != modified) {
+                return false
+            }
+            val list = dir.list() ?: return false
+            list.sort()
+            return list.asList() == names
+        }
+
+        /**
+         * 补全manifest中不参与序列化的字段
+         */
+        fun attach() {
+            manifest?.let { mod ->
+                mod.assetPath = path
+                mod.lastModified = manifestModified
+            }
+        }
+    }
+
+    @JsonAutoDetect(
+        fieldVisibility = JsonAutoDetect.Visibility.ANY,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE
+    )
+    private class IndexData {
+        var version: Int = 0
+        var nodes: List<Node> = emptyList()
+    }
+}
@@ -0,0 +1,87 @@
+package com.zane.smapiinstaller.logic
+
+import android.content.Context
+import com.android.apksig.DefaultApkSignerEngine
+import net.fornwall.apksigner.KeyStoreFileManager.JksKeyStore
+import java.nio.ByteBuffer
+import java.security.KeyStore
+import java.security.PrivateKey
+import java.security.cert.X509Certificate
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 签名会话
+ *
+ * 进程内只解码一次签名密钥并复用签名配置，同时按条目压缩数据的SHA-256缓存v1条目摘要，
+ * 重复签名时压缩数据未变化的条目无需再次解压计算摘要
+ *
+ * @author Zane
+ */
+class SigningSession private constructor(
+    private val signerConfigs: List<DefaultApkSignerEngine.SignerConfig>
+) : DefaultApkSignerEngine.JarEntryDigestCache {
+    private val digests = ConcurrentHashMap<DigestKey, ByteArray>()
+
+    /**
+     * 创建使用本会话密钥与摘要缓存的签名引擎
+     *
+     * @return 签名引擎，使用后需关闭
+     */
+    fun createEngine(): DefaultApkSignerEngine {
+        val signerEngine = DefaultApkSignerEngine.Builder(signerConfigs, 19).setV1SigningEnabled(true)
+            .setV2SigningEnabled(true).setV3SigningEnabled(false).build()
+        signerEngine.setJarEntryDigestCache(this)
+        return signerEngine
+    }
+
+    override fun get(storedDataDigest: ByteArray, jcaDigestAlgorithm: String): ByteArray? {
+        return digests[DigestKey(ByteBuffer.wrap(storedDataDigest), jcaDigestAlgorithm)]
+    }
+
+    override fun put(storedDataDigest: ByteArray, jcaDigestAlgorithm: String, digest: ByteArray) {
+        // 游戏更新后旧条目不会再命中，超出上限时整体丢弃
+        if (digests.size >= MAX_CACHED_DIGESTS) {
+            digests.clear()
+        }
+        digests[DigestKey(ByteBuffer.wrap(storedDataDigest), jcaDigestAlgorithm)] = digest
+    }
+
+    /**
+     * 摘要缓存键，[ByteBuffer]按内容比较，引擎传入的摘要数组不会再被修改
+     */
+    private data class DigestKey(val storedDataDigest: ByteBuffer, val jcaDigestAlgorithm: String)
+
+    companion object {
+        private const val KEYSTORE_NAME = "debug.keystore.dat"
+        private const val PASSWORD = "android"
+        private const val SIGNER_NAME = "debug"
+        private const val MAX_CACHED_DIGESTS = 65536
+
+        @Volatile
+        private var instance: SigningSession? = null
+
+        /**
+         * 获取签名会话，首次调用时加载签名密钥
+         *
+         * @param context 上下文
+         * @return 签名会话
+         */
+        @JvmStatic
+        fun get(context: Context): SigningSession {
+            instance?.let { return it }
+            synchronized(this) {
+                instance?.let { return it }
+                val ks: KeyStore = JksKeyStore()
+                context.assets.open(KEYSTORE_NAME).use { fis -> ks.load(fis, PASSWORD.toCharArray()) }
+                val alias = ks.aliases().nextElement()
+                val publicKey = ks.getCertificate(alias) as X509Certificate
+                val privateKey = ks.getKey(alias, PASSWORD.toCharArray()) as PrivateKey
+                val session = SigningSession(
+                    listOf(DefaultApkSignerEngine.SignerConfig.Builder(SIGNER_NAME, privateKey, listOf(publicKey)).build())
+                )
+                instance = session
+                return session
+            }
+        }
+    }
+}
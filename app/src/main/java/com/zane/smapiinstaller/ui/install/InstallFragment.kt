@@ -16,6 +16,8 @@ import com.reandroid.apkeditor.compile.BuildOptions
 import com.reandroid.apkeditor.decompile.DecompileOptions
 import com.reandroid.apkeditor.decompile.Decompiler
 import com.reandroid.app.AndroidManifest
+import com.reandroid.archive.ArchiveFile
+import com.reandroid.archive.ParallelArchiveExtractor
 import com.zane.smapiinstaller.MainApplication
 import com.zane.smapiinstaller.R
 import com.zane.smapiinstaller.constant.AppConfigKeyConstants
@@ -32,18 +34,13 @@ import com.zane.smapiinstaller.logic.ModAssetsManager
 import com.zane.smapiinstaller.utils.ConfigUtils
 import com.zane.smapiinstaller.utils.DialogUtils
 import com.zane.smapiinstaller.utils.FileUtils
-import com.zane.smapiinstaller.utils.ZipUtils
+import com.zane.smapiinstaller.utils.XabaReader
 import org.apache.commons.lang3.RegExUtils
 import org.apache.commons.lang3.StringUtils
 import org.zeroturnaround.zip.ZipUtil
-import java.io.BufferedOutputStream
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileOutputStream
 import java.io.IOException
 import java.nio.charset.StandardCharsets
-import java.util.zip.ZipEntry
-import java.util.zip.ZipInputStream
 
 /**
  * @author Zane
@@ -202,7 +199,7 @@ class InstallFragment : Fragment() {
                 DialogUtils.setProgressDialogState(
                     binding.root, dialog, R.string.extracting_assemblies, null
                 )
-                val base0Apk = paths!!.first.find { it.endsWith("base_0.apk") }
+                val base0Apk = paths!!.first.firstOrNull()
                 if (base0Apk == null) {
                     DialogUtils.showAlertDialog(
                         binding.root,
@@ -244,9 +241,11 @@ class InstallFragment : Fragment() {
                 )
 
                 // 5.1 解压base_2.apk的assets/Content到StardewValley/Content
-                val base2Apk = paths.first.find { it.endsWith("base_2.apk") }
+                val base2Apk = paths.first.getOrNull(2)
                 if (base2Apk != null) {
-                    extractContentFromBase2(File(base2Apk), stadewValleyBasePath)
+                    extractContentFromBase2(File(base2Apk), stadewValleyBasePath) { progress ->
+                        DialogUtils.setProgressDialogState(binding.root, dialog, null, progress)
+                    }
                 } else {
                     Log.w("SMAPI", "base_2.apk not found, skipping content extraction")
                 }
@@ -273,9 +272,6 @@ class InstallFragment : Fragment() {
                 }
 
                 val targetApksign = File(dest, "base_signed.apk")
-                val targetbase_0 = File(dest, "base_0.apk")
-                val targetbase_1 = File(dest, "base_1.apk")
-                val targetbase_2 = File(dest, "base_2.apk")
                 // 7. 安装APK
                 DialogUtils.setProgressDialogState(
                     binding.root, dialog, R.string.installing_package, null
@@ -283,10 +279,6 @@ class InstallFragment : Fragment() {
                 patcher.install(targetApksign.absolutePath)
 
                 //targetApksign.delete();
-                targetbase_0.delete()
-                targetbase_1.delete()
-                targetbase_2.delete()
-
             }
         }
         task?.start()
@@ -294,65 +286,35 @@ class InstallFragment : Fragment() {
 
     /**
      * 从base_2.apk提取assets/Content到StardewValley/Content
+     *
+     * 按中央目录并行解压，进度按已解压字节数计算
+     *
+     * @param onProgress 进度回调（0-100），在工作线程中调用
      */
-    private fun extractContentFromBase2(base2Apk: File, basePath: String) {
+    private fun extractContentFromBase2(
+        base2Apk: File, basePath: String, onProgress: ((Int) -> Unit)? = null
+    ) {
         val contentDir = File("$basePath/StardewValley/Content")
         if (!contentDir.exists()) {
             contentDir.mkdirs()
         }
 
-        var totalFiles = 0
-        var extractedFiles = 0
-        var lastProgressLog = System.currentTimeMillis()
-        val buffer = ByteArray(8192)
-
         try {
-            FileInputStream(base2Apk).use { fis ->
-                ZipInputStream(fis).use { zis ->
-                    var entry: ZipEntry? = zis.nextEntry
-                    while (entry != null) {
-                        totalFiles++
-
-                        if (entry.name.startsWith("assets/Content/")) {
-                            // 计算目标路径（移除"assets/Content/"前缀）
-                            val relativePath = entry.name.substring("assets/Content/".length)
-                            val targetFile = File(contentDir, relativePath)
-
-                            // 确保目录存在
-                            targetFile.parentFile?.mkdirs()
-
-                            if (!entry.isDirectory) {
-                                // 解压文件
-                                FileOutputStream(targetFile).use { fos ->
-                                    BufferedOutputStream(fos).use { bos ->
-                                        var len: Int
-                                        while (zis.read(buffer).also { len = it } != -1) {
-                                            bos.write(buffer, 0, len)
-                                        }
-                                    }
-                                }
-                                extractedFiles++
-
-                                // 每50个文件或每秒记录一次进度
-                                val now = System.currentTimeMillis()
-                                if (extractedFiles % 50 == 0 || now - lastProgressLog > 1000) {
-                                    Log.d("SMAPI", "Extracted $extractedFiles content files")
-                                    lastProgressLog = now
-                                }
-                            } else {
-                                // 如果是目录，确保创建
-                                if (!targetFile.exists()) {
-                                    targetFile.mkdirs()
-                                }
-                            }
+            ArchiveFile(base2Apk).use { archive ->
+                val extractor = ParallelArchiveExtractor(archive)
+                if (onProgress != null) {
+                    extractor.setProgressListener { extractedBytes, totalBytes ->
+                        if (totalBytes > 0) {
+                            onProgress((extractedBytes * 100 / totalBytes).toInt())
                         }
-
-                        zis.closeEntry()
-                        entry = zis.nextEntry
                     }
                 }
+                val extractedFiles = extractor.extractDirectory("assets/Content/", contentDir)
+                Log.i(
+                    "SMAPI",
+                    "Successfully extracted $extractedFiles/${archive.size()} content files"
+                )
             }
-            Log.i("SMAPI", "Successfully extracted $extractedFiles/$totalFiles content files")
         } catch (e: Exception) {
             Log.e("SMAPI", "Failed to extract content from base_2.apk", e)
         }
@@ -421,27 +383,8 @@ class InstallFragment : Fragment() {
      */
     private fun extractDllsFromBaseApk(baseApk: File, targetDir: File): Boolean {
         return try {
-            // 临时目录用于提取blob文件
-            val tempDir = File.createTempFile("dll_extract", null)
-            tempDir.delete()
-            tempDir.mkdirs()
-
-            // 提取manifest和blob文件
-            val manifestEntry = "assemblies/assemblies.manifest"
-            val blobEntry = "assemblies/assemblies.blob"
-
-            val manifestFile = File(tempDir, "assemblies.manifest")
-            val blobFile = File(tempDir, "assemblies.blob")
-
-            ZipUtil.unpackEntry(baseApk, manifestEntry, manifestFile)
-            ZipUtil.unpackEntry(baseApk, blobEntry, blobFile)
-
-            if (!manifestFile.exists() || !blobFile.exists()) {
-                return false
-            }
-
-            // 解压所有DLL
-            val dlls = ZipUtils.unpackXABA(manifestFile.readBytes(), blobFile.readBytes())
+            // 直接从APK中映射程序集仓库，只解压需要的DLL
+            val reader = XabaReader.openApk(baseApk) ?: return false
 
             // 保存需要的DLL文件
             val requiredDlls = listOf(
@@ -450,15 +393,12 @@ class InstallFragment : Fragment() {
                 "StardewValley.GameData.dll"
             )
 
-            requiredDlls.forEach { dllName ->
-                dlls[dllName]?.let { bytes ->
-                    File(targetDir, dllName).writeBytes(bytes)
+            reader.use {
+                requiredDlls.forEach { dllName ->
+                    reader.extract(dllName, File(targetDir, dllName))
                 }
             }
 
-            // 清理临时文件
-            tempDir.deleteRecursively()
-
             true
         } catch (e: Exception) {
             Log.e("SMAPI", "Failed to extract DLLs", e)
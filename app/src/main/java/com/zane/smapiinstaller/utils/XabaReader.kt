@@ -0,0 +1,236 @@
+package com.zane.smapiinstaller.utils
+
+import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils
+import com.google.common.base.CharMatcher
+import com.google.common.base.Splitter
+import com.reandroid.archive.Archive
+import com.reandroid.archive.ArchiveEntry
+import com.reandroid.archive.ArchiveFile
+import net.jpountz.lz4.LZ4Factory
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.StandardOpenOption
+
+/**
+ * XABA程序集仓库读取器
+ *
+ * 只解析头部到基本类型索引，按名称惰性解压，数据不经过堆内存
+ *
+ * @author Zane
+ */
+class XabaReader private constructor(
+    manifestBytes: ByteArray,
+    blob: ByteBuffer,
+    private val closeable: Closeable?
+) : Closeable {
+    private val blob: ByteBuffer = blob.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+
+    /**
+     * 每个程序集占两个元素：数据偏移、数据长度
+     */
+    private val index: IntArray
+
+    private val nameIndex: Map<String, Int>
+
+    init {
+        val count = readAssemblyCount(this.blob)
+        index = IntArray(count * 2)
+        for (i in 0 until count) {
+            val position = HEADER_SIZE + i * DESCRIPTOR_SIZE
+            index[i * 2] = this.blob.getInt(position)
+            index[i * 2 + 1] = this.blob.getInt(position + 4)
+        }
+        val lines = Splitter.on('\n').omitEmptyStrings()
+            .splitToList(String(manifestBytes, StandardCharsets.UTF_8)).drop(1)
+        val names = HashMap<String, Int>(count)
+        for (i in 0 until minOf(count, lines.size)) {
+            val columns = Splitter.on(CharMatcher.whitespace()).omitEmptyStrings().splitToList(lines[i])
+            if (columns.size > 4) {
+                names[columns[4] + ".dll"] = i
+            }
+        }
+        nameIndex = names
+    }
+
+    /**
+     * 程序集名称（含.dll后缀）
+     */
+    val names: Set<String>
+        get() = nameIndex.keys
+
+    operator fun contains(name: String): Boolean = nameIndex.containsKey(name)
+
+    /**
+     * 读取程序集到内存
+     *
+     * @param name 程序集名称
+     * @return 解压后的数据，不存在时返回null
+     */
+    fun read(name: String): ByteArray? {
+        val data = slice(name) ?: return null
+        if (isCompressed(data)) {
+            val length = data.getInt(8)
+            val bytes = ByteArray(length)
+            decompress(data, ByteBuffer.wrap(bytes), length)
+            return bytes
+        }
+        val bytes = ByteArray(data.remaining())
+        data.get(bytes)
+        return bytes
+    }
+
+    /**
+     * 解压程序集到目标文件，LZ4直接解压到文件映射中
+     *
+     * @param name   程序集名称
+     * @param target 目标文件
+     * @return 程序集是否存在
+     */
+    @Throws(IOException::class)
+    fun extract(name: String, target: File): Boolean {
+        val data = slice(name) ?: return false
+        if (isCompressed(data)) {
+            val length = data.getInt(8)
+            RandomAccessFile(target, "rw").use { file ->
+                file.setLength(length.toLong())
+                val output = file.channel.map(FileChannel.MapMode.READ_WRITE, 0, length.toLong())
+                decompress(data, output, length)
+                output.force()
+            }
+        } else {
+            FileOutputStream(target).channel.use { channel ->
+                while (data.hasRemaining()) {
+                    channel.write(data)
+                }
+            }
+        }
+        return true
+    }
+
+    private fun slice(name: String): ByteBuffer? {
+        val i = nameIndex[name] ?: return null
+        val offset = index[i * 2]
+        val size = index[i * 2 + 1]
+        val data = blob.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        data.limit(offset + size)
+        data.position(offset)
+        return data.slice().order(ByteOrder.LITTLE_ENDIAN)
+    }
+
+    private fun isCompressed(data: ByteBuffer): Boolean {
+        return data.remaining() >= XALZ_HEADER_SIZE && data.getInt(0) == MAGIC_COMPRESSED
+    }
+
+    private fun decompress(data: ByteBuffer, output: ByteBuffer, length: Int) {
+        LZ4Factory.fastestJavaInstance().fastDecompressor()
+            .decompress(data, XALZ_HEADER_SIZE, output, 0, length)
+    }
+
+    override fun close() {
+        closeable?.close()
+    }
+
+    companion object {
+        private const val MAGIC_BLOB = 0x41424158 // "XABA"
+        private const val MAGIC_COMPRESSED = 0x5A4C4158 // "XALZ"
+        private const val HEADER_SIZE = 20
+        private const val DESCRIPTOR_SIZE = 24
+        private const val XALZ_HEADER_SIZE = 12
+
+        const val MANIFEST_ENTRY = "assemblies/assemblies.manifest"
+        const val BLOB_ENTRY = "assemblies/assemblies.blob"
+
+        /**
+         * 以只读方式打开文件通道，API 26以下没有java.nio.file，改用RandomAccessFile
+         */
+        private fun openReadChannel(file: File): FileChannel {
+            return if (LegacyUtils.supportsFileChannel) {
+                FileChannel.open(file.toPath(), StandardOpenOption.READ)
+            } else {
+                RandomAccessFile(file, "r").channel
+            }
+        }
+
+        private fun readAssemblyCount(blob: ByteBuffer): Int {
+            if (blob.limit() < HEADER_SIZE || blob.getInt(0) != MAGIC_BLOB) {
+                return 0
+            }
+            val version = blob.getInt(4)
+            if (version > 1) {
+                throw RuntimeException()
+            }
+            val count = blob.getInt(8)
+            if (count < 0 || HEADER_SIZE.toLong() + count.toLong() * DESCRIPTOR_SIZE > blob.limit()) {
+                return 0
+            }
+            return count
+        }
+
+        /**
+         * 读取内存中的程序集仓库
+         */
+        fun wrap(manifestBytes: ByteArray, xabaBytes: ByteArray): XabaReader {
+            return XabaReader(manifestBytes, ByteBuffer.wrap(xabaBytes), null)
+        }
+
+        /**
+         * 映射程序集仓库文件
+         */
+        @Throws(IOException::class)
+        fun open(manifestBytes: ByteArray, blobFile: File): XabaReader {
+            openReadChannel(blobFile).use { channel ->
+                val blob = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                return XabaReader(manifestBytes, blob, null)
+            }
+        }
+
+        /**
+         * 从APK中打开程序集仓库，未压缩的仓库直接映射APK中的数据区域，否则解压到临时文件后映射
+         *
+         * @param apkFile APK文件
+         * @return 不含程序集仓库时返回null
+         */
+        @Throws(IOException::class)
+        fun openApk(apkFile: File): XabaReader? {
+            ArchiveFile(apkFile).use { archive ->
+                var foundManifest: ArchiveEntry? = null
+                var foundBlob: ArchiveEntry? = null
+                for (entry in archive.getFiles()) {
+                    when (entry.name) {
+                        MANIFEST_ENTRY -> foundManifest = entry
+                        BLOB_ENTRY -> foundBlob = entry
+                    }
+                }
+                val manifestEntry = foundManifest ?: return null
+                val blobEntry = foundBlob ?: return null
+                val manifestBytes = archive.openInputStream(manifestEntry).use { it.readBytes() }
+                if (blobEntry.method == Archive.STORED) {
+                    openReadChannel(apkFile).use { channel ->
+                        val blob = channel.map(
+                            FileChannel.MapMode.READ_ONLY, blobEntry.fileOffset, blobEntry.dataSize
+                        )
+                        return XabaReader(manifestBytes, blob, null)
+                    }
+                }
+                val blobFile = File.createTempFile("assemblies", ".blob")
+                try {
+                    archive.extract(blobFile, blobEntry)
+                    openReadChannel(blobFile).use { channel ->
+                        val blob = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                        return XabaReader(manifestBytes, blob, Closeable { blobFile.delete() })
+                    }
+                } catch (e: IOException) {
+                    blobFile.delete()
+                    throw e
+                }
+            }
+        }
+    }
+}
@@ -1,34 +1,32 @@
 package com.zane.smapiinstaller.utils
 
-import com.google.common.base.CharMatcher
-import com.google.common.base.Splitter
 import com.google.common.collect.Maps
 import com.google.common.collect.Sets
-import com.google.common.io.ByteSource
 import com.google.common.io.ByteStreams
-import com.zane.smapiinstaller.dto.AssemblyStoreAssembly
+import com.reandroid.archive.ArchiveFile
+import com.reandroid.archive.ByteInputSource
+import com.reandroid.archive.InputSource
+import com.reandroid.archive.WriteProgress
+import com.reandroid.archive.writer.ApkFileWriter
 import com.zane.smapiinstaller.dto.Tuple2
-import net.fornwall.apksigner.zipio.ZioEntry
 import net.fornwall.apksigner.zipio.ZipInput
 import net.fornwall.apksigner.zipio.ZipOutput
 import net.jpountz.lz4.LZ4Factory
 import org.bouncycastle.pqc.math.linearalgebra.ByteUtils
+import java.io.BufferedOutputStream
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
-import java.nio.charset.StandardCharsets
 import java.util.Arrays
-import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.atomic.AtomicLong
 
 /**
  * @author Zane
  */
 object ZipUtils {
-    private val MAGIC_BLOB =
-        byteArrayOf('X'.code.toByte(), 'A'.code.toByte(), 'B'.code.toByte(), 'A'.code.toByte())
+    private const val MANIFEST_NAME = "META-INF/MANIFEST.MF"
+    private const val OUTPUT_BUFFER_SIZE = 256 * 1024
     private val MAGIC_COMPRESSED =
         byteArrayOf('X'.code.toByte(), 'A'.code.toByte(), 'L'.code.toByte(), 'Z'.code.toByte())
 
@@ -47,65 +45,18 @@ object ZipUtils {
     }
 
     fun unpackXABA(manifestBytes: ByteArray, xabaBytes: ByteArray): Map<String, ByteArray?> {
-        val manifest = Splitter.on('\n').omitEmptyStrings().splitToList(
-            String(
-                manifestBytes, StandardCharsets.UTF_8
-            )
-        ).drop(1).map { line ->
-            Splitter.on(
-                CharMatcher.whitespace()
-            ).omitEmptyStrings().splitToList(line)
-        }.toList()
-        val source = ByteSource.wrap(xabaBytes)
-        val result: MutableMap<String, ByteArray?> = HashMap()
-        try {
-            var offset = 0
-            var buffer = source.slice(offset.toLong(), 4).read()
-            if (!Arrays.equals(buffer, MAGIC_BLOB)) {
-                return result
-            }
-            buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-            val version = fromBytes(buffer)
-            if (version > 1) {
-                throw RuntimeException()
-            }
-            buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-            val lec = fromBytes(buffer)
-            buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-            val gec = fromBytes(buffer)
-            buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-            val storeId = fromBytes(buffer)
-            for (i in 0 until lec) {
-                val assembly = AssemblyStoreAssembly()
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.dataOffset = fromBytes(buffer)
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.dataSize = fromBytes(buffer)
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.debugDataOffset = fromBytes(buffer)
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.debugDataSize = fromBytes(buffer)
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.configDataOffset = fromBytes(buffer)
-                buffer = source.slice(4.let { offset += it; offset }.toLong(), 4).read()
-                assembly.configDataSize = fromBytes(buffer)
-                buffer = source.slice(assembly.dataOffset.toLong(), 4).read()
-                var bytes: ByteArray?
-                bytes = if (Arrays.equals(buffer, MAGIC_COMPRESSED)) {
-                    val lzBytes =
-                        source.slice(assembly.dataOffset.toLong(), assembly.dataSize.toLong())
-                            .read()
-                    decompressXALZ(lzBytes)
-                } else {
-                    source.slice(assembly.dataOffset.toLong(), assembly.dataSize.toLong()).read()
-                }
-                result[manifest[i][4] + ".dll"] = bytes
-            }
-        } catch (ignored: IOException) {
+        XabaReader.wrap(manifestBytes, xabaBytes).use { reader ->
+            return reader.names.associateWith { name -> reader.read(name) }
         }
-        return result
     }
 
+    /**
+     * 替换、新增或移除APK条目
+     *
+     * 未修改的条目与资源包条目按原压缩数据直接从源文件传输，只有替换或新增的条目需要压缩
+     *
+     * @return 原始清单内容与未修改的条目名称
+     */
     @Throws(IOException::class)
     fun addOrReplaceEntries(
         inputZipFilename: String?,
@@ -119,121 +70,87 @@ object ZipUtils {
         val outFile = outputZipFilename?.let { File(it).canonicalFile }
         require(inFile != outFile) { "Input and output files are the same" }
         val entryMap = Maps.uniqueIndex(entrySources) { obj -> obj!!.path }
-        var originManifest: ByteArray? = null
-        val originEntryName = ConcurrentHashMap<String, Boolean>()
+        val originEntryName = LinkedHashSet<String>()
+        val archives = ArrayList<ArchiveFile>()
         try {
-            ZipOutput(FileOutputStream(outputZipFilename)).use { zipOutput ->
-                ZipInput(inputZipFilename).use { input ->
-                    val size = input.entries.values.size
-                    val count = AtomicLong()
-                    val reportInterval = size / 100
-                    val replacedFileSet = ConcurrentHashMap<String?, Boolean>(entryMap.size)
-                    var taskBundle = MultiprocessingUtil.newTaskBundle { zioEntry: ZioEntry? ->
-                        try {
-                            zipOutput.write(zioEntry)
-                            val index = count.incrementAndGet()
-                            if (index % reportInterval == 0L) {
-                                progressCallback.invoke((index * 95.0 / size).toInt())
-                            }
-                        } catch (e: IOException) {
-                            throw RuntimeException(e)
-                        }
-                    }
-                    val manifest = input.entries["META-INF/MANIFEST.MF"]
-                    if (manifest != null) {
-                        originManifest = manifest.data
-                    }
-                    for (inEntry in input.entries.values) {
-                        if (removePredict.invoke(inEntry.name)) {
-                            continue
-                        }
-                        taskBundle.submitTask {
-                            val source = entryMap[inEntry.name]
-                            if (source != null) {
-                                val zioEntry = ZioEntry(inEntry.name)
-                                zioEntry.setCompression(source.compressionMethod)
-                                try {
-                                    source.dataStream.use { inputStream ->
-                                        if (inputStream != null) {
-                                            ByteStreams.copy(inputStream, zioEntry.outputStream)
-                                        }
-                                    }
-                                } catch (e: IOException) {
-                                    throw RuntimeException(e)
-                                }
-                                replacedFileSet[inEntry.name] = true
-                                return@submitTask zioEntry
-                            } else {
-                                originEntryName[inEntry.name] = true
-                                return@submitTask inEntry
-                            }
-                        }
-                    }
-                    taskBundle.join()
-                    val difference = Sets.difference(entryMap.keys, replacedFileSet.keys)
-                    count.set(0)
-                    taskBundle = MultiprocessingUtil.newTaskBundle { zioEntry: ZioEntry? ->
-                        try {
-                            zipOutput.write(zioEntry)
-                            val index = count.incrementAndGet()
-                            progressCallback.invoke(95 + (index * 5.0 / difference.size).toInt())
-                        } catch (e: IOException) {
-                            throw RuntimeException(e)
-                        }
-                    }
-                    for (name in difference) {
-                        taskBundle.submitTask {
-                            entryMap[name]?.let { source ->
-                                val zioEntry = ZioEntry(name)
-                                zioEntry.setCompression(source.compressionMethod)
-                                try {
-                                    source.dataStream.use { inputStream ->
-                                        inputStream?.let {
-                                            ByteStreams.copy(
-                                                it, zioEntry.outputStream
-                                            )
-                                        }
-                                    }
-                                } catch (e: IOException) {
-                                    throw RuntimeException(e)
-                                }
-                                zioEntry
-                            }
-                        }
-                    }
-                    taskBundle.join()
-                    progressCallback.invoke(100)
+            val input = ArchiveFile(inFile!!)
+            archives.add(input)
+            val originManifest = input.getEntrySource(MANIFEST_NAME)?.openStream()?.use { inputStream ->
+                ByteStreams.toByteArray(inputStream)
+            }
+            val sources = ArrayList<InputSource>(input.size() + entryMap.size)
+            val replacedFileSet = HashSet<String>(entryMap.size)
+            // 包括目录条目，与文件一起原样写出
+            for (inSource in input.getInputSources { true }) {
+                val name = inSource.alias
+                if (removePredict.invoke(name)) {
+                    continue
                 }
-                if (resourcePacks != null) {
-                    for (resourcePack in resourcePacks) {
-                        ZipInput(resourcePack).use { input ->
-                            for (inEntry in input.entries.values) {
-                                if (inEntry.name.startsWith("assets/Content")) {
-                                    val zioEntry = ZioEntry(inEntry.name)
-                                    zioEntry.setCompression(inEntry.compression.toInt())
-                                    try {
-                                        inEntry.inputStream.use { inputStream ->
-                                            ByteStreams.copy(
-                                                inputStream, zioEntry.outputStream
-                                            )
-                                        }
-                                    } catch (e: IOException) {
-                                        throw RuntimeException(e)
-                                    }
-                                    zipOutput.write(zioEntry)
-                                }
-                            }
-                        }
-                    }
+                val source = entryMap[name]
+                if (source != null) {
+                    replacedFileSet.add(name)
+                    sources.add(toInputSource(name, source))
+                } else {
+                    originEntryName.add(name)
+                    sources.add(inSource)
                 }
             }
+            for (name in Sets.difference(entryMap.keys, replacedFileSet)) {
+                val source = entryMap[name] ?: continue
+                sources.add(toInputSource(name, source))
+            }
+            resourcePacks?.filterNotNull()?.forEach { resourcePack ->
+                val pack = ArchiveFile(File(resourcePack))
+                archives.add(pack)
+                pack.getInputSources { entry ->
+                    entry.isFile && entry.name.startsWith("assets/Content")
+                }.forEach { source -> sources.add(source) }
+            }
+            val writer = ApkFileWriter(outFile!!, sources.toTypedArray())
+            val reportInterval = maxOf(1, sources.size / 100)
+            writer.setWriteProgress(object : WriteProgress {
+                override fun onCompressFile(path: String?, mode: Int, writtenBytes: Long) {
+                }
+
+                override fun onWriteFile(path: String?, index: Int, count: Int) {
+                    if ((index + 1) % reportInterval == 0) {
+                        progressCallback.invoke(((index + 1) * 100.0 / count).toInt())
+                    }
+                }
+            })
+            writer.write()
+            progressCallback.invoke(100)
+            return Tuple2(originManifest, originEntryName)
         } catch (e: RuntimeException) {
             if (e.cause != null && e.cause is IOException) {
                 throw e.cause as IOException
             }
             throw e
+        } finally {
+            archives.forEach { archive -> archive.close() }
+        }
+    }
+
+    /**
+     * 内存中的条目使用[ByteInputSource]，由写入器在工作线程中并行压缩并按输入顺序写出，
+     * 在途条目数与字节数均有上限；其余条目按需读取，在写入线程中压缩
+     */
+    private fun toInputSource(name: String, source: ZipEntrySource): InputSource {
+        val bytes = source.bytes ?: return EntrySourceInput(name, source)
+        return ByteInputSource(bytes, name).apply { method = source.compressionMethod }
+    }
+
+    /**
+     * 按需读取替换条目数据，写出时才压缩
+     */
+    private class EntrySourceInput(name: String, private val source: ZipEntrySource) : InputSource(name) {
+        init {
+            method = source.compressionMethod
+        }
+
+        override fun openStream(): InputStream {
+            return source.dataStream ?: ByteArrayInputStream(ByteArray(0))
         }
-        return Tuple2(originManifest, originEntryName.keys)
     }
 
     @Throws(IOException::class)
@@ -247,17 +164,18 @@ object ZipUtils {
         val outFile = outputZipFilename?.let { File(it).canonicalFile }
         require(inFile != outFile) { "Input and output files are the same" }
         ZipInput(inputZipFilename).use { input ->
-            val size = input.entries.values.size
-            var index = 0
-            val reportInterval = size / 100
-            ZipOutput(FileOutputStream(outFile)).use { zipOutput ->
-                for (inEntry in input.entries.values) {
-                    if (!inEntry.name.startsWith(prefix)) {
-                        zipOutput.write(inEntry)
+            // 按中央目录索引遍历，只为保留的条目创建对象，条目数据按原压缩数据分块复制
+            // 同名条目只写入最后一条
+            val centralDirectory = input.index
+            val size = centralDirectory.size()
+            val reportInterval = maxOf(1, size / 100)
+            ZipOutput(BufferedOutputStream(FileOutputStream(outFile), OUTPUT_BUFFER_SIZE)).use { zipOutput ->
+                for (index in 0 until size) {
+                    if (!centralDirectory.startsWith(index, prefix) && !centralDirectory.isReplaced(index)) {
+                        zipOutput.write(input.getEntry(index))
                     }
-                    index++
-                    if (index % reportInterval == 0) {
-                        progressCallback.invoke((index * 100.0 / size).toInt())
+                    if ((index + 1) % reportInterval == 0) {
+                        progressCallback.invoke(((index + 1) * 100.0 / size).toInt())
                     }
                 }
                 progressCallback.invoke(100)
@@ -269,11 +187,22 @@ object ZipUtils {
         var path: String
         var compressionMethod: Int
         var dataSupplier: (() -> InputStream?)? = null
+            set(value) {
+                field = value
+                bytes = null
+            }
+
+        /**
+         * 条目数据在内存中时不为空，重新设置[dataSupplier]后清空
+         */
+        var bytes: ByteArray? = null
+            private set
 
         constructor(path: String, bytes: ByteArray?, compressionMethod: Int) {
             this.path = path
             this.compressionMethod = compressionMethod
             dataSupplier = { ByteArrayInputStream(bytes) }
+            this.bytes = bytes
         }
 
         val dataStream: InputStream?
@@ -0,0 +1,242 @@
+package net.fornwall.apksigner.zipio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Index over the memory mapped central directory of a zip file. Only the offset of each record
+ * is kept, the fields of an entry are read from the mapped records and names are decoded when
+ * asked for. Entries are looked up by name through a hash table of the raw name bytes, so opening
+ * an archive with many entries allocates a few int arrays instead of an object per entry. As with a
+ * map keyed by name, a later entry with the same name as an earlier one replaces it in lookups.
+ */
+public final class CentralDirectoryIndex {
+
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+
+	private final ByteBuffer records;
+	private final int[] recordOffsets;
+	private final int size;
+	private final int[] hashTable;
+
+	CentralDirectoryIndex(FileChannel channel, long offset, long length, int expectedCount) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > channel.size() || length > Integer.MAX_VALUE) {
+			throw new IOException("Central directory out of range: offset=" + offset + ", size=" + length);
+		}
+		records = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+		// The entry count of the end record is only 16 bits wide, so records are counted while parsing.
+		int[] offsets = new int[Math.max(16, expectedCount)];
+		int count = 0;
+		int position = 0;
+		int limit = (int) length;
+		while (position + CENTRAL_HEADER_SIZE <= limit && records.getInt(position) == CENTRAL_HEADER_SIGNATURE) {
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			offsets[count++] = position;
+			position += CENTRAL_HEADER_SIZE + getUnsignedShort(position + 28) + getUnsignedShort(position + 30)
+					+ getUnsignedShort(position + 32);
+		}
+		if (position > limit) {
+			throw new IOException("Truncated central directory record #" + count);
+		}
+		recordOffsets = offsets;
+		size = count;
+		hashTable = new int[tableSize(count)];
+		for (int i = 0; i < count; i++) {
+			hashTable[findSlot(i)] = i + 1;
+		}
+	}
+
+	/** Returns the number of entries. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the index of the last entry with the given name, or -1. */
+	public int indexOf(String name) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int hash = 0;
+		for (byte b : nameBytes) {
+			hash = 31 * hash + (b & 0xff);
+		}
+		int mask = hashTable.length - 1;
+		int slot = spread(hash) & mask;
+		int value;
+		while ((value = hashTable[slot]) != 0) {
+			int index = value - 1;
+			if (nameEquals(index, nameBytes, nameBytes.length)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/** Returns true if a later entry has the same name, so lookups by name never return this one. */
+	public boolean isReplaced(int index) {
+		return hashTable[findSlot(index)] != index + 1;
+	}
+
+	/** Returns true if the name of the entry starts with the given prefix, without decoding the name. */
+	public boolean startsWith(int index, String prefix) {
+		byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+		return getFileNameLength(index) >= prefixBytes.length && nameEquals(index, prefixBytes, -1);
+	}
+
+	public String getName(int index) {
+		return decode(recordOffsets[index] + CENTRAL_HEADER_SIZE, getFileNameLength(index));
+	}
+
+	public short getVersionMadeBy(int index) {
+		return records.getShort(recordOffsets[index] + 4);
+	}
+
+	public short getVersionRequired(int index) {
+		return records.getShort(recordOffsets[index] + 6);
+	}
+
+	public short getGeneralPurposeBits(int index) {
+		return records.getShort(recordOffsets[index] + 8);
+	}
+
+	public short getCompression(int index) {
+		return records.getShort(recordOffsets[index] + 10);
+	}
+
+	public short getModificationTime(int index) {
+		return records.getShort(recordOffsets[index] + 12);
+	}
+
+	public short getModificationDate(int index) {
+		return records.getShort(recordOffsets[index] + 14);
+	}
+
+	public int getCrc32(int index) {
+		return records.getInt(recordOffsets[index] + 16);
+	}
+
+	public int getCompressedSize(int index) {
+		return records.getInt(recordOffsets[index] + 20);
+	}
+
+	public int getSize(int index) {
+		return records.getInt(recordOffsets[index] + 24);
+	}
+
+	public short getDiskNumberStart(int index) {
+		return records.getShort(recordOffsets[index] + 34);
+	}
+
+	public short getInternalAttributes(int index) {
+		return records.getShort(recordOffsets[index] + 36);
+	}
+
+	public int getExternalAttributes(int index) {
+		return records.getInt(recordOffsets[index] + 38);
+	}
+
+	public int getLocalHeaderOffset(int index) {
+		return records.getInt(recordOffsets[index] + 42);
+	}
+
+	public byte[] getExtraData(int index) {
+		int offset = recordOffsets[index];
+		byte[] extra = new byte[getUnsignedShort(offset + 30)];
+		read(offset + CENTRAL_HEADER_SIZE + getFileNameLength(index), extra);
+		return extra;
+	}
+
+	public String getFileComment(int index) {
+		int offset = recordOffsets[index];
+		int position = offset + CENTRAL_HEADER_SIZE + getFileNameLength(index) + getUnsignedShort(offset + 30);
+		return decode(position, getUnsignedShort(offset + 32));
+	}
+
+	private int getFileNameLength(int index) {
+		return getUnsignedShort(recordOffsets[index] + 28);
+	}
+
+	private int getUnsignedShort(int position) {
+		return records.getShort(position) & 0xffff;
+	}
+
+	/** Returns the slot holding the entry with the same name as the given entry, or the empty slot for it. */
+	private int findSlot(int index) {
+		int mask = hashTable.length - 1;
+		int slot = spread(hashName(index)) & mask;
+		int value;
+		while ((value = hashTable[slot]) != 0 && !sameName(value - 1, index)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean sameName(int index, int other) {
+		int length = getFileNameLength(index);
+		if (getFileNameLength(other) != length) {
+			return false;
+		}
+		int position = recordOffsets[index] + CENTRAL_HEADER_SIZE;
+		int otherPosition = recordOffsets[other] + CENTRAL_HEADER_SIZE;
+		for (int i = 0; i < length; i++) {
+			if (records.get(position + i) != records.get(otherPosition + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int hashName(int index) {
+		int position = recordOffsets[index] + CENTRAL_HEADER_SIZE;
+		int end = position + getFileNameLength(index);
+		int hash = 0;
+		for (int i = position; i < end; i++) {
+			hash = 31 * hash + (records.get(i) & 0xff);
+		}
+		return hash;
+	}
+
+	/** Compares the name of the entry with the bytes, or only its start if length is -1. */
+	private boolean nameEquals(int index, byte[] bytes, int length) {
+		if (length >= 0 && getFileNameLength(index) != length) {
+			return false;
+		}
+		int position = recordOffsets[index] + CENTRAL_HEADER_SIZE;
+		for (int i = 0; i < bytes.length; i++) {
+			if (records.get(position + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String decode(int position, int length) {
+		byte[] bytes = new byte[length];
+		read(position, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void read(int position, byte[] bytes) {
+		ByteBuffer view = records.duplicate();
+		view.position(position);
+		view.get(bytes);
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int tableSize(int count) {
+		int tableSize = 16;
+		while (tableSize < count * 2) {
+			tableSize <<= 1;
+		}
+		return tableSize;
+	}
+}
@@ -57,67 +57,31 @@ public final class ZioEntry implements Cloneable {
 
 	private static byte[] alignBytes = new byte[4];
 
-	public ZioEntry(ZipInput input) throws IOException {
+	ZioEntry(ZipInput input, int index) {
 		this.zipInput = input;
+		CentralDirectoryIndex cd = input.index;
 
-		// 0 4 Central directory header signature = 0x02014b50
-		int signature = input.readInt();
-		if (signature != 0x02014b50) {
-			// back up to the signature
-			input.seek(input.getFilePointer() - 4);
-			throw new IOException("Central directory header signature not found");
-		}
-
-		// 4 2 Version needed to extract (minimum)
-		versionMadeBy = input.readShort();
-
-		// 4 2 Version required
-		versionRequired = input.readShort();
-
-		// 6 2 General purpose bit flag
-		generalPurposeBits = input.readShort();
+		versionMadeBy = cd.getVersionMadeBy(index);
+		versionRequired = cd.getVersionRequired(index);
+		generalPurposeBits = cd.getGeneralPurposeBits(index);
 		// Bits 1, 2, 3, and 11 are allowed to be set (first bit is bit zero). Any others are a problem.
 		if ((generalPurposeBits & 0xF7F1) != 0x0000) {
 			throw new IllegalStateException("Can't handle general purpose bits == "
 					+ String.format("0x%04x", generalPurposeBits));
 		}
-
-		// 8 2 Compression method
-		compression = input.readShort();
-
-		// 10 2 File last modification time
-		modificationTime = input.readShort();
-
-		// 12 2 File last modification date
-		modificationDate = input.readShort();
-
-		// 14 4 CRC-32
-		crc32 = input.readInt();
-
-		// 18 4 Compressed size
-		compressedSize = input.readInt();
-
-		// 22 4 Uncompressed size
-		size = input.readInt();
-
-		// 26 2 File name length (n)
-		short fileNameLen = input.readShort();
-		// log.debug(String.format("File name length: 0x%04x", fileNameLen));
-
-		// 28 2 Extra field length (m)
-		short extraLen = input.readShort();
-		// log.debug(String.format("Extra length: 0x%04x", extraLen));
-
-		short fileCommentLen = input.readShort();
-		diskNumberStart = input.readShort();
-		internalAttributes = input.readShort();
-		externalAttributes = input.readInt();
-		localHeaderOffset = input.readInt();
-
-		// 30 n File name
-		filename = input.readString(fileNameLen);
-		extraData = input.readBytes(extraLen);
-		fileComment = input.readString(fileCommentLen);
+		compression = cd.getCompression(index);
+		modificationTime = cd.getModificationTime(index);
+		modificationDate = cd.getModificationDate(index);
+		crc32 = cd.getCrc32(index);
+		compressedSize = cd.getCompressedSize(index);
+		size = cd.getSize(index);
+		diskNumberStart = cd.getDiskNumberStart(index);
+		internalAttributes = cd.getInternalAttributes(index);
+		externalAttributes = cd.getExternalAttributes(index);
+		localHeaderOffset = cd.getLocalHeaderOffset(index);
+		filename = cd.getName(index);
+		extraData = cd.getExtraData(index);
+		fileComment = cd.getFileComment(index);
 
 		generalPurposeBits = (short) (generalPurposeBits & 0x0800); // Don't
 																	// write a
@@ -146,60 +110,10 @@ public final class ZioEntry implements Cloneable {
 	}
 
 	public void readLocalHeader() throws IOException {
-		ZipInput input = zipInput;
-		input.seek(localHeaderOffset);
-
-		// 0 4 Local file header signature = 0x04034b50
-		int signature = input.readInt();
-		if (signature != 0x04034b50) {
-			throw new IllegalStateException(String.format("Local header not found at pos=0x%08x, file=%s",
-					input.getFilePointer(), filename));
-		}
-
 		// This method is usually called just before the data read, so
-		// its only purpose currently is to position the file pointer
-		// for the data read. The entry's attributes might also have
-		// been changed since the central dir entry was read (e.g.,
-		// filename), so throw away the values here.
-
-		// 4 2 Version needed to extract (minimum)
-		/* versionRequired */input.readShort();
-
-		// 6 2 General purpose bit flag
-		/* generalPurposeBits */input.readShort();
-
-		// 8 2 Compression method
-		/* compression */input.readShort();
-
-		// 10 2 File last modification time
-		/* modificationTime */input.readShort();
-
-		// 12 2 File last modification date
-		/* modificationDate */input.readShort();
-
-		// 14 4 CRC-32
-		/* crc32 */input.readInt();
-
-		// 18 4 Compressed size
-		/* compressedSize */input.readInt();
-
-		// 22 4 Uncompressed size
-		/* size */input.readInt();
-
-		// 26 2 File name length (n)
-		short fileNameLen = input.readShort();
-
-		// 28 2 Extra field length (m)
-		short extraLen = input.readShort();
-
-		// 30 n File name
-		/* String localFilename = */input.readString(fileNameLen);
-
-		// Extra data. FIXME: Avoid useless memory allocation.
-		/* byte[] extra = */input.readBytes(extraLen);
-
-		// Record the file position of this entry's data.
-		dataPosition = input.getFilePointer();
+		// its only purpose currently is to find the file position of
+		// this entry's data.
+		dataPosition = zipInput.readDataPosition(localHeaderOffset & 0xffffffffL, filename);
 	}
 
 	public void writeLocalEntry(ZipOutput output) throws IOException {
@@ -261,25 +175,7 @@ public final class ZioEntry implements Cloneable {
 				output.pipeStream(inputStream);
 			}
 		} else {
-			zipInput.seek(dataPosition);
-
-			int bufferSize = Math.min(compressedSize, 8096);
-			byte[] buffer = new byte[bufferSize];
-			long totalCount = 0;
-
-			while (totalCount != compressedSize) {
-				int numRead = zipInput.in.read(buffer, 0, (int) Math.min(compressedSize - totalCount, bufferSize));
-				if (numRead > 0) {
-					output.writeBytes(buffer, 0, numRead);
-					// if (debug)
-					// getLogger().debug(
-					// String.format("Wrote %d bytes", numRead));
-					totalCount += numRead;
-				} else
-					throw new IllegalStateException(String.format(
-							"EOF reached while copying %s with %d bytes left to go", filename, compressedSize
-									- totalCount));
-			}
+			zipInput.copyTo(dataPosition, compressedSize & 0xffffffffL, output, filename);
 		}
 	}
 
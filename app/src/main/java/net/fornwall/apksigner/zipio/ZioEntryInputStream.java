@@ -17,12 +17,15 @@ package net.fornwall.apksigner.zipio;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 
-/** Input stream used to read just the data from a zip file entry. */
+/**
+ * Input stream used to read just the data from a zip file entry. Reads are positional, so streams of several
+ * entries of the same input can be read at the same time.
+ */
 final class ZioEntryInputStream extends InputStream {
 
-	RandomAccessFile raf;
+	final ZipInput input;
+	final long dataPosition;
 	int size;
 	int offset;
 	boolean returnDummyByte = false;
@@ -30,16 +33,12 @@ final class ZioEntryInputStream extends InputStream {
 	public ZioEntryInputStream(ZioEntry entry) throws IOException {
 		offset = 0;
 		size = entry.getCompressedSize();
-		raf = entry.getZipInput().in;
-		long dpos = entry.getDataPosition();
-		if (dpos >= 0) {
-			raf.seek(entry.getDataPosition());
-		} else {
-			// seeks to, then reads, the local header, causing the
-			// file pointer to be positioned at the start of the data.
+		input = entry.getZipInput();
+		if (entry.getDataPosition() < 0) {
+			// reads the local header to find the start of the data.
 			entry.readLocalHeader();
 		}
-
+		dataPosition = entry.getDataPosition();
 	}
 
 	public void setReturnDummyByte(boolean returnExtraByte) {
@@ -74,11 +73,12 @@ final class ZioEntryInputStream extends InputStream {
 			} else
 				return -1;
 		}
-		int b = raf.read();
-		if (b >= 0) {
-			offset += 1;
+		byte[] b = new byte[1];
+		if (input.read(dataPosition + offset, b, 0, 1) <= 0) {
+			return -1;
 		}
-		return b;
+		offset += 1;
+		return b[0] & 0xff;
 	}
 
 	@Override
@@ -96,7 +96,7 @@ final class ZioEntryInputStream extends InputStream {
 				return -1;
 		}
 		int numToRead = Math.min(len, available());
-		int numRead = raf.read(b, off, numToRead);
+		int numRead = input.read(dataPosition + offset, b, off, numToRead);
 		if (numRead > 0) {
 			offset += numRead;
 		}
@@ -110,8 +110,8 @@ final class ZioEntryInputStream extends InputStream {
 
 	@Override
 	public long skip(long n) throws IOException {
-		long numToSkip = Math.min(n, available());
-		raf.seek(raf.getFilePointer() + numToSkip);
+		long numToSkip = Math.max(0, Math.min(n, size - offset));
+		offset += numToSkip;
 		return numToSkip;
 	}
 }
@@ -1,40 +1,86 @@
 package net.fornwall.apksigner.zipio;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.jar.Manifest;
 
 public final class ZipInput implements AutoCloseable {
 
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
 	final RandomAccessFile in;
+	final FileChannel channel;
 	final long fileLength;
 	int scanIterations = 0;
 
-	public final Map<String, ZioEntry> entries = new LinkedHashMap<>();
 	final CentralEnd centralEnd;
+	final CentralDirectoryIndex index;
+	private Map<String, ZioEntry> entries;
 	Manifest manifest;
 
 	public ZipInput(String filename) throws IOException {
 		in = new RandomAccessFile(filename, "r");
-		fileLength = in.length();
+		try {
+			channel = in.getChannel();
+			fileLength = in.length();
+
+			long posEOCDR = scanForEOCDR((int) Math.min(fileLength, 256));
+			in.seek(posEOCDR);
+			centralEnd = CentralEnd.read(this);
+			index = new CentralDirectoryIndex(channel, centralEnd.centralStartOffset & 0xffffffffL,
+					centralEnd.centralDirectorySize & 0xffffffffL, centralEnd.totalCentralEntries & 0xffff);
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
 
-		long posEOCDR = scanForEOCDR((int) Math.min(fileLength, 256));
-		in.seek(posEOCDR);
-		centralEnd = CentralEnd.read(this);
-		in.seek(centralEnd.centralStartOffset);
+	/** Returns the central directory index. Reading entries through it creates no {@link ZioEntry}. */
+	public CentralDirectoryIndex getIndex() {
+		return index;
+	}
 
-		for (int i = 0; i < centralEnd.totalCentralEntries; i++) {
-			ZioEntry entry = new ZioEntry(this);
-			entries.put(entry.getName(), entry);
+	/** Returns a new entry for the central directory record at the given index. */
+	public ZioEntry getEntry(int index) {
+		return new ZioEntry(this, index);
+	}
+
+	/** Returns a new entry for the last record with the given name, or null. */
+	public ZioEntry getEntry(String name) {
+		int i = index.indexOf(name);
+		return i < 0 ? null : getEntry(i);
+	}
+
+	/**
+	 * Returns all entries by name, created on first call. Prefer {@link #getIndex()} and
+	 * {@link #getEntry(int)} for archives with many entries.
+	 */
+	public Map<String, ZioEntry> getEntries() {
+		if (entries == null) {
+			int size = index.size();
+			Map<String, ZioEntry> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+			for (int i = 0; i < size; i++) {
+				ZioEntry entry = getEntry(i);
+				map.put(entry.getName(), entry);
+			}
+			entries = Collections.unmodifiableMap(map);
 		}
+		return entries;
 	}
 
 	public Manifest getManifest() throws IOException {
 		if (manifest == null) {
-			ZioEntry e = entries.get("META-INF/MANIFEST.MF");
+			ZioEntry e = getEntry("META-INF/MANIFEST.MF");
 			if (e != null) {
 				try(InputStream inputStream = e.getInputStream()) {
 					manifest = new Manifest(inputStream);
@@ -68,6 +114,53 @@ public final class ZipInput implements AutoCloseable {
 		return scanForEOCDR(size * 2);
 	}
 
+	/**
+	 * Reads the local header at the given offset and returns the position of the entry's data. Uses a positional
+	 * read, so it does not move the file pointer.
+	 */
+	long readDataPosition(long localHeaderOffset, String filename) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(localHeaderOffset, header);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new IllegalStateException(String.format("Local header not found at pos=0x%08x, file=%s",
+					localHeaderOffset, filename));
+		}
+		// The entry's attributes might have been changed since the central dir entry was read (e.g., filename),
+		// so only the lengths of the variable fields are used here.
+		int fileNameLen = header.getShort(26) & 0xffff;
+		int extraLen = header.getShort(28) & 0xffff;
+		return localHeaderOffset + LOCAL_HEADER_SIZE + fileNameLen + extraLen;
+	}
+
+	/** Reads from the given file position without moving the file pointer. Returns -1 at the end of the file. */
+	int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		return channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+	}
+
+	/** Copies raw bytes of the file to the output in chunks, without moving the file pointer. */
+	void copyTo(long position, long length, ZipOutput output, String filename) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(length, COPY_BUFFER_SIZE)];
+		long totalCount = 0;
+		while (totalCount != length) {
+			int numRead = read(position + totalCount, buffer, 0, (int) Math.min(length - totalCount, buffer.length));
+			if (numRead > 0) {
+				output.writeBytes(buffer, 0, numRead);
+				totalCount += numRead;
+			} else
+				throw new IllegalStateException(String.format(
+						"EOF reached while copying %s with %d bytes left to go", filename, length - totalCount));
+		}
+	}
+
+	private void readFully(long position, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			int numRead = channel.read(buffer, position + buffer.position());
+			if (numRead < 0) {
+				throw new EOFException("Unexpected end of file at pos=" + position);
+			}
+		}
+	}
+
 	@Override
 	public void close() {
 		if (in != null)
@@ -28,21 +28,10 @@
 
 package org.jf.baksmali;
 
-import org.jf.baksmali.Adaptors.ClassDefinition;
-import org.jf.baksmali.formatter.BaksmaliWriter;
-import org.jf.dexlib2.extra.DexMarker;
-import org.jf.dexlib2.iface.ClassDef;
 import org.jf.dexlib2.iface.DexFile;
-import org.jf.util.ClassFileNameHandler;
-import org.jf.util.collection.ListUtil;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.File;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.*;
 
 public class Baksmali {
     public static boolean disassembleDexFile(DexFile dexFile, File outputDir, int jobs, final BaksmaliOptions options) {
@@ -51,143 +40,9 @@ public class Baksmali {
 
     public static boolean disassembleDexFile(DexFile dexFile, File outputDir, int jobs, final BaksmaliOptions options,
                                               List<String> classes) {
-
-        //sort the classes, so that if we're on a case-insensitive file system and need to handle classes with file
-        //name collisions, then we'll use the same name for each class, if the dex file goes through multiple
-        //baksmali/smali cycles for some reason. If a class with a colliding name is added or removed, the filenames
-        //may still change of course
-        List<? extends ClassDef> classDefs = ListUtil.sortedCopy(dexFile.getClasses());
-
-        if(options.dumpMarkers) {
-            File markerFile = new File(outputDir, DexMarker.FILE_NAME);
-            try {
-                DexMarker.writeMarkers(dexFile.getMarkers(), markerFile);
-            } catch (IOException ignored) {
-            }
-        }
-
-        final ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(outputDir, ".smali");
-
-        ExecutorService executor = Executors.newFixedThreadPool(jobs);
-        List<Future<Boolean>> tasks = new ArrayList<>();
-
-        Set<String> classSet = null;
-        if (classes != null) {
-            classSet = new HashSet<String>(classes);
-        }
-
-        for (final ClassDef classDef: classDefs) {
-            if (classSet != null && !classSet.contains(classDef.getType())) {
-                continue;
-            }
-            tasks.add(executor.submit(new Callable<Boolean>() {
-                @Override public Boolean call() throws Exception {
-                    return disassembleClass(classDef, fileNameHandler, options);
-                }
-            }));
-        }
-
-        boolean errorOccurred = false;
-        try {
-            for (Future<Boolean> task: tasks) {
-                while(true) {
-                    try {
-                        if (!task.get()) {
-                            errorOccurred = true;
-                        }
-                    } catch (InterruptedException ex) {
-                        continue;
-                    } catch (ExecutionException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                    break;
-                }
-            }
-        } finally {
-            executor.shutdown();
-        }
-        return !errorOccurred;
-    }
-
-    private static boolean disassembleClass(ClassDef classDef, ClassFileNameHandler fileNameHandler,
-                                            BaksmaliOptions options) {
-        /**
-         * The path for the disassembly file is based on the package name
-         * The class descriptor will look something like:
-         * Ljava/lang/Object;
-         * Where the there is leading 'L' and a trailing ';', and the parts of the
-         * package name are separated by '/'
-         */
-        String classDescriptor = classDef.getType();
-
-        //validate that the descriptor is formatted like we expect
-        if (classDescriptor.charAt(0) != 'L' ||
-                classDescriptor.charAt(classDescriptor.length()-1) != ';') {
-            System.err.println("Unrecognized class descriptor - " + classDescriptor + " - skipping class");
-            return false;
-        }
-
-        File smaliFile = null;
-        try {
-            smaliFile = fileNameHandler.getUniqueFilenameForClass(classDescriptor);
-        } catch (IOException ex) {
-            System.err.println("\n\nError occurred while creating file for class " + classDescriptor);
-            ex.printStackTrace();
-            return false;
-        }
-
-        //create and initialize the top level string template
-        ClassDefinition classDefinition = new ClassDefinition(options, classDef);
-
-        //write the disassembly
-        BaksmaliWriter writer = null;
-        try
-        {
-            File smaliParent = smaliFile.getParentFile();
-            if (!smaliParent.exists()) {
-                if (!smaliParent.mkdirs()) {
-                    // check again, it's likely it was created in a different thread
-                    if (!smaliParent.exists()) {
-                        System.err.println("Unable to create directory " + smaliParent.toString() + " - skipping class");
-                        return false;
-                    }
-                }
-            }
-
-            if (!smaliFile.exists()){
-                if (!smaliFile.createNewFile()) {
-                    System.err.println("Unable to create file " + smaliFile.toString() + " - skipping class");
-                    return false;
-                }
-            }
-            BufferedWriter bufWriter = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(smaliFile), StandardCharsets.UTF_8));
-
-            writer = new BaksmaliWriter(
-                    bufWriter,
-                    options.implicitReferences ? classDef.getType() : null);
-
-            writer.setOptions(classDefinition.options);
-
-            classDefinition.writeTo(writer);
-        } catch (Exception ex) {
-            System.err.println("\n\nError occurred while disassembling class " + classDescriptor.replace('/', '.') + " - skipping class");
-            ex.printStackTrace();
-            // noinspection ResultOfMethodCallIgnored
-            smaliFile.delete();
-            return false;
-        }
-        finally
-        {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (Throwable ex) {
-                    System.err.println("\n\nError occurred while closing file " + smaliFile.toString());
-                    ex.printStackTrace();
-                }
-            }
-        }
-        return true;
+        BaksmaliJob job = new BaksmaliJob(dexFile, outputDir, options);
+        job.setJobs(jobs);
+        job.setClasses(classes);
+        return job.run();
     }
 }
@@ -0,0 +1,347 @@
+package org.jf.baksmali;
+
+import org.jf.baksmali.Adaptors.ClassDefinition;
+import org.jf.baksmali.formatter.BaksmaliWriter;
+import org.jf.dexlib2.extra.DexMarker;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.util.ClassFileNameHandler;
+import org.jf.util.collection.ListUtil;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Disassembles the classes of a dex file into smali files.
+ *
+ * Workers run on a pool shared by all jobs and pull the next class from a shared index, so a slow class only holds
+ * up its own worker. Each worker renders into its own reusable buffer, and a single writer thread stores the files
+ * while the rendered bytes waiting for it are kept under a fixed limit. The job can be cancelled from any thread.
+ */
+public class BaksmaliJob {
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static ForkJoinPool sharedPool;
+
+    private final DexFile dexFile;
+    private final File outputDir;
+    private final BaksmaliOptions options;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private List<String> classes;
+    private ProgressListener progressListener;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger doneCount = new AtomicInteger();
+    private volatile int totalCount;
+
+    public BaksmaliJob(DexFile dexFile, File outputDir, BaksmaliOptions options) {
+        this.dexFile = dexFile;
+        this.outputDir = outputDir;
+        this.options = options;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * @param jobs The maximum number of classes disassembled at the same time
+     */
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * @param classes The types of the classes to disassemble, or null for all classes
+     */
+    public void setClasses(List<String> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * @param progressListener Called from the writer thread after each class was written or skipped
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Stops taking new classes. Classes that are already rendered are still written, and {@link #run()} returns
+     * false once they are.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public int getDoneCount() {
+        return doneCount.get();
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Disassembles the classes and waits until all files are written. Interrupting the calling thread cancels the
+     * job, the interrupt flag is restored before returning.
+     *
+     * @return true if every class was written, false if any class failed or the job was cancelled
+     */
+    public boolean run() {
+        //sort the classes, so that if we're on a case-insensitive file system and need to handle classes with file
+        //name collisions, then we'll use the same name for each class, if the dex file goes through multiple
+        //baksmali/smali cycles for some reason. If a class with a colliding name is added or removed, the filenames
+        //may still change of course
+        final List<ClassDef> classDefs = selectClasses();
+        totalCount = classDefs.size();
+
+        if (options.dumpMarkers) {
+            File markerFile = new File(outputDir, DexMarker.FILE_NAME);
+            try {
+                DexMarker.writeMarkers(dexFile.getMarkers(), markerFile);
+            } catch (IOException ignored) {
+            }
+        }
+
+        final ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(outputDir, ".smali");
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final AtomicBoolean errorOccurred = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+        final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+        int workers = Math.max(1, Math.min(jobs, classDefs.size()));
+        List<Future<?>> tasks = new ArrayList<>(workers);
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < workers; i++) {
+                tasks.add(getSharedPool().submit(new Runnable() {
+                    @Override public void run() {
+                        try {
+                            runWorker(classDefs, nextIndex, fileNameHandler, ioExecutor, pendingBytes, errorOccurred);
+                        } catch (Throwable ex) {
+                            failure.compareAndSet(null, ex);
+                            cancel();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task: tasks) {
+                while (true) {
+                    try {
+                        task.get();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                        cancel();
+                        continue;
+                    } catch (ExecutionException ex) {
+                        failure.compareAndSet(null, ex.getCause());
+                    }
+                    break;
+                }
+            }
+        } finally {
+            ioExecutor.shutdown();
+            while (true) {
+                try {
+                    ioExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    cancel();
+                    continue;
+                }
+                break;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new RuntimeException(throwable);
+        }
+        return !errorOccurred.get() && !isCancelled();
+    }
+
+    private List<ClassDef> selectClasses() {
+        List<? extends ClassDef> sorted = ListUtil.sortedCopy(dexFile.getClasses());
+        Set<String> classSet = null;
+        if (classes != null) {
+            classSet = new HashSet<String>(classes);
+        }
+        List<ClassDef> results = new ArrayList<>(sorted.size());
+        for (ClassDef classDef: sorted) {
+            if (classSet != null && !classSet.contains(classDef.getType())) {
+                continue;
+            }
+            results.add(classDef);
+        }
+        return results;
+    }
+
+    private void runWorker(List<ClassDef> classDefs, AtomicInteger nextIndex, ClassFileNameHandler fileNameHandler,
+                           ExecutorService ioExecutor, final Semaphore pendingBytes,
+                           final AtomicBoolean errorOccurred) throws InterruptedException {
+        NakedCharArrayWriter buffer = new NakedCharArrayWriter(INITIAL_BUFFER_SIZE);
+        while (!isCancelled()) {
+            int index = nextIndex.getAndIncrement();
+            if (index >= classDefs.size()) {
+                return;
+            }
+            ClassDef classDef = classDefs.get(index);
+            final File smaliFile = getSmaliFile(classDef, fileNameHandler);
+            buffer.reset();
+            if (smaliFile == null || !disassembleClass(classDef, buffer)) {
+                errorOccurred.set(true);
+                onClassDone();
+                continue;
+            }
+            final ByteBuffer bytes = StandardCharsets.UTF_8.encode(buffer.asCharBuffer());
+            final int permits = Math.min(bytes.remaining(), MAX_PENDING_BYTES);
+            pendingBytes.acquire(permits);
+            ioExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        if (!writeFile(smaliFile, bytes)) {
+                            errorOccurred.set(true);
+                        }
+                    } finally {
+                        pendingBytes.release(permits);
+                        onClassDone();
+                    }
+                }
+            });
+        }
+    }
+
+    private void onClassDone() {
+        int done = doneCount.incrementAndGet();
+        ProgressListener listener = this.progressListener;
+        if (listener != null) {
+            listener.onProgress(done, totalCount);
+        }
+    }
+
+    private static File getSmaliFile(ClassDef classDef, ClassFileNameHandler fileNameHandler) {
+        /**
+         * The path for the disassembly file is based on the package name
+         * The class descriptor will look something like:
+         * Ljava/lang/Object;
+         * Where the there is leading 'L' and a trailing ';', and the parts of the
+         * package name are separated by '/'
+         */
+        String classDescriptor = classDef.getType();
+
+        //validate that the descriptor is formatted like we expect
+        if (classDescriptor.charAt(0) != 'L' ||
+                classDescriptor.charAt(classDescriptor.length()-1) != ';') {
+            System.err.println("Unrecognized class descriptor - " + classDescriptor + " - skipping class");
+            return null;
+        }
+
+        try {
+            return fileNameHandler.getUniqueFilenameForClass(classDescriptor);
+        } catch (IOException ex) {
+            System.err.println("\n\nError occurred while creating file for class " + classDescriptor);
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private boolean disassembleClass(ClassDef classDef, CharArrayWriter buffer) {
+        try {
+            //create and initialize the top level string template
+            ClassDefinition classDefinition = new ClassDefinition(options, classDef);
+
+            BaksmaliWriter writer = new BaksmaliWriter(
+                    buffer,
+                    options.implicitReferences ? classDef.getType() : null);
+            writer.setOptions(classDefinition.options);
+            classDefinition.writeTo(writer);
+            writer.flush();
+            return true;
+        } catch (Exception ex) {
+            System.err.println("\n\nError occurred while disassembling class " +
+                    classDef.getType().replace('/', '.') + " - skipping class");
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean writeFile(File smaliFile, ByteBuffer bytes) {
+        File smaliParent = smaliFile.getParentFile();
+        if (!smaliParent.exists()) {
+            if (!smaliParent.mkdirs()) {
+                // check again, it's likely it was created in a different thread
+                if (!smaliParent.exists()) {
+                    System.err.println("Unable to create directory " + smaliParent.toString() + " - skipping class");
+                    return false;
+                }
+            }
+        }
+        try {
+            FileOutputStream outputStream = new FileOutputStream(smaliFile);
+            try {
+                FileChannel channel = outputStream.getChannel();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } finally {
+                outputStream.close();
+            }
+            return true;
+        } catch (IOException ex) {
+            System.err.println("\n\nError occurred while writing file " + smaliFile.toString());
+            ex.printStackTrace();
+            // noinspection ResultOfMethodCallIgnored
+            smaliFile.delete();
+            return false;
+        }
+    }
+
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sharedPool;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    private static class NakedCharArrayWriter extends CharArrayWriter {
+        public NakedCharArrayWriter(int initialSize) {
+            super(initialSize);
+        }
+
+        public CharBuffer asCharBuffer() {
+            return CharBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -40,17 +40,23 @@ import org.jf.util.collection.ListUtil;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Loads and caches the protos of the types seen by method analysis. An instance can be shared by analyses running on
+ * several threads, e.g. baksmali with jobs > 1: protos are published through a concurrent map, and the class defs,
+ * vtables and instance field offsets of a proto are memoized under a lock.
+ */
 public class ClassPath {
 
     private final TypeProto unknownClass;
 
-    private List<ClassProvider> classProviders;
+    private final List<ClassProvider> classProviders;
     private final boolean checkPackagePrivateAccess;
     public final int oatVersion;
+    private final OdexedFieldInstructionMapper mapper;
 
     public static final int NOT_ART = -1;
     public static final int NOT_SPECIFIED = -2;
@@ -91,6 +97,7 @@ public class ClassPath {
         classLoader.put(unknownClass.getType(), unknownClass);
         this.checkPackagePrivateAccess = checkPackagePrivateAccess;
         this.oatVersion = oatVersion;
+        this.mapper = new OdexedFieldInstructionMapper(isArt());
 
         loadPrimitiveType("Z");
         loadPrimitiveType("B");
@@ -126,29 +133,32 @@ public class ClassPath {
     }
 
 
+    /**
+     * Gets the proto of the given type, loading it on first use. This can be called concurrently, racing threads may
+     * both construct a proto but all of them get the one that was published first.
+     */
     public TypeProto getClass( CharSequence type) {
-        return classLoader.get(type.toString());
-    }
-
-    private final Map<String, TypeProto> classLoader = new HashMap<String, TypeProto>() {
-        @Override
-        public TypeProto get(Object obj){
-            String type = obj.toString();
-            TypeProto exist = super.get(type);
-            if(exist == null){
-                exist = loadProto(type);
-                super.put(type, exist);
-            }
+        String key = type.toString();
+        TypeProto exist = classLoader.get(key);
+        if (exist != null) {
             return exist;
         }
-        private TypeProto loadProto(String type) {
-            if (type.charAt(0) == '[') {
-                return new ArrayProto(ClassPath.this, type);
-            } else {
-                return new ClassProto(ClassPath.this, type);
-            }
+        TypeProto proto = loadProto(key);
+        exist = classLoader.putIfAbsent(key, proto);
+        if (exist != null) {
+            return exist;
         }
-    };
+        return proto;
+    }
+
+    private TypeProto loadProto(String type) {
+        if (type.charAt(0) == '[') {
+            return new ArrayProto(this, type);
+        }
+        return new ClassProto(this, type);
+    }
+
+    private final ConcurrentMap<String, TypeProto> classLoader = new ConcurrentHashMap<>();
 
 
     public ClassDef getClassDef(String type) {
@@ -173,10 +183,6 @@ public class ClassPath {
 
 
     public OdexedFieldInstructionMapper getFieldInstructionMapper() {
-        if(mapper == null){
-            mapper = new OdexedFieldInstructionMapper(isArt());
-        }
         return mapper;
     }
-    private OdexedFieldInstructionMapper mapper;
 }
@@ -54,6 +54,7 @@ import org.jf.dexlib2.util.MethodUtil;
 import org.jf.dexlib2.writer.io.DeferredOutputStream;
 import org.jf.dexlib2.writer.io.DeferredOutputStreamFactory;
 import org.jf.dexlib2.writer.io.DexDataStore;
+import org.jf.dexlib2.writer.io.FileChannelDataStore;
 import org.jf.dexlib2.writer.io.MemoryDeferredOutputStream;
 import org.jf.dexlib2.writer.util.TryListBuilder;
 import org.jf.util.ExceptionWithContext;
@@ -62,6 +63,7 @@ import org.jf.util.collection.Iterables;
 import org.jf.util.collection.ListUtil;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -304,6 +306,15 @@ public abstract class DexWriter<
         this.writeTo(dest, MemoryDeferredOutputStream.getFactory());
     }
 
+    /**
+     * Writes the dex straight to the file. Code items are deferred into a temporary file next to it instead of
+     * memory, so the peak memory does not grow with the size of the dex.
+     */
+    public void writeTo( File file) throws IOException {
+        FileChannelDataStore dataStore = new FileChannelDataStore(file);
+        this.writeTo(dataStore, dataStore);
+    }
+
     public void writeTo( DexDataStore dest,
                          DeferredOutputStreamFactory tempFactory) throws IOException {
         try {
@@ -356,28 +367,37 @@ public abstract class DexWriter<
                 indexWriter.close();
                 offsetWriter.close();
             }
-            updateSignature(dest);
-            updateChecksum(dest);
+            updateSignatureAndChecksum(dest);
         } finally {
             dest.close();
         }
     }
 
-    private void updateSignature( DexDataStore dataStore) throws IOException {
+    /**
+     * Computes the signature and the checksum in a single read of the data store. The checksum covers the
+     * signature too, so the adler32 of the data after the signature is combined with the adler32 of the
+     * signature afterwards instead of reading the file a second time.
+     */
+    private void updateSignatureAndChecksum( DexDataStore dataStore) throws IOException {
         MessageDigest md;
         try {
             md = MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException ex) {
             throw new RuntimeException(ex);
         }
+        Adler32 a32 = new Adler32();
+        long length = 0;
 
-        byte[] buffer = new byte[4 * 1024];
+        byte[] buffer = new byte[64 * 1024];
         InputStream input = dataStore.readAt(HeaderItem.SIGNATURE_DATA_START_OFFSET);
         int bytesRead = input.read(buffer);
         while (bytesRead >= 0) {
             md.update(buffer, 0, bytesRead);
+            a32.update(buffer, 0, bytesRead);
+            length += bytesRead;
             bytesRead = input.read(buffer);
         }
+        input.close();
 
         byte[] signature = md.digest();
         if (signature.length != HeaderItem.SIGNATURE_SIZE) {
@@ -388,25 +408,36 @@ public abstract class DexWriter<
         OutputStream output = dataStore.outputAt(HeaderItem.SIGNATURE_OFFSET);
         output.write(signature);
         output.close();
-    }
-
-    private void updateChecksum( DexDataStore dataStore) throws IOException {
-        Adler32 a32 = new Adler32();
 
-        byte[] buffer = new byte[4 * 1024];
-        InputStream input = dataStore.readAt(HeaderItem.CHECKSUM_DATA_START_OFFSET);
-        int bytesRead = input.read(buffer);
-        while (bytesRead >= 0) {
-            a32.update(buffer, 0, bytesRead);
-            bytesRead = input.read(buffer);
-        }
+        Adler32 signatureA32 = new Adler32();
+        signatureA32.update(signature, 0, signature.length);
+        int checksum = combineAdler32(signatureA32.getValue(), a32.getValue(), length);
 
         // write checksum, utilizing logic in DexWriter to write the integer value properly
-        OutputStream output = dataStore.outputAt(HeaderItem.CHECKSUM_OFFSET);
-        DexDataWriter.writeInt(output, (int)a32.getValue());
+        output = dataStore.outputAt(HeaderItem.CHECKSUM_OFFSET);
+        DexDataWriter.writeInt(output, checksum);
         output.close();
     }
 
+    /**
+     * Same as zlib's adler32_combine: the adler32 of two concatenated blocks from the adler32 of each block and
+     * the length of the second block. com.reandroid.dex.header.Checksum#combine is the same algorithm for the
+     * other dex writer, dexlib2 does not depend on it, so keep both in sync.
+     */
+    private static int combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return (int)(sum1 | (sum2 << 16));
+    }
+
     private static DexDataWriter outputAt(DexDataStore dataStore, int filePosition) throws IOException {
         return new DexDataWriter(dataStore.outputAt(filePosition), filePosition);
     }
@@ -0,0 +1,110 @@
+package org.jf.dexlib2.writer.io;
+
+import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A data store that writes straight to a file channel using positional writes, so the sections can be
+ * written and back-patched in any order without keeping the dex in memory. Deferred streams spill into
+ * temporary files next to the output file.
+ */
+public class FileChannelDataStore implements DexDataStore, DeferredOutputStreamFactory {
+    private static final int DEFERRED_BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private final FileChannel channel;
+
+    public FileChannelDataStore(File file) throws IOException {
+        this.file = file;
+        this.channel = LegacyUtils.supportsFileChannel ?
+                FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) :
+                openRandomAccessChannel(file);
+    }
+
+    private static FileChannel openRandomAccessChannel(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+        return randomAccessFile.getChannel();
+    }
+
+    @Override
+    public OutputStream outputAt(final int offset) {
+        if (offset < 0) throw new IllegalArgumentException();
+        return new OutputStream() {
+            private long position = offset;
+
+            @Override public void write(int b) throws IOException {
+                write(new byte[] { (byte)b }, 0, 1);
+            }
+
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream readAt(final int offset) {
+        if (offset < 0) throw new IllegalArgumentException();
+        return new InputStream() {
+            private long position = offset;
+
+            @Override public int read() throws IOException {
+                byte[] b = new byte[1];
+                if (read(b, 0, 1) < 0) {
+                    return -1;
+                }
+                return b[0] & 0xff;
+            }
+
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int count = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (count > 0) {
+                    position += count;
+                }
+                return count;
+            }
+
+            @Override public long skip(long n) throws IOException {
+                long skipped = Math.max(0, Math.min(n, channel.size() - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override public int available() throws IOException {
+                return (int)Math.max(0, Math.min(Integer.MAX_VALUE, channel.size() - position));
+            }
+        };
+    }
+
+    @Override
+    public DeferredOutputStream makeDeferredOutputStream() throws IOException {
+        File tempFile = File.createTempFile("dexlibtmp", null, file.getAbsoluteFile().getParentFile());
+        return new FileDeferredOutputStream(tempFile, DEFERRED_BUFFER_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -36,9 +36,13 @@ public class FileDeferredOutputStream extends DeferredOutputStream {
         // did we actually write something out to disk?
         if (count != writtenBytes) {
             InputStream fis = new FileInputStream(backingFile);
-            ByteStreams.copy(fis, dest);
-            backingFile.delete();
+            try {
+                ByteStreams.copy(fis, dest);
+            } finally {
+                fis.close();
+            }
         }
+        backingFile.delete();
 
         dest.write(outBuf, 0, count);
     }
@@ -41,7 +41,6 @@ import org.jf.dexlib2.iface.reference.*;
 import org.jf.dexlib2.iface.value.*;
 import org.jf.dexlib2.writer.*;
 import org.jf.dexlib2.writer.io.DexDataStore;
-import org.jf.dexlib2.writer.io.FileDataStore;
 import org.jf.util.ExceptionWithContext;
 
 import java.io.File;
@@ -96,7 +95,7 @@ public class DexPool extends DexWriter<CharSequence, StringReference, CharSequen
         for (ClassDef classDef: input.getClasses()) {
             dexPool.internClass(classDef);
         }
-        dexPool.writeTo(new FileDataStore(new File(path)));
+        dexPool.writeTo(new File(path));
     }
 
     /**
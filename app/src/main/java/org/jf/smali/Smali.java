@@ -34,7 +34,6 @@ package org.jf.smali;
 import org.jf.dexlib2.Opcodes;
 import org.jf.dexlib2.extra.DexMarker;
 import org.jf.dexlib2.writer.builder.DexBuilder;
-import org.jf.dexlib2.writer.io.FileDataStore;
 import org.jf.util.StringUtils;
 
 import java.io.File;
@@ -88,7 +87,7 @@ public class Smali {
             return false;
         }
 
-        dexBuilder.writeTo(new FileDataStore(new File(options.outputDexFile)));
+        dexBuilder.writeTo(new File(options.outputDexFile));
 
         return true;
     }